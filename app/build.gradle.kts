@@ -43,6 +43,11 @@ android {
         }
     }
 
+    // Exported Room schemas, read by MigrationTestHelper
+    sourceSets {
+        getByName("androidTest").assets.srcDir("$projectDir/schemas")
+    }
+
     //Disable split language resources on .aab, necessary to allow the language changing
     //option to work
     bundle {
@@ -119,6 +124,11 @@ android {
     }
 }
 
+// Room runs through KSP, which does not read the annotationProcessorOptions above
+ksp {
+    arg("room.schemaLocation", "$projectDir/schemas")
+}
+
 dependencies {
     implementation(libs.appcompat)
     implementation(libs.preference.ktx)
@@ -134,6 +144,7 @@ dependencies {
     testImplementation(libs.test.core)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
+    androidTestImplementation(libs.room.testing)
     ksp(libs.room.compiler)
     implementation(libs.core.ktx)
     implementation(libs.gson)
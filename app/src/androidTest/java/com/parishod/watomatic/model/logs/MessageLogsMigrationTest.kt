@@ -0,0 +1,56 @@
+package com.parishod.watomagic.model.logs
+
+import androidx.room.testing.MigrationTestHelper
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class MessageLogsMigrationTest {
+
+    /**
+     * Builds each version from the exported schemas in app/schemas.
+     */
+    @get:Rule
+    val helper = MigrationTestHelper(
+        InstrumentationRegistry.getInstrumentation(),
+        MessageLogsDB::class.java
+    )
+
+    @Test
+    fun migrate2To3_keepsLogsAndAddsIndices() {
+        helper.createDatabase(TEST_DB, 2).use { db ->
+            db.execSQL("INSERT INTO app_packages (package_name) VALUES ('com.whatsapp')")
+            db.execSQL("INSERT INTO message_logs (`index`, notif_id, notif_title, notif_arrived_time, notif_is_replied, notif_replied_msg, notif_reply_time) " +
+                    "VALUES (1, 'id-1', 'John', 1000, 1, 'Hi', 2000)")
+        }
+
+        // Fails if the migrated schema differs from 3.json
+        val db = helper.runMigrationsAndValidate(TEST_DB, 3, true, MessageLogsDB.MIGRATION_2_3)
+
+        db.query("SELECT notif_title, notif_reply_time FROM message_logs").use { cursor ->
+            assertEquals(1, cursor.count)
+            cursor.moveToFirst()
+            assertEquals("John", cursor.getString(0))
+            assertEquals(2000L, cursor.getLong(1))
+        }
+
+        val indices = mutableListOf<String>()
+        db.query("SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = 'message_logs'")
+            .use { cursor ->
+                while (cursor.moveToNext()) {
+                    indices.add(cursor.getString(0))
+                }
+            }
+        assertTrue(indices.contains("index_message_logs_index_notif_title_notif_reply_time"))
+        assertTrue(indices.contains("index_message_logs_notif_reply_time"))
+    }
+
+    companion object {
+        private const val TEST_DB = "migration_test_logs_db"
+    }
+}
@@ -0,0 +1,166 @@
+package com.parishod.watomagic.model.logs
+
+import android.content.Context
+import android.util.Log
+import androidx.room.Room
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Latency of the message_logs hot queries at 100k and 1M rows, with and without the
+ * version 3 indices. Results are logged under the MessageLogsBenchmark tag:
+ *
+ *   adb logcat -s MessageLogsBenchmark
+ *
+ * Timing is device dependent, so the tests only assert that the indexed query plans are used.
+ */
+@RunWith(AndroidJUnit4::class)
+class MessageLogsQueryBenchmark {
+
+    private lateinit var context: Context
+    private lateinit var db: MessageLogsDB
+
+    @Before
+    fun setUp() {
+        context = InstrumentationRegistry.getInstrumentation().targetContext
+        context.deleteDatabase(BENCHMARK_DB)
+        db = Room.databaseBuilder(context, MessageLogsDB::class.java, BENCHMARK_DB)
+            .allowMainThreadQueries()
+            .build()
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+        context.deleteDatabase(BENCHMARK_DB)
+    }
+
+    @Test
+    fun hotQueries_100kRows() {
+        runBenchmark(100_000)
+    }
+
+    @Test
+    fun hotQueries_1mRows() {
+        runBenchmark(1_000_000)
+    }
+
+    private fun runBenchmark(rows: Int) {
+        val sqlDb = db.openHelper.writableDatabase
+        populate(sqlDb, rows)
+
+        assertTrue(queryPlan(sqlDb, LAST_REPLY_SQL).contains("index_message_logs_index_notif_title_notif_reply_time"))
+        assertTrue(queryPlan(sqlDb, FIRST_REPLIED_SQL).contains("index_message_logs_notif_reply_time"))
+
+        val indexed = measureAll()
+        sqlDb.execSQL("DROP INDEX index_message_logs_index_notif_title_notif_reply_time")
+        sqlDb.execSQL("DROP INDEX index_message_logs_notif_reply_time")
+        val unindexed = measureAll()
+
+        for ((name, micros) in indexed) {
+            Log.i(TAG, String.format("%,d rows | %-20s | v2 (no index): %,8d us | v3: %,8d us",
+                rows, name, unindexed[name], micros))
+        }
+    }
+
+    /**
+     * @return median latency in microseconds of each hot query
+     */
+    private fun measureAll(): Map<String, Long> {
+        val dao = db.logsDao()
+        return linkedMapOf(
+            "getLastReplyTimeStamp" to median { dao.getLastReplyTimeStamp("Contact 42", "com.whatsapp") },
+            "getFirstRepliedTime" to median { dao.getFirstRepliedTime() },
+            "deleteOlderThan" to rolledBack { dao.deleteOlderThan(System.currentTimeMillis() - PURGE_AGE_MS, 500) }
+        )
+    }
+
+    /**
+     * Times a single run of a write query, rolled back so every configuration sees the same rows.
+     */
+    private fun rolledBack(query: () -> Unit): Long {
+        val sqlDb = db.openHelper.writableDatabase
+        sqlDb.beginTransaction()
+        try {
+            val start = System.nanoTime()
+            query()
+            return (System.nanoTime() - start) / 1_000
+        } finally {
+            sqlDb.endTransaction()
+        }
+    }
+
+    private fun median(query: () -> Unit): Long {
+        repeat(WARMUP_ITERATIONS) { query() }
+        val samples = LongArray(ITERATIONS) {
+            val start = System.nanoTime()
+            query()
+            (System.nanoTime() - start) / 1_000
+        }
+        samples.sort()
+        return samples[samples.size / 2]
+    }
+
+    private fun populate(sqlDb: SupportSQLiteDatabase, rows: Int) {
+        sqlDb.beginTransaction()
+        try {
+            for (packageName in PACKAGES) {
+                sqlDb.execSQL("INSERT INTO app_packages (package_name) VALUES (?)", arrayOf(packageName))
+            }
+            val insert = sqlDb.compileStatement(
+                "INSERT INTO message_logs (`index`, notif_id, notif_title, notif_arrived_time, " +
+                        "notif_is_replied, notif_replied_msg, notif_reply_time) VALUES (?, ?, ?, ?, 1, ?, ?)")
+            val now = System.currentTimeMillis()
+            for (i in 0 until rows) {
+                val time = now - (rows - i) * 1_000L
+                insert.clearBindings()
+                insert.bindLong(1, (i % PACKAGES.size + 1).toLong())
+                insert.bindString(2, "id-$i")
+                insert.bindString(3, "Contact ${i % CONTACTS}")
+                insert.bindLong(4, time)
+                insert.bindString(5, "Auto reply")
+                insert.bindLong(6, time)
+                insert.executeInsert()
+            }
+            sqlDb.setTransactionSuccessful()
+        } finally {
+            sqlDb.endTransaction()
+        }
+        sqlDb.execSQL("ANALYZE")
+    }
+
+    private fun queryPlan(sqlDb: SupportSQLiteDatabase, sql: String): String {
+        val plan = StringBuilder()
+        sqlDb.query("EXPLAIN QUERY PLAN $sql").use { cursor ->
+            val detail = cursor.getColumnIndexOrThrow("detail")
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n')
+            }
+        }
+        return plan.toString()
+    }
+
+    companion object {
+        private const val TAG = "MessageLogsBenchmark"
+        private const val BENCHMARK_DB = "benchmark_logs_db"
+        private const val CONTACTS = 2_000
+        private const val WARMUP_ITERATIONS = 5
+        private const val ITERATIONS = 50
+        private const val PURGE_AGE_MS = 30 * 24 * 60 * 60 * 1000L
+        private val PACKAGES = listOf("com.whatsapp", "org.telegram.messenger", "com.facebook.orca")
+
+        // Same SQL as MessageLogsDao, with the parameters inlined
+        private const val LAST_REPLY_SQL = "SELECT message_logs.notif_reply_time FROM MESSAGE_LOGS " +
+                "INNER JOIN app_packages ON app_packages.`index` = message_logs.`index` " +
+                "WHERE app_packages.package_name='com.whatsapp' AND message_logs.notif_title='Contact 42' " +
+                "ORDER BY notif_reply_time DESC LIMIT 1"
+        private const val FIRST_REPLIED_SQL =
+            "SELECT notif_reply_time FROM MESSAGE_LOGS ORDER BY notif_reply_time DESC LIMIT 1"
+    }
+}
@@ -1,14 +1,32 @@
 /**
- * Información de un archivo adjunto (imagen)
+ * Información de un archivo adjunto (imagen).
+ * La imagen se copia y decodifica solo al leer `size`, `thumbnailBase64` o al pedir su ruta/contenido.
  */
 interface AttachmentInfo {
     id: string;
     mimeType: string;
+    /** Puede copiar la imagen si la app de origen no informa el tamaño */
     size: number;
     hasFile: boolean;
+    /** Se genera al leerlo por primera vez */
     thumbnailBase64?: string;
 }
 
+/**
+ * Opciones de Android.uploadAttachment / uploadLatestWhatsAppImage
+ */
+interface UploadOptions {
+    url: string;
+    method?: 'POST' | 'PUT';
+    headers?: Record<string, string>;
+    timeoutMs?: number;
+    /** Si se indica, se envía como multipart/form-data con el archivo en este campo */
+    multipartField?: string;
+    fileName?: string;
+    /** Campos de texto adicionales del formulario multipart */
+    fields?: Record<string, string>;
+}
+
 /**
  * Datos de la notificación entrante
  */
@@ -17,6 +35,8 @@ interface NotificationData {
     appPackage: string;
     title: string;
     body: string;
+    /** Mensajes de la ráfaga que se está respondiendo, del más antiguo al más reciente */
+    messages: string[];
     timestamp: number;
     isGroup: boolean;
     isMediaPlaceholder: boolean;
@@ -41,11 +61,15 @@ declare const Android: {
     // Logging
     log(level: 'debug' | 'info' | 'warn' | 'error', message: string): void;
 
-    // Storage (persistencia local)
+    // Storage (persistencia local, aislada por bot)
     storageGet(key: string): string | null;
-    storageSet(key: string, value: string): void;
+    /** ttlMs: milisegundos hasta que la clave expira (opcional). Lanza QuotaExceededError si supera la cuota. */
+    storageSet(key: string, value: string, ttlMs?: number): void;
     storageRemove(key: string): void;
     storageKeys(): string[];
+    storageGetMany(keys: string[]): Record<string, string | null>;
+    /** Guarda todas las claves o ninguna. Lanza QuotaExceededError si supera la cuota. */
+    storageSetMany(entries: Record<string, string>, ttlMs?: number): void;
 
     // HTTP Requests
     httpRequest(options: {
@@ -55,6 +79,14 @@ declare const Android: {
         body?: string;
         timeoutMs?: number;
     }): Promise<string>;
+    /** Lanza las peticiones en paralelo; un resultado por petición, en el mismo orden */
+    httpRequestAll(requests: Array<{
+        url: string;
+        method?: 'GET' | 'POST' | 'PUT' | 'DELETE';
+        headers?: Record<string, string>;
+        body?: string;
+        timeoutMs?: number;
+    }>): Array<{ ok: boolean; status: number; body: string } | { ok: false; error: string }>;
 
     // Utilidades
     getCurrentTime(): number;
@@ -64,11 +96,15 @@ declare const Android: {
     // Attachment access
     getAttachmentPath(id: string): string | null;
     readAttachmentAsBase64(id: string): string | null;
+    /** Sube el adjunto en streaming (sin Base64) y devuelve el cuerpo de la respuesta */
+    uploadAttachment(id: string, options: UploadOptions): string;
     getAttachmentThumbnail(id: string): string | null;
 
     // WhatsApp SAF media folder (requires folder selection in BotConfig)
     hasWhatsAppMediaAccess(): boolean;
     readLatestWhatsAppImage(notificationTimestamp: number): string | null;
+    /** Como uploadAttachment; null si no hay imagen para ese momento */
+    uploadLatestWhatsAppImage(notificationTimestamp: number, options: UploadOptions): string | null;
 };
 
 /**
@@ -1,12 +1,11 @@
 package com.parishod.watomagic.botjs;
 
-import android.content.ContentResolver;
 import android.content.Context;
+import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.provider.OpenableColumns;
 import android.service.notification.StatusBarNotification;
-import android.util.Base64;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -16,9 +15,9 @@ import androidx.core.app.NotificationCompat;
 
 import com.parishod.watomagic.replyproviders.model.AttachmentInfo;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -26,27 +25,26 @@ import java.util.List;
 import java.util.UUID;
 
 /**
- * Extrae imágenes de notificaciones y las guarda como archivos temporales.
+ * Extrae imágenes de notificaciones como adjuntos perezosos.
+ *
+ * {@link #extractAttachments} solo construye descriptores (id y tipo MIME): la copia a
+ * archivo temporal y la miniatura se hacen cuando el bot las pide, así que los bots que
+ * ignoran las imágenes no pagan la copia ni la decodificación. Las copias se guardan en
+ * {@link AttachmentStore}.
  */
 public class AttachmentExtractor {
     private static final String TAG = "AttachmentExtractor";
-    private static final long MAX_FILE_SIZE = 5 * 1024 * 1024; // 5 MB
-    private static final int THUMBNAIL_MAX_SIZE = 200; // 200x200px
-    private static final String ATTACHMENTS_DIR = "bot_attachments";
 
     private final Context context;
-    private final File attachmentsDir;
+    private final AttachmentStore store;
 
     public AttachmentExtractor(@NonNull Context context) {
         this.context = context.getApplicationContext();
-        this.attachmentsDir = new File(context.getExternalFilesDir(null), ATTACHMENTS_DIR);
-        if (!attachmentsDir.exists()) {
-            attachmentsDir.mkdirs();
-        }
+        this.store = AttachmentStore.getInstance(context);
     }
 
     /**
-     * Extrae todas las imágenes disponibles de una notificación.
+     * Describe todas las imágenes disponibles de una notificación, sin copiarlas.
      */
     @NonNull
     public List<AttachmentInfo> extractAttachments(@NonNull StatusBarNotification sbn) {
@@ -60,11 +58,10 @@ public class AttachmentExtractor {
             // 2. EXTRA_PICTURE (BigPictureStyle y otros bitmaps en extras)
             Bitmap picture = extractFromExtraPicture(sbn);
             if (picture != null && !isDuplicateBitmap(picture, seenBitmaps)) {
-                AttachmentInfo info = saveBitmap(picture, "image/jpeg", AttachmentInfo.SourceType.BITMAP);
-                if (info != null) {
-                    attachments.add(info);
-                    seenBitmaps.add(picture);
-                }
+                String id = UUID.randomUUID().toString();
+                attachments.add(new AttachmentInfo(id, "image/jpeg", AttachmentInfo.SourceType.BITMAP,
+                        new BitmapLoader(id, picture, "image/jpeg")));
+                seenBitmaps.add(picture);
             }
         } catch (Exception e) {
             Log.e(TAG, "Error extracting attachments", e);
@@ -106,11 +103,11 @@ public class AttachmentExtractor {
             if (messagingStyle != null) {
                 for (NotificationCompat.MessagingStyle.Message message : messagingStyle.getMessages()) {
                     Uri dataUri = message.getDataUri();
-                    if (dataUri != null && isImageUri(dataUri)) {
-                        AttachmentInfo info = saveUri(dataUri);
-                        if (info != null) {
-                            attachments.add(info);
-                        }
+                    String mimeType = dataUri != null ? getImageMimeType(dataUri) : null;
+                    if (mimeType != null) {
+                        String id = UUID.randomUUID().toString();
+                        attachments.add(new AttachmentInfo(id, mimeType, AttachmentInfo.SourceType.URI,
+                                new UriLoader(id, dataUri, mimeType)));
                     }
                 }
             }
@@ -120,134 +117,121 @@ public class AttachmentExtractor {
         return attachments;
     }
 
-    private boolean isImageUri(@NonNull Uri uri) {
+    @Nullable
+    private String getImageMimeType(@NonNull Uri uri) {
         String scheme = uri.getScheme();
         if ("content".equals(scheme) || "file".equals(scheme)) {
-            String mimeType = context.getContentResolver().getType(uri);
-            return mimeType != null && mimeType.startsWith("image/");
+            try {
+                String mimeType = context.getContentResolver().getType(uri);
+                return mimeType != null && mimeType.startsWith("image/") ? mimeType : null;
+            } catch (SecurityException e) {
+                Log.w(TAG, "Permission denied reading URI type: " + uri, e);
+            }
         }
-        return false;
+        return null;
     }
 
-    @Nullable
-    private AttachmentInfo saveBitmap(@NonNull Bitmap bitmap, @NonNull String mimeType,
-                                      @NonNull AttachmentInfo.SourceType sourceType) {
-        String id = UUID.randomUUID().toString();
-        File outputFile = new File(attachmentsDir, id + getExtensionFromMimeType(mimeType));
-
-        try {
-            FileOutputStream fos = new FileOutputStream(outputFile);
-            Bitmap.CompressFormat format = getCompressFormat(mimeType);
-            bitmap.compress(format, 85, fos);
-            fos.close();
+    /**
+     * Bitmap de los extras de la notificación: se comprime a archivo solo si el bot lo pide.
+     */
+    private final class BitmapLoader implements AttachmentInfo.Loader {
+        private final String id;
+        private final Bitmap bitmap;
+        private final String mimeType;
+
+        BitmapLoader(String id, Bitmap bitmap, String mimeType) {
+            this.id = id;
+            this.bitmap = bitmap;
+            this.mimeType = mimeType;
+        }
 
-            long fileSize = outputFile.length();
-            if (fileSize > MAX_FILE_SIZE) {
-                outputFile.delete();
-                Log.w(TAG, "Image too large: " + fileSize);
-                return null;
-            }
+        @Override
+        public long querySize() {
+            // El tamaño depende de la compresión
+            return -1;
+        }
 
-            String thumbnailBase64 = generateThumbnail(bitmap);
+        @Nullable
+        @Override
+        public File loadFile() {
+            return store.put(id, getExtensionFromMimeType(mimeType), out -> {
+                // compress() no propaga los errores del stream (p. ej. tamaño máximo superado)
+                if (!bitmap.compress(getCompressFormat(mimeType), 85, out)) {
+                    throw new IOException("Bitmap compression failed");
+                }
+            });
+        }
 
-            return new AttachmentInfo(id, mimeType, fileSize, sourceType,
-                                    outputFile.getAbsolutePath(), thumbnailBase64);
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving bitmap", e);
-            if (outputFile.exists()) {
-                outputFile.delete();
-            }
-            return null;
+        @Nullable
+        @Override
+        public String loadThumbnail(@Nullable File file) {
+            return ThumbnailCache.getInstance(context).getThumbnail(bitmap);
         }
     }
 
-    @Nullable
-    private AttachmentInfo saveUri(@NonNull Uri uri) {
-        String id = UUID.randomUUID().toString();
-        ContentResolver resolver = context.getContentResolver();
+    /**
+     * URI de MessagingStyle: se copia a archivo solo si el bot lo pide.
+     */
+    private final class UriLoader implements AttachmentInfo.Loader {
+        private final String id;
+        private final Uri uri;
+        private final String mimeType;
+
+        UriLoader(String id, Uri uri, String mimeType) {
+            this.id = id;
+            this.uri = uri;
+            this.mimeType = mimeType;
+        }
 
-        try {
-            String mimeType = resolver.getType(uri);
-            if (mimeType == null || !mimeType.startsWith("image/")) {
-                return null;
+        @Override
+        public long querySize() {
+            if (!"content".equals(uri.getScheme())) {
+                return -1;
             }
-
-            File outputFile = new File(attachmentsDir, id + getExtensionFromMimeType(mimeType));
-
-            try (InputStream inputStream = resolver.openInputStream(uri);
-                 FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-
-                if (inputStream == null) {
-                    return null;
+            try (Cursor cursor = context.getContentResolver().query(
+                    uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                    return cursor.getLong(0);
                 }
+            } catch (Exception e) {
+                Log.d(TAG, "Size not available for URI: " + uri, e);
+            }
+            return -1;
+        }
 
-                byte[] buffer = new byte[8192];
-                long totalSize = 0;
-                int bytesRead;
-
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    if (totalSize + bytesRead > MAX_FILE_SIZE) {
-                        outputFile.delete();
-                        Log.w(TAG, "Image from URI too large");
-                        return null;
+        @Nullable
+        @Override
+        public File loadFile() {
+            // AttachmentStore corta la copia si supera el tamaño máximo
+            return store.put(id, getExtensionFromMimeType(mimeType), out -> {
+                try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
+                    if (inputStream == null) {
+                        throw new FileNotFoundException("No stream for " + uri);
+                    }
+                    byte[] buffer = new byte[8192];
+                    int bytesRead;
+                    while ((bytesRead = inputStream.read(buffer)) != -1) {
+                        out.write(buffer, 0, bytesRead);
                     }
-                    outputStream.write(buffer, 0, bytesRead);
-                    totalSize += bytesRead;
                 }
-            }
-
-            long fileSize = outputFile.length();
-
-            Bitmap bitmap = BitmapFactory.decodeFile(outputFile.getAbsolutePath());
-            String thumbnailBase64 = bitmap != null ? generateThumbnail(bitmap) : null;
-            if (bitmap != null) {
-                bitmap.recycle();
-            }
-
-            return new AttachmentInfo(id, mimeType, fileSize, AttachmentInfo.SourceType.URI,
-                                    outputFile.getAbsolutePath(), thumbnailBase64);
-        } catch (SecurityException e) {
-            Log.w(TAG, "Permission denied reading URI: " + uri, e);
-            return null;
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving URI", e);
-            return null;
+            });
         }
-    }
-
-    @Nullable
-    private String generateThumbnail(@NonNull Bitmap original) {
-        try {
-            int width = original.getWidth();
-            int height = original.getHeight();
 
-            if (width <= THUMBNAIL_MAX_SIZE && height <= THUMBNAIL_MAX_SIZE) {
-                return bitmapToBase64(original);
+        @Nullable
+        @Override
+        public String loadThumbnail(@Nullable File file) {
+            ThumbnailCache cache = ThumbnailCache.getInstance(context);
+            // Si ya se copió se lee del archivo, cuyo hash ya calculó el almacén
+            if (file != null) {
+                return cache.getThumbnail(AttachmentStore.contentHashOf(file), () -> new FileInputStream(file));
             }
-
-            float scale = Math.min((float) THUMBNAIL_MAX_SIZE / width,
-                                 (float) THUMBNAIL_MAX_SIZE / height);
-            int newWidth = Math.round(width * scale);
-            int newHeight = Math.round(height * scale);
-
-            Bitmap thumbnail = Bitmap.createScaledBitmap(original, newWidth, newHeight, true);
-            String base64 = bitmapToBase64(thumbnail);
-            thumbnail.recycle();
-            return base64;
-        } catch (Exception e) {
-            Log.e(TAG, "Error generating thumbnail", e);
-            return null;
+            // Si no, directamente de la URI sin copiarla
+            long size = querySize();
+            return cache.getThumbnail(size >= 0 ? ThumbnailCache.keyForUri(uri.toString(), size) : null,
+                    () -> context.getContentResolver().openInputStream(uri));
         }
     }
 
-    @NonNull
-    private String bitmapToBase64(@NonNull Bitmap bitmap) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 70, baos);
-        byte[] imageBytes = baos.toByteArray();
-        return Base64.encodeToString(imageBytes, Base64.NO_WRAP);
-    }
-
     @NonNull
     private String getExtensionFromMimeType(@NonNull String mimeType) {
         if (mimeType.contains("jpeg") || mimeType.contains("jpg")) {
@@ -274,26 +258,10 @@ public class AttachmentExtractor {
 
     @Nullable
     public String getAttachmentPath(@NonNull String attachmentId) {
-        File[] files = attachmentsDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.getName().startsWith(attachmentId)) {
-                    return file.getAbsolutePath();
-                }
-            }
-        }
-        return null;
+        return store.getPath(attachmentId);
     }
 
     public boolean deleteAttachment(@NonNull String attachmentId) {
-        File[] files = attachmentsDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.getName().startsWith(attachmentId)) {
-                    return file.delete();
-                }
-            }
-        }
-        return false;
+        return store.release(attachmentId);
     }
 }
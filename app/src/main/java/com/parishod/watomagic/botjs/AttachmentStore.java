@@ -0,0 +1,357 @@
+package com.parishod.watomagic.botjs;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Almacén de adjuntos en bot_attachments direccionado por contenido.
+ *
+ * Cada archivo se guarda una sola vez con el SHA-256 de su contenido como nombre, así que
+ * la misma imagen reenviada en varios chats ocupa un único archivo. Los ids de adjunto
+ * apuntan a su archivo mediante un índice en memoria (búsqueda O(1), sin listar el
+ * directorio) y cada archivo cuenta cuántos ids lo referencian: se borra cuando se libera
+ * el último. Los ids de una ejecución se liberan cuando termina ({@link BotExecutionState}).
+ *
+ * El total en disco se mantiene por debajo de {@link #MAX_TOTAL_BYTES} borrando los
+ * archivos sin referencias usados hace más tiempo; un archivo referenciado no se borra
+ * aunque se supere el presupuesto, porque un bot en marcha puede estar leyéndolo. El
+ * directorio solo se lista una vez, al crear el almacén, para recuperar los archivos de
+ * ejecuciones anteriores.
+ *
+ * Thread-safe.
+ */
+public final class AttachmentStore {
+    private static final String TAG = "AttachmentStore";
+    static final String ATTACHMENTS_DIR = "bot_attachments";
+    static final long MAX_FILE_SIZE = 5 * 1024 * 1024; // 5 MB
+    static final long MAX_TOTAL_BYTES = 50 * 1024 * 1024; // 50 MB
+
+    private static volatile AttachmentStore instance;
+
+    /**
+     * Escribe el contenido del adjunto.
+     */
+    public interface Source {
+        void writeTo(@NonNull OutputStream out) throws IOException;
+    }
+
+    public static final class CleanupResult {
+        public final int filesDeleted;
+        public final long bytesFreed;
+
+        CleanupResult(int filesDeleted, long bytesFreed) {
+            this.filesDeleted = filesDeleted;
+            this.bytesFreed = bytesFreed;
+        }
+    }
+
+    private static final class Blob {
+        final File file;
+        final long size;
+        long lastUsed;
+        int refs;
+
+        Blob(File file, long size, long lastUsed) {
+            this.file = file;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private final File dir;
+    private final long maxTotalBytes;
+    // Guarded by this
+    private final Map<String, Blob> byId = new HashMap<>();
+    /** Archivos por nombre, del usado hace más tiempo al más reciente */
+    private final LinkedHashMap<String, Blob> blobs = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private boolean loaded;
+
+    @VisibleForTesting
+    AttachmentStore(@NonNull File dir, long maxTotalBytes) {
+        this.dir = dir;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    @NonNull
+    public static AttachmentStore getInstance(@NonNull Context context) {
+        AttachmentStore store = instance;
+        if (store == null) {
+            synchronized (AttachmentStore.class) {
+                store = instance;
+                if (store == null) {
+                    store = new AttachmentStore(
+                            new File(context.getApplicationContext().getExternalFilesDir(null), ATTACHMENTS_DIR),
+                            MAX_TOTAL_BYTES);
+                    instance = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Guarda el contenido bajo {@code id} y devuelve su archivo, o null si no se pudo
+     * escribir o supera {@link #MAX_FILE_SIZE}. Si ya había un archivo con el mismo contenido
+     * se reutiliza.
+     */
+    @Nullable
+    public File put(@NonNull String id, @NonNull String extension, @NonNull Source source) {
+        synchronized (this) {
+            ensureLoaded();
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Cannot create attachments directory");
+            return null;
+        }
+
+        File tmp = new File(dir, id + ".tmp");
+        MessageDigest digest = newDigest();
+        long size;
+        try (SizeLimitOutputStream out = new SizeLimitOutputStream(
+                new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)), digest), MAX_FILE_SIZE)) {
+            source.writeTo(out);
+            size = out.written;
+        } catch (SizeLimitException e) {
+            Log.w(TAG, "Attachment too large: " + id);
+            tmp.delete();
+            return null;
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Error writing attachment " + id, e);
+            tmp.delete();
+            return null;
+        }
+
+        String name = toHex(digest.digest()) + extension;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Blob blob = blobs.get(name);
+            if (blob != null && blob.file.exists()) {
+                // Mismo contenido ya guardado
+                tmp.delete();
+                blob.lastUsed = now;
+                blob.file.setLastModified(now);
+            } else {
+                File file = new File(dir, name);
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                    return null;
+                }
+                if (blob != null) {
+                    // El archivo se borró desde fuera; se vuelve a usar la misma entrada
+                    blob.lastUsed = now;
+                } else {
+                    blob = new Blob(file, size, now);
+                    blobs.put(name, blob);
+                    totalBytes += size;
+                }
+            }
+            blob.refs++;
+            Blob previous = byId.put(id, blob);
+            if (previous != null) {
+                unref(previous);
+            }
+            trimToBudget(blob);
+            return blob.file;
+        }
+    }
+
+    /**
+     * Ruta del adjunto guardado con {@code id}, o null.
+     */
+    @Nullable
+    public synchronized String getPath(@NonNull String id) {
+        Blob blob = byId.get(id);
+        if (blob == null) {
+            return null;
+        }
+        // Marca el archivo como usado recientemente para el recorte por presupuesto
+        blobs.get(blob.file.getName());
+        blob.lastUsed = System.currentTimeMillis();
+        return blob.file.getAbsolutePath();
+    }
+
+    /**
+     * SHA-256 del contenido de un archivo devuelto por {@link #put}, que es su nombre.
+     */
+    @NonNull
+    public static String contentHashOf(@NonNull File file) {
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        return dot >= 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Suelta la referencia de {@code id}; el archivo se borra si ya nadie lo usa.
+     */
+    public synchronized boolean release(@NonNull String id) {
+        Blob blob = byId.remove(id);
+        if (blob == null) {
+            return false;
+        }
+        unref(blob);
+        return true;
+    }
+
+    /**
+     * Borra los archivos no usados desde {@code cutoffTime}, estén referenciados o no.
+     */
+    @NonNull
+    public synchronized CleanupResult deleteOlderThan(long cutoffTime) {
+        ensureLoaded();
+        List<Blob> expired = new ArrayList<>();
+        for (Blob blob : blobs.values()) {
+            if (blob.lastUsed < cutoffTime) {
+                expired.add(blob);
+            }
+        }
+        int deleted = 0;
+        long freed = 0;
+        for (Blob blob : expired) {
+            if (delete(blob)) {
+                deleted++;
+                freed += blob.size;
+            }
+        }
+        return new CleanupResult(deleted, freed);
+    }
+
+    @VisibleForTesting
+    synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void unref(Blob blob) {
+        if (--blob.refs <= 0) {
+            delete(blob);
+        }
+    }
+
+    private boolean delete(Blob blob) {
+        if (blobs.remove(blob.file.getName()) == null) {
+            return false;
+        }
+        totalBytes -= blob.size;
+        byId.values().removeIf(b -> b == blob);
+        if (!blob.file.delete() && blob.file.exists()) {
+            Log.w(TAG, "Failed to delete: " + blob.file.getName());
+            return false;
+        }
+        return true;
+    }
+
+    private void trimToBudget(Blob keep) {
+        Iterator<Blob> it = new ArrayList<>(blobs.values()).iterator();
+        while (totalBytes > maxTotalBytes && it.hasNext()) {
+            Blob oldest = it.next();
+            if (oldest != keep && oldest.refs <= 0) {
+                delete(oldest);
+            }
+        }
+        if (totalBytes > maxTotalBytes) {
+            Log.w(TAG, "Referenced attachments exceed the budget: " + totalBytes + " bytes");
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<Blob> existing = new ArrayList<>();
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            if (file.getName().endsWith(".tmp")) {
+                file.delete();
+                continue;
+            }
+            existing.add(new Blob(file, file.length(), file.lastModified()));
+        }
+        existing.sort((a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+        for (Blob blob : existing) {
+            // Sin ids que los referencien: solo se borran por antigüedad o presupuesto
+            blobs.put(blob.file.getName(), blob);
+            totalBytes += blob.size;
+        }
+    }
+
+    @NonNull
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    private static String toHex(@NonNull byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static final class SizeLimitException extends IOException {
+        SizeLimitException() {
+            super("Attachment exceeds " + MAX_FILE_SIZE + " bytes");
+        }
+    }
+
+    private static final class SizeLimitOutputStream extends FilterOutputStream {
+        private final long limit;
+        long written;
+
+        SizeLimitOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkLimit(1);
+            out.write(b);
+            written++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            checkLimit(len);
+            out.write(b, off, len);
+            written += len;
+        }
+
+        private void checkLimit(int len) throws SizeLimitException {
+            if (written + len > limit) {
+                throw new SizeLimitException();
+            }
+        }
+    }
+}
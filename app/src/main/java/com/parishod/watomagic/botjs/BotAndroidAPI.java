@@ -1,7 +1,6 @@
 package com.parishod.watomagic.botjs;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.util.Base64;
@@ -9,6 +8,9 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.parishod.watomagic.replyproviders.model.AttachmentInfo;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -17,10 +19,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.MediaType;
+import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -32,21 +40,24 @@ import okhttp3.Response;
 public class BotAndroidAPI {
 
     private static final String TAG = "BotAndroidAPI";
-    private static final String STORAGE_NAME = "bot_storage";
     private static final MediaType DEFAULT_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+    /** Timeout por petición cuando el bot no indica timeoutMs */
+    static final long DEFAULT_HTTP_TIMEOUT_MS = 4_000;
 
     private final Context context;
-    private final SharedPreferences botStorage;
+    private final BotStorage botStorage;
     private final OkHttpClient httpClient;
 
     public BotAndroidAPI(@NonNull Context context) {
+        this(context, BotHttpClient.getInstance(context.getApplicationContext()));
+    }
+
+    @VisibleForTesting
+    BotAndroidAPI(@NonNull Context context, @NonNull OkHttpClient httpClient) {
         this.context = context.getApplicationContext();
-        this.botStorage = this.context.getSharedPreferences(STORAGE_NAME, Context.MODE_PRIVATE);
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(15, TimeUnit.SECONDS)
-                .build();
+        this.botStorage = BotStorage.forNamespace(this.context,
+                BotRepository.getInstalledBotNamespace(this.context));
+        this.httpClient = httpClient;
     }
 
     // Logging
@@ -74,45 +85,259 @@ public class BotAndroidAPI {
     // Storage
     @Nullable
     public String storageGet(String key) {
-        return botStorage.getString(key, null);
+        return botStorage.get(key);
     }
 
-    public void storageSet(String key, String value) {
-        botStorage.edit().putString(key, value).apply();
+    public void storageSet(String key, String value) throws BotStorage.QuotaExceededException {
+        botStorage.set(key, value);
+    }
+
+    /**
+     * @param ttlMs milisegundos hasta que la clave expira, 0 para no expirar
+     */
+    public void storageSet(String key, String value, long ttlMs) throws BotStorage.QuotaExceededException {
+        botStorage.set(key, value, ttlMs);
+    }
+
+    /**
+     * @return valores de las claves, en el mismo orden; null para las que no existen
+     */
+    public String[] storageGetMany(String[] keys) {
+        return botStorage.getMany(keys);
+    }
+
+    /**
+     * Guarda todas las claves o ninguna si superan la cuota.
+     * @param ttlMs milisegundos hasta que las claves expiran, 0 para no expirar
+     */
+    public void storageSetMany(Map<String, String> entries, long ttlMs) throws BotStorage.QuotaExceededException {
+        botStorage.setMany(entries, ttlMs);
     }
 
     public void storageRemove(String key) {
-        botStorage.edit().remove(key).apply();
+        botStorage.remove(key);
     }
 
     public String[] storageKeys() {
-        Map<String, ?> all = botStorage.getAll();
-        return all.keySet().toArray(new String[0]);
+        // Copia: el arreglo de BotStorage es compartido y el bot puede modificar el suyo
+        return botStorage.keys().clone();
+    }
+
+    @Nullable
+    public String storageKey(int index) {
+        return botStorage.key(index);
+    }
+
+    public int storageLength() {
+        return botStorage.size();
+    }
+
+    public void storageClear() {
+        botStorage.clear();
     }
 
     // HTTP
-    public String httpRequest(String optionsJson) throws IOException {
+    /**
+     * Petición HTTP síncrona.
+     *
+     * @param maxTimeoutMs tiempo máximo para la petición (lo que le queda a la ejecución);
+     *                     el timeoutMs de las opciones nunca lo supera
+     */
+    public String httpRequest(String optionsJson, long maxTimeoutMs) throws IOException {
+        return execute(newCall(parseOptions(optionsJson), maxTimeoutMs, null));
+    }
+
+    /**
+     * Sube un adjunto de la notificación leyéndolo del archivo mientras se envía, sin
+     * pasar por Base64 ni por el heap de JS. Si el adjunto aún no se había copiado al
+     * sandbox se copia antes.
+     *
+     * Opciones: las de httpRequest (method POST por defecto, o PUT) más
+     * {@code multipartField}/{@code fileName}/{@code fields} para enviarlo como
+     * multipart/form-data en vez de como cuerpo directo.
+     */
+    public String uploadAttachment(@NonNull AttachmentExtractor extractor, @Nullable AttachmentInfo attachment,
+                                   @NonNull String attachmentId, String optionsJson, long maxTimeoutMs)
+            throws IOException {
+        JSONObject options = parseOptions(optionsJson);
+        String path = getAttachmentPath(extractor, attachment, attachmentId);
+        if (path == null) {
+            throw new IOException("Attachment not available: " + attachmentId);
+        }
+        File file = new File(path);
+        MediaType mediaType = MediaType.parse(
+                attachment != null ? attachment.getMimeType() : "application/octet-stream");
+        return execute(newUploadCall(options, RequestBody.create(file, mediaType), file.getName(), maxTimeoutMs));
+    }
+
+    /**
+     * Como {@link #uploadAttachment}, pero con la imagen de la carpeta SAF de WhatsApp,
+     * que se lee directamente de la URI del documento.
+     *
+     * @return el cuerpo de la respuesta, o null si no hay imagen para ese momento
+     */
+    @Nullable
+    public String uploadLatestWhatsAppImage(@NonNull WhatsAppMediaResolver resolver, long notificationTimestamp,
+                                            String optionsJson, long maxTimeoutMs) throws IOException {
+        JSONObject options = parseOptions(optionsJson);
+        WhatsAppMediaIndex.Media image = resolver.findLatestImage(notificationTimestamp);
+        if (image == null) {
+            return null;
+        }
+        RequestBody body = new ContentUriRequestBody(context.getContentResolver(), image.getUri(),
+                image.size, MediaType.parse(image.mimeType != null ? image.mimeType : "image/jpeg"));
+        return execute(newUploadCall(options, body, image.name, maxTimeoutMs));
+    }
+
+    private Call newUploadCall(JSONObject options, RequestBody fileBody, String defaultFileName,
+                               long maxTimeoutMs) throws IOException {
+        String field = options.optString("multipartField", null);
+        if (field == null) {
+            return newCall(options, maxTimeoutMs, fileBody);
+        }
+        MultipartBody.Builder multipart = new MultipartBody.Builder().setType(MultipartBody.FORM);
+        JSONObject fields = options.optJSONObject("fields");
+        if (fields != null) {
+            Iterator<String> keys = fields.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                multipart.addFormDataPart(key, fields.optString(key));
+            }
+        }
+        multipart.addFormDataPart(field, options.optString("fileName", defaultFileName), fileBody);
+        return newCall(options, maxTimeoutMs, multipart.build());
+    }
+
+    private String execute(Call call) throws IOException {
+        // Cerrar la respuesta devuelve la conexión al pool
+        try (Response response = call.execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP " + response.code() + ": " + response.message());
+            }
+
+            if (response.body() == null) {
+                return "";
+            }
+            return response.body().string();
+        }
+    }
+
+    /**
+     * Lanza varias peticiones en paralelo a través del dispatcher de OkHttp y espera a
+     * que terminen todas, o a que venza {@code deadlineMs}. Las peticiones que no hayan
+     * terminado para entonces se cancelan y devuelven un error.
+     *
+     * @return un resultado por petición, en el mismo orden
+     */
+    public HttpResult[] httpRequestAll(List<String> optionsJson, long deadlineMs) {
+        int count = optionsJson.size();
+        AtomicReferenceArray<HttpResult> results = new AtomicReferenceArray<>(count);
+        CountDownLatch latch = new CountDownLatch(count);
+        Call[] calls = new Call[count];
+
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            try {
+                calls[i] = newCall(parseOptions(optionsJson.get(i)), deadlineMs, null);
+            } catch (IOException e) {
+                results.set(index, HttpResult.error(e.getMessage()));
+                latch.countDown();
+                continue;
+            }
+            calls[i].enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    results.compareAndSet(index, null, HttpResult.error(
+                            call.isCanceled() ? "Request cancelled" : e.getMessage()));
+                    latch.countDown();
+                }
+
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    try (Response closeable = response) {
+                        String body = closeable.body() != null ? closeable.body().string() : "";
+                        results.compareAndSet(index, null,
+                                new HttpResult(closeable.isSuccessful(), closeable.code(), body, null));
+                    } catch (IOException e) {
+                        results.compareAndSet(index, null, HttpResult.error(e.getMessage()));
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        String pendingError = "Deadline exceeded";
         try {
-            JSONObject options = new JSONObject(optionsJson);
-            String url = options.getString("url");
+            latch.await(deadlineMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // La ejecución fue cancelada: el presupuesto del bot abortará el script
+            Thread.currentThread().interrupt();
+            pendingError = "Request cancelled";
+        }
 
-            if (!url.startsWith("https://")) {
-                throw new IOException("Only HTTPS URLs are allowed");
+        HttpResult[] out = new HttpResult[count];
+        for (int i = 0; i < count; i++) {
+            if (results.compareAndSet(i, null, HttpResult.error(pendingError)) && calls[i] != null) {
+                calls[i].cancel();
             }
+            out[i] = results.get(i);
+        }
+        return out;
+    }
+
+    private JSONObject parseOptions(String optionsJson) throws IOException {
+        try {
+            return new JSONObject(optionsJson);
+        } catch (JSONException e) {
+            throw new IOException("Invalid options JSON", e);
+        }
+    }
 
-            String method = options.optString("method", "GET").toUpperCase();
-            JSONObject headersObj = options.optJSONObject("headers");
-            String bodyString = options.optString("body", null);
+    /**
+     * Construye la llamada a partir de las opciones del bot, con su timeout total
+     * (timeoutMs de las opciones, acotado por {@code maxTimeoutMs}).
+     *
+     * @param uploadBody cuerpo ya construido de una subida; sustituye a la opción body
+     */
+    private Call newCall(JSONObject options, long maxTimeoutMs, @Nullable RequestBody uploadBody) throws IOException {
+        String url = options.optString("url", null);
+        if (url == null) {
+            throw new IOException("Missing url");
+        }
+        if (!url.startsWith("https://")) {
+            throw new IOException("Only HTTPS URLs are allowed");
+        }
+
+        String method = options.optString("method", uploadBody != null ? "POST" : "GET").toUpperCase();
+        JSONObject headersObj = options.optJSONObject("headers");
+        String bodyString = options.optString("body", null);
 
-            Request.Builder builder = new Request.Builder().url(url);
+        Request.Builder builder;
+        try {
+            builder = new Request.Builder().url(url);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid url: " + url, e);
+        }
         if (headersObj != null) {
             Iterator<String> keys = headersObj.keys();
             while (keys.hasNext()) {
                 String key = keys.next();
-                builder.addHeader(key, headersObj.optString(key));
+                try {
+                    builder.addHeader(key, headersObj.optString(key));
+                } catch (IllegalArgumentException e) {
+                    // Nombre o valor no ASCII, o con saltos de línea
+                    throw new IOException("Invalid header: " + key, e);
+                }
             }
         }
 
+        if (uploadBody != null) {
+            if (!"POST".equals(method) && !"PUT".equals(method)) {
+                throw new IOException("Uploads must use POST or PUT");
+            }
+            builder.method(method, uploadBody);
+        } else {
             switch (method) {
                 case "POST":
                 case "PUT":
@@ -129,20 +354,12 @@ public class BotAndroidAPI {
                     builder.get();
                     break;
             }
-
-            Response response = httpClient.newCall(builder.build()).execute();
-            if (!response.isSuccessful()) {
-                throw new IOException("HTTP " + response.code() + ": " + response.message());
-            }
-
-            if (response.body() == null) {
-                return "";
-            }
-            return response.body().string();
-
-        } catch (JSONException e) {
-            throw new IOException("Invalid options JSON", e);
         }
+
+        long timeoutMs = Math.min(options.optLong("timeoutMs", DEFAULT_HTTP_TIMEOUT_MS), maxTimeoutMs);
+        Call call = httpClient.newCall(builder.build());
+        call.timeout().timeout(Math.max(1, timeoutMs), TimeUnit.MILLISECONDS);
+        return call;
     }
 
     private MediaType extractMediaType(@Nullable JSONObject headers) {
@@ -171,10 +388,15 @@ public class BotAndroidAPI {
         }
     }
 
-    // Attachment access - these methods are called with attachment context from BotJsEngine
+    // Attachment access - these methods are called with attachment context from BotJsEngine.
+    // Notification attachments are lazy: asking for the path copies the attachment to disk.
     @Nullable
-    public String getAttachmentPath(@NonNull AttachmentExtractor extractor, @NonNull String attachmentId) {
+    public String getAttachmentPath(@NonNull AttachmentExtractor extractor, @Nullable AttachmentInfo attachment,
+                                    @NonNull String attachmentId) {
         try {
+            if (attachment != null) {
+                return attachment.getTemporaryPath();
+            }
             return extractor.getAttachmentPath(attachmentId);
         } catch (Exception e) {
             Log.e(TAG, "Error getting attachment path", e);
@@ -183,9 +405,10 @@ public class BotAndroidAPI {
     }
 
     @Nullable
-    public String readAttachmentAsBase64(@NonNull AttachmentExtractor extractor, @NonNull String attachmentId) {
+    public String readAttachmentAsBase64(@NonNull AttachmentExtractor extractor, @Nullable AttachmentInfo attachment,
+                                         @NonNull String attachmentId) {
         try {
-            String path = extractor.getAttachmentPath(attachmentId);
+            String path = getAttachmentPath(extractor, attachment, attachmentId);
             if (path == null) {
                 return null;
             }
@@ -208,7 +431,7 @@ public class BotAndroidAPI {
     }
 
     @Nullable
-    public String getAttachmentThumbnail(@NonNull com.parishod.watomagic.replyproviders.model.AttachmentInfo attachment) {
+    public String getAttachmentThumbnail(@NonNull AttachmentInfo attachment) {
         return attachment.getThumbnailBase64();
     }
 
@@ -225,4 +448,29 @@ public class BotAndroidAPI {
     public boolean hasWhatsAppMediaAccess(@NonNull WhatsAppMediaResolver resolver) {
         return resolver.hasMediaFolderAccess();
     }
+
+    /**
+     * Resultado de una petición de httpRequestAll: respuesta (ok según el código HTTP)
+     * o error de red/timeout.
+     */
+    public static final class HttpResult {
+        public final boolean ok;
+        /** Código HTTP, 0 si no hubo respuesta */
+        public final int status;
+        @Nullable
+        public final String body;
+        @Nullable
+        public final String error;
+
+        HttpResult(boolean ok, int status, @Nullable String body, @Nullable String error) {
+            this.ok = ok;
+            this.status = status;
+            this.body = body;
+            this.error = error;
+        }
+
+        static HttpResult error(@Nullable String message) {
+            return new HttpResult(false, 0, null, message != null ? message : "Request failed");
+        }
+    }
 }
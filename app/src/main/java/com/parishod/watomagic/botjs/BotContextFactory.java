@@ -0,0 +1,119 @@
+package com.parishod.watomagic.botjs;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+
+/**
+ * ContextFactory de Rhino para los bots.
+ *
+ * Configura cada Context (modo interpretado, límites de stack) y aplica un presupuesto
+ * por ejecución dentro de {@link #observeInstructionCount}: si el bot supera el tiempo
+ * de ejecución, el número máximo de instrucciones o su hilo fue interrumpido por el
+ * watchdog, el script se aborta con {@link BudgetExceededError}.
+ *
+ * {@code future.cancel(true)} no detiene al intérprete de Rhino; esta comprobación
+ * cooperativa sí, así que un bot en bucle infinito no sigue consumiendo CPU.
+ */
+public final class BotContextFactory extends ContextFactory {
+
+    /** Cada cuántas instrucciones Rhino llama a observeInstructionCount */
+    private static final int INSTRUCTION_OBSERVER_THRESHOLD = 10_000;
+    private static final int MAX_INTERPRETER_STACK_DEPTH = 100;
+    /** Instrucciones máximas por ejecución (el tiempo suele agotarse antes) */
+    public static final long MAX_INSTRUCTIONS = 20_000_000L;
+
+    private static final Object BUDGET_KEY = ExecutionBudget.class;
+    private static final BotContextFactory INSTANCE = new BotContextFactory();
+
+    private BotContextFactory() {
+    }
+
+    @NonNull
+    public static BotContextFactory getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    protected Context makeContext() {
+        Context cx = super.makeContext();
+        // Configurar para Android (modo interpretado, no compilado)
+        cx.setOptimizationLevel(-1);
+        // Configurar límites de seguridad
+        cx.setInstructionObserverThreshold(INSTRUCTION_OBSERVER_THRESHOLD);
+        cx.setMaximumInterpreterStackDepth(MAX_INTERPRETER_STACK_DEPTH);
+        return cx;
+    }
+
+    @Override
+    protected void observeInstructionCount(Context cx, int instructionCount) {
+        Object budget = cx.getThreadLocal(BUDGET_KEY);
+        if (budget instanceof ExecutionBudget) {
+            ((ExecutionBudget) budget).consume(instructionCount);
+        }
+    }
+
+    /**
+     * Inicia el presupuesto de la ejecución actual en este Context.
+     */
+    public static void startBudget(@NonNull Context cx, long timeoutMs, long maxInstructions) {
+        cx.putThreadLocal(BUDGET_KEY, new ExecutionBudget(timeoutMs, maxInstructions));
+    }
+
+    public static void endBudget(@NonNull Context cx) {
+        cx.removeThreadLocal(BUDGET_KEY);
+    }
+
+    /**
+     * @return milisegundos que le quedan a la ejecución actual, o {@code defaultMs}
+     * si no hay presupuesto activo en este Context
+     */
+    public static long remainingMillis(@NonNull Context cx, long defaultMs) {
+        Object budget = cx.getThreadLocal(BUDGET_KEY);
+        if (budget instanceof ExecutionBudget) {
+            return Math.max(0, ((ExecutionBudget) budget).deadline - SystemClock.elapsedRealtime());
+        }
+        return defaultMs;
+    }
+
+    /**
+     * Presupuesto de una ejecución: deadline de reloj y contador de instrucciones.
+     * Solo lo usa el hilo que ejecuta el bot.
+     */
+    private static final class ExecutionBudget {
+        final long deadline;
+        final long maxInstructions;
+        long instructions;
+
+        ExecutionBudget(long timeoutMs, long maxInstructions) {
+            this.deadline = SystemClock.elapsedRealtime() + timeoutMs;
+            this.maxInstructions = maxInstructions;
+        }
+
+        void consume(int count) {
+            instructions += count;
+            if (instructions > maxInstructions) {
+                throw new BudgetExceededError("Instruction budget exceeded (" + maxInstructions + ")");
+            }
+            if (SystemClock.elapsedRealtime() > deadline) {
+                throw new BudgetExceededError("Execution time budget exceeded");
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new BudgetExceededError("Execution cancelled");
+            }
+        }
+    }
+
+    /**
+     * Aborta el script. Es un {@link Error} para que el código JS no pueda capturarlo
+     * con try/catch y el intérprete de Rhino lo propague sin ejecutar más JS.
+     */
+    public static final class BudgetExceededError extends Error {
+        BudgetExceededError(String message) {
+            super(message);
+        }
+    }
+}
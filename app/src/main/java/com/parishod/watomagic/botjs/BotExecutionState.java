@@ -0,0 +1,93 @@
+package com.parishod.watomagic.botjs;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.parishod.watomagic.replyproviders.model.AttachmentInfo;
+
+import org.mozilla.javascript.ScriptRuntime;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estado de una ejecución concreta del bot.
+ *
+ * Los objetos Android y localStorage viven en el scope compartido (sellado), así que
+ * no pueden guardar referencias a la notificación actual. Este estado se asocia al
+ * Context de Rhino del hilo que ejecuta el bot y las funciones lo recuperan desde ahí.
+ */
+final class BotExecutionState {
+
+    private static final Object KEY = BotExecutionState.class;
+
+    final BotAndroidAPI androidAPI;
+    final AttachmentExtractor attachmentExtractor;
+    final WhatsAppMediaResolver whatsAppMediaResolver;
+    final List<AttachmentInfo> attachments;
+    final Map<String, String> envVars;
+
+    BotExecutionState(@NonNull BotAndroidAPI androidAPI,
+                      @NonNull AttachmentExtractor attachmentExtractor,
+                      @NonNull WhatsAppMediaResolver whatsAppMediaResolver,
+                      @NonNull List<AttachmentInfo> attachments,
+                      @NonNull Map<String, String> envVars) {
+        this.androidAPI = androidAPI;
+        this.attachmentExtractor = attachmentExtractor;
+        this.whatsAppMediaResolver = whatsAppMediaResolver;
+        this.attachments = attachments;
+        this.envVars = envVars;
+    }
+
+    /**
+     * Adjunto de la notificación actual con ese id, o null.
+     */
+    @Nullable
+    AttachmentInfo findAttachment(@NonNull String attachmentId) {
+        for (AttachmentInfo attachment : attachments) {
+            if (attachment.getId().equals(attachmentId)) {
+                return attachment;
+            }
+        }
+        return null;
+    }
+
+    void attach(@NonNull org.mozilla.javascript.Context rhinoContext) {
+        rhinoContext.putThreadLocal(KEY, this);
+    }
+
+    /**
+     * Quita el estado del Context y suelta los adjuntos que la ejecución copió a disco.
+     */
+    static void detach(@NonNull org.mozilla.javascript.Context rhinoContext) {
+        Object state = rhinoContext.getThreadLocal(KEY);
+        rhinoContext.removeThreadLocal(KEY);
+        if (state instanceof BotExecutionState) {
+            ((BotExecutionState) state).releaseAttachments();
+        }
+    }
+
+    private void releaseAttachments() {
+        for (AttachmentInfo attachment : attachments) {
+            attachmentExtractor.deleteAttachment(attachment.getId());
+        }
+    }
+
+    /**
+     * Devuelve el estado de la ejecución en curso en este Context.
+     * Lanza un error JS si se usa la API fuera de una ejecución del bot.
+     */
+    @NonNull
+    static BotExecutionState from(@NonNull org.mozilla.javascript.Context rhinoContext) {
+        Object state = rhinoContext.getThreadLocal(KEY);
+        if (!(state instanceof BotExecutionState)) {
+            throw ScriptRuntime.constructError("Error", "Android API is only available during bot execution");
+        }
+        return (BotExecutionState) state;
+    }
+
+    @NonNull
+    static BotExecutionState current() {
+        return from(org.mozilla.javascript.Context.getCurrentContext());
+    }
+}
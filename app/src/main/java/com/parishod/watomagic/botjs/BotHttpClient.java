@@ -0,0 +1,82 @@
+package com.parishod.watomagic.botjs;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.parishod.watomagic.model.preferences.PreferencesManager;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Cliente HTTP compartido por todas las ejecuciones de bots.
+ *
+ * Un único OkHttpClient por proceso, así que las conexiones, las sesiones TLS y las
+ * resoluciones DNS se reutilizan entre notificaciones. Negocia HTTP/2 (varias peticiones
+ * al mismo host comparten conexión) y usa una caché en disco que respeta Cache-Control.
+ */
+public final class BotHttpClient {
+
+    private static final String CACHE_DIR_NAME = "bot_http_cache";
+    private static final long CACHE_SIZE_BYTES = 10L * 1024 * 1024;
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_REQUESTS = 16;
+
+    private static volatile OkHttpClient instance;
+
+    private BotHttpClient() {
+    }
+
+    @NonNull
+    public static OkHttpClient getInstance(@NonNull Context context) {
+        OkHttpClient client = instance;
+        if (client == null) {
+            synchronized (BotHttpClient.class) {
+                client = instance;
+                if (client == null) {
+                    client = create(context.getApplicationContext());
+                    instance = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Cambia el máximo de peticiones simultáneas por host. Se aplica de inmediato a las
+     * peticiones encoladas.
+     */
+    public static void setMaxRequestsPerHost(@NonNull Context context, int maxRequestsPerHost) {
+        PreferencesManager.getPreferencesInstance(context).setBotJsHttpMaxRequestsPerHost(maxRequestsPerHost);
+        OkHttpClient client = instance;
+        if (client != null) {
+            client.dispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+        }
+    }
+
+    private static OkHttpClient create(@NonNull Context appContext) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(
+                PreferencesManager.getPreferencesInstance(appContext).getBotJsHttpMaxRequestsPerHost());
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .cache(new Cache(new File(appContext.getCacheDir(), CACHE_DIR_NAME), CACHE_SIZE_BYTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(15, TimeUnit.SECONDS)
+                .build();
+    }
+}
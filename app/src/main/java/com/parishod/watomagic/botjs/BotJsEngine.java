@@ -4,13 +4,15 @@ import android.content.Context;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 
 import com.parishod.watomagic.replyproviders.model.NotificationData;
 import com.parishod.watomagic.model.preferences.PreferencesManager;
 
 import org.mozilla.javascript.Function;
+import org.mozilla.javascript.JavaScriptException;
 import org.mozilla.javascript.NativeJSON;
-import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.ScriptRuntime;
@@ -18,7 +20,6 @@ import org.mozilla.javascript.ScriptRuntime;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
-import java.util.Map;
 
 /**
  * Motor JavaScript usando Rhino para ejecutar bots.
@@ -32,13 +33,21 @@ import java.util.Map;
 public class BotJsEngine {
 
     private static final String TAG = "BotJsEngine";
-    private static final int EXECUTION_TIMEOUT_MS = 5_000;
+    public static final int EXECUTION_TIMEOUT_MS = 5_000;
+    /** Peticiones máximas por llamada a Android.httpRequestAll */
+    private static final int MAX_PARALLEL_HTTP_REQUESTS = 8;
+    /** Tiempo que httpRequestAll reserva para que el bot procese las respuestas */
+    private static final long HTTP_DEADLINE_MARGIN_MS = 250;
 
     private final Context context;
     private final BotAndroidAPI androidAPI;
-    private AttachmentExtractor attachmentExtractor;
-    private WhatsAppMediaResolver whatsAppMediaResolver;
-    private java.util.List<com.parishod.watomagic.replyproviders.model.AttachmentInfo> currentAttachments;
+
+    /**
+     * Scope global compartido por todas las ejecuciones: objetos estándar de JavaScript,
+     * Android y localStorage. Se crea una vez por proceso y se sella, así que es seguro
+     * compartirlo entre hilos. Cada ejecución trabaja sobre un scope hijo.
+     */
+    private static volatile ScriptableObject sharedScope;
 
     public BotJsEngine(@NonNull Context context) {
         this.context = context.getApplicationContext();
@@ -51,33 +60,34 @@ public class BotJsEngine {
         Log.i(TAG, "BotJsEngine ready (Context will be created per execution)");
     }
 
-    public String executeBot(@NonNull String jsCode,
-                             @NonNull NotificationData notificationData)
+    public BotResponse executeBot(@NonNull String jsCode,
+                                  @NonNull NotificationData notificationData)
             throws BotExecutionException {
-        Callable<String> task = () -> {
-            // Create Rhino Context on the execution thread (required for thread-local Context)
-            org.mozilla.javascript.Context rhinoContext = org.mozilla.javascript.Context.enter();
+        Callable<BotResponse> task = () -> {
+            // Create Rhino Context on the execution thread (required for thread-local Context).
+            // BotContextFactory configura el Context y aplica el presupuesto de ejecución.
+            org.mozilla.javascript.Context rhinoContext = BotContextFactory.getInstance().enterContext();
             try {
-                // Configurar para Android (modo interpretado, no compilado)
-                rhinoContext.setOptimizationLevel(-1);
-
-                // Configurar límites de seguridad
-                rhinoContext.setInstructionObserverThreshold(10000);
-                rhinoContext.setMaximumInterpreterStackDepth(100);
-
-                // Crear scope global con objetos estándar de JavaScript
-                Scriptable scope = rhinoContext.initStandardObjects();
-
-                // Initialize attachment extractor and store attachments from notification
-                attachmentExtractor = new AttachmentExtractor(context);
-                whatsAppMediaResolver = new WhatsAppMediaResolver(context);
-                currentAttachments = notificationData.getAttachments();
-
-                // Inyectar API de Android en este scope
-                injectAndroidAPIs(rhinoContext, scope);
-
-                // Evaluar el código del bot (define la función processNotification)
-                rhinoContext.evaluateString(scope, jsCode, "bot.js", 1, null);
+                BotContextFactory.startBudget(rhinoContext, EXECUTION_TIMEOUT_MS,
+                        BotContextFactory.MAX_INSTRUCTIONS);
+
+                Scriptable scope = newExecutionScope(rhinoContext);
+
+                // Estado de esta ejecución, accesible para las funciones de Android/localStorage
+                String envText = PreferencesManager.getPreferencesInstance(context).getBotJsEnvVars();
+                new BotExecutionState(
+                        androidAPI,
+                        new AttachmentExtractor(context),
+                        new WhatsAppMediaResolver(context),
+                        notificationData.getAttachments(),
+                        BotEnvParser.parse(envText)
+                ).attach(rhinoContext);
+
+                // Ejecutar el bot compilado (define la función processNotification).
+                // Se reutiliza la compilación mientras el hash del bot instalado no cambie.
+                Script script = BotScriptCache.getOrCompile(rhinoContext,
+                        BotRepository.getInstalledBotHash(context), jsCode);
+                script.exec(rhinoContext, scope);
 
                 // Verificar que processNotification existe
                 Object processNotifObj = scope.get("processNotification", scope);
@@ -89,23 +99,20 @@ public class BotJsEngine {
                     );
                 }
 
-                // Convertir NotificationData a objeto JavaScript
-                String notificationJson = BotNotificationMapper.toJson(notificationData);
-                Object notificationObj = NativeJSON.parse(rhinoContext, scope, notificationJson,
-                    (cx, sc, thisObj, args) -> args[1]);
+                // Vista JavaScript perezosa de NotificationData (sin pasar por JSON)
+                Object notificationObj = new BotNotificationScriptable(scope, notificationData);
 
                 // Llamar a processNotification con el objeto de notificación
                 Function processNotification = (Function) processNotifObj;
                 Object result = processNotification.call(rhinoContext, scope, scope,
                     new Object[]{notificationObj});
 
-                // Convertir resultado a JSON
-                if (result instanceof NativeObject) {
-                    return (String) NativeJSON.stringify(rhinoContext, scope, result, null, null);
-                } else {
-                    return org.mozilla.javascript.Context.toString(result);
-                }
+                // Leer la respuesta directamente del objeto devuelto
+                return BotResponse.fromResult(result);
 
+            } catch (BotContextFactory.BudgetExceededError e) {
+                // El bot agotó su presupuesto y Rhino abortó el script
+                throw new BotExecutionException("Bot execution timed out", e.getMessage(), "");
             } catch (Exception e) {
                 String errorMessage = e.getMessage() != null ? e.getMessage() : "Unknown error";
                 throw new BotExecutionException(
@@ -115,6 +122,8 @@ public class BotJsEngine {
                 );
             } finally {
                 // Always exit Context on the execution thread
+                BotExecutionState.detach(rhinoContext);
+                BotContextFactory.endBudget(rhinoContext);
                 org.mozilla.javascript.Context.exit();
             }
         };
@@ -138,230 +147,358 @@ public class BotJsEngine {
         // This method is kept for API compatibility
     }
 
-    private void injectAndroidAPIs(org.mozilla.javascript.Context rhinoContext, Scriptable scope) {
+    /**
+     * Scope de una ejecución: hijo ligero del scope compartido y sellado.
+     * Las variables globales que defina el bot quedan en este scope.
+     */
+    @VisibleForTesting
+    static Scriptable newExecutionScope(org.mozilla.javascript.Context rhinoContext) {
+        ScriptableObject shared = getSharedScope(rhinoContext);
+        Scriptable scope = rhinoContext.newObject(shared);
+        scope.setPrototype(shared);
+        scope.setParentScope(null);
+        return scope;
+    }
+
+    /**
+     * Devuelve el scope compartido, creándolo la primera vez.
+     * Debe llamarse con un Context de Rhino activo en el hilo actual.
+     */
+    private static ScriptableObject getSharedScope(org.mozilla.javascript.Context rhinoContext) {
+        ScriptableObject scope = sharedScope;
+        if (scope == null) {
+            synchronized (BotJsEngine.class) {
+                scope = sharedScope;
+                if (scope == null) {
+                    // Objetos estándar sellados: los bots no pueden modificar Object, Array, etc.
+                    scope = rhinoContext.initStandardObjects(null, true);
+                    injectAndroidAPIs(rhinoContext, scope);
+                    scope.sealObject();
+                    sharedScope = scope;
+                }
+            }
+        }
+        return scope;
+    }
+
+    private static void injectAndroidAPIs(org.mozilla.javascript.Context rhinoContext, Scriptable scope) {
         try {
-            String envText = PreferencesManager.getPreferencesInstance(context).getBotJsEnvVars();
-            final Map<String, String> envVars = BotEnvParser.parse(envText);
+            // Objeto Android prearmado: una única instancia de cada función, creada junto con
+            // el scope compartido. Las funciones leen el estado de la ejecución en curso desde
+            // el Context (BotExecutionState), así que el objeto se puede sellar y compartir.
+            ScriptableObject androidObject = (ScriptableObject) rhinoContext.newObject(scope);
 
-            // Crear un ScriptableObject personalizado que expone los métodos de BotAndroidAPI
-            ScriptableObject androidObject = new ScriptableObject() {
+            defineFunction(androidObject, scope, "log", new org.mozilla.javascript.BaseFunction() {
                 @Override
-                public String getClassName() {
-                    return "Android";
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length < 2) {
+                        throw ScriptRuntime.constructError("TypeError", "log requires 2 arguments: level and message");
+                    }
+                    String level = org.mozilla.javascript.Context.toString(args[0]);
+                    String message = org.mozilla.javascript.Context.toString(args[1]);
+                    BotExecutionState.from(cx).androidAPI.log(level, message);
+                    return org.mozilla.javascript.Context.getUndefinedValue();
                 }
+            });
 
+            defineFunction(androidObject, scope, "storageGet", new org.mozilla.javascript.BaseFunction() {
                 @Override
-                public Object get(String name, Scriptable start) {
-                    // Exponer métodos como funciones usando BaseFunction
-                    if ("log".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                if (args.length < 2) {
-                                    throw ScriptRuntime.constructError("TypeError", "log requires 2 arguments: level and message");
-                                }
-                                String level = org.mozilla.javascript.Context.toString(args[0]);
-                                String message = org.mozilla.javascript.Context.toString(args[1]);
-                                androidAPI.log(level, message);
-                                return org.mozilla.javascript.Context.getUndefinedValue();
-                            }
-                        };
-                    } else if ("storageGet".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                if (args.length == 0 || args[0] == null) {
-                                    return null;
-                                }
-                                String key = org.mozilla.javascript.Context.toString(args[0]);
-                                String value = androidAPI.storageGet(key);
-                                return value != null ? value : null;
-                            }
-                        };
-                    } else if ("storageSet".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                if (args.length < 2) {
-                                    throw ScriptRuntime.constructError("TypeError", "storageSet requires 2 arguments: key and value");
-                                }
-                                String key = org.mozilla.javascript.Context.toString(args[0]);
-                                String value = org.mozilla.javascript.Context.toString(args[1]);
-                                androidAPI.storageSet(key, value);
-                                return org.mozilla.javascript.Context.getUndefinedValue();
-                            }
-                        };
-                    } else if ("storageRemove".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                if (args.length == 0 || args[0] == null) {
-                                    return org.mozilla.javascript.Context.getUndefinedValue();
-                                }
-                                String key = org.mozilla.javascript.Context.toString(args[0]);
-                                androidAPI.storageRemove(key);
-                                return org.mozilla.javascript.Context.getUndefinedValue();
-                            }
-                        };
-                    } else if ("storageKeys".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                String[] keys = androidAPI.storageKeys();
-                                // Convertir array Java a array JavaScript
-                                return cx.newArray(scope, keys);
-                            }
-                        };
-                    } else if ("httpRequest".equals(name)) {
-                        // Wrapper personalizado para httpRequest que convierte objetos JS a JSON
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                try {
-                                    // Convertir argumento a JSON string si es un objeto
-                                    String optionsJson;
-                                    if (args.length == 0 || args[0] == null) {
-                                        throw ScriptRuntime.constructError("TypeError", "httpRequest requires an options object");
-                                    }
-                                    
-                                    if (args[0] instanceof NativeObject || args[0] instanceof Scriptable) {
-                                        // Es un objeto JavaScript, convertirlo a JSON
-                                        optionsJson = (String) NativeJSON.stringify(cx, scope, args[0], null, null);
-                                    } else {
-                                        // Ya es un string
-                                        optionsJson = org.mozilla.javascript.Context.toString(args[0]);
-                                    }
-                                    
-                                    // Llamar al método Java
-                                    return androidAPI.httpRequest(optionsJson);
-                                } catch (java.io.IOException e) {
-                                    throw ScriptRuntime.constructError("Error", "HTTP request failed: " + e.getMessage());
-                                } catch (Exception e) {
-                                    throw ScriptRuntime.constructError("Error", "httpRequest error: " + e.getMessage());
-                                }
-                            }
-                        };
-                    } else if ("getCurrentTime".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                return androidAPI.getCurrentTime();
-                            }
-                        };
-                    } else if ("getAppName".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                if (args.length == 0 || args[0] == null) {
-                                    throw ScriptRuntime.constructError("TypeError", "getAppName requires a package name");
-                                }
-                                String packageName = org.mozilla.javascript.Context.toString(args[0]);
-                                return androidAPI.getAppName(packageName);
-                            }
-                        };
-                    } else if ("getenv".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                if (args.length == 0 || args[0] == null) {
-                                    return null;
-                                }
-                                String key = org.mozilla.javascript.Context.toString(args[0]);
-                                String value = envVars.get(key);
-                                return value != null ? value : null;
-                            }
-                        };
-                    } else if ("getAttachmentPath".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                if (args.length == 0 || args[0] == null) {
-                                    return null;
-                                }
-                                String attachmentId = org.mozilla.javascript.Context.toString(args[0]);
-                                String path = androidAPI.getAttachmentPath(attachmentExtractor, attachmentId);
-                                return path != null ? path : null;
-                            }
-                        };
-                    } else if ("readAttachmentAsBase64".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                if (args.length == 0 || args[0] == null) {
-                                    return null;
-                                }
-                                String attachmentId = org.mozilla.javascript.Context.toString(args[0]);
-                                String base64 = androidAPI.readAttachmentAsBase64(attachmentExtractor, attachmentId);
-                                return base64 != null ? base64 : null;
-                            }
-                        };
-                    } else if ("getAttachmentThumbnail".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                if (args.length == 0 || args[0] == null) {
-                                    return null;
-                                }
-                                String attachmentId = org.mozilla.javascript.Context.toString(args[0]);
-                                // Find attachment by ID
-                                for (com.parishod.watomagic.replyproviders.model.AttachmentInfo att : currentAttachments) {
-                                    if (att.getId().equals(attachmentId)) {
-                                        String thumbnail = androidAPI.getAttachmentThumbnail(att);
-                                        return thumbnail != null ? thumbnail : null;
-                                    }
-                                }
-                                return null;
-                            }
-                        };
-                    } else if ("readLatestWhatsAppImage".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                if (args.length == 0 || args[0] == null) {
-                                    return null;
-                                }
-                                double timestamp = org.mozilla.javascript.Context.toNumber(args[0]);
-                                String base64 = androidAPI.readLatestWhatsAppImage(
-                                        whatsAppMediaResolver, (long) timestamp);
-                                return base64 != null ? base64 : null;
-                            }
-                        };
-                    } else if ("hasWhatsAppMediaAccess".equals(name)) {
-                        return new org.mozilla.javascript.BaseFunction() {
-                            @Override
-                            public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                                return androidAPI.hasWhatsAppMediaAccess(whatsAppMediaResolver);
-                            }
-                        };
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length == 0 || args[0] == null) {
+                        return null;
                     }
-                    return Scriptable.NOT_FOUND;
+                    String key = org.mozilla.javascript.Context.toString(args[0]);
+                    String value = BotExecutionState.from(cx).androidAPI.storageGet(key);
+                    return value != null ? value : null;
                 }
+            });
 
+            defineFunction(androidObject, scope, "storageSet", new org.mozilla.javascript.BaseFunction() {
                 @Override
-                public boolean has(String name, Scriptable start) {
-                    return "log".equals(name) || "storageGet".equals(name) || 
-                           "storageSet".equals(name) || "storageRemove".equals(name) ||
-                           "storageKeys".equals(name) || "httpRequest".equals(name) ||
-                           "getCurrentTime".equals(name) || "getAppName".equals(name) ||
-                           "getenv".equals(name) ||
-                           "getAttachmentPath".equals(name) || "readAttachmentAsBase64".equals(name) ||
-                           "getAttachmentThumbnail".equals(name) || "readLatestWhatsAppImage".equals(name) ||
-                           "hasWhatsAppMediaAccess".equals(name);
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length < 2) {
+                        throw ScriptRuntime.constructError("TypeError", "storageSet requires 2 arguments: key and value");
+                    }
+                    String key = org.mozilla.javascript.Context.toString(args[0]);
+                    String value = org.mozilla.javascript.Context.toString(args[1]);
+                    long ttlMs = toTtlMillis(args, 2);
+                    try {
+                        BotExecutionState.from(cx).androidAPI.storageSet(key, value, ttlMs);
+                    } catch (BotStorage.QuotaExceededException e) {
+                        throw quotaExceededError(cx, scope, e.getMessage());
+                    }
+                    return org.mozilla.javascript.Context.getUndefinedValue();
                 }
+            });
 
+            defineFunction(androidObject, scope, "storageRemove", new org.mozilla.javascript.BaseFunction() {
                 @Override
-                public Object[] getIds() {
-                    return new Object[]{"log", "storageGet", "storageSet", "storageRemove",
-                                      "storageKeys", "httpRequest", "getCurrentTime", "getAppName",
-                                      "getenv",
-                                      "getAttachmentPath", "readAttachmentAsBase64", "getAttachmentThumbnail",
-                                      "readLatestWhatsAppImage", "hasWhatsAppMediaAccess"};
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length == 0 || args[0] == null) {
+                        return org.mozilla.javascript.Context.getUndefinedValue();
+                    }
+                    String key = org.mozilla.javascript.Context.toString(args[0]);
+                    BotExecutionState.from(cx).androidAPI.storageRemove(key);
+                    return org.mozilla.javascript.Context.getUndefinedValue();
                 }
-            };
+            });
 
-            // Establecer el prototipo y el scope
-            androidObject.setPrototype(ScriptableObject.getObjectPrototype(scope));
-            androidObject.setParentScope(scope);
+            defineFunction(androidObject, scope, "storageKeys", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    String[] keys = BotExecutionState.from(cx).androidAPI.storageKeys();
+                    // Convertir array Java a array JavaScript
+                    return cx.newArray(scope, keys);
+                }
+            });
+
+            // storageGetMany(keys) -> { key: value | null }
+            defineFunction(androidObject, scope, "storageGetMany", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length == 0 || !(args[0] instanceof Scriptable)) {
+                        throw ScriptRuntime.constructError("TypeError", "storageGetMany requires an array of keys");
+                    }
+                    Object[] ids = cx.getElements((Scriptable) args[0]);
+                    String[] keys = new String[ids.length];
+                    for (int i = 0; i < ids.length; i++) {
+                        keys[i] = org.mozilla.javascript.Context.toString(ids[i]);
+                    }
+                    String[] values = BotExecutionState.from(cx).androidAPI.storageGetMany(keys);
+                    Scriptable result = cx.newObject(scope);
+                    for (int i = 0; i < keys.length; i++) {
+                        ScriptableObject.putProperty(result, keys[i], values[i]);
+                    }
+                    return result;
+                }
+            });
+
+            // storageSetMany({ key: value, ... }, ttlMs?): todas o ninguna
+            defineFunction(androidObject, scope, "storageSetMany", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length == 0 || !(args[0] instanceof Scriptable)) {
+                        throw ScriptRuntime.constructError("TypeError", "storageSetMany requires an object of key/value pairs");
+                    }
+                    Scriptable entriesObj = (Scriptable) args[0];
+                    java.util.Map<String, String> entries = new java.util.LinkedHashMap<>();
+                    for (Object id : entriesObj.getIds()) {
+                        Object value = id instanceof Integer
+                                ? ScriptableObject.getProperty(entriesObj, (Integer) id)
+                                : ScriptableObject.getProperty(entriesObj, id.toString());
+                        entries.put(org.mozilla.javascript.Context.toString(id),
+                                org.mozilla.javascript.Context.toString(value));
+                    }
+                    long ttlMs = toTtlMillis(args, 1);
+                    try {
+                        BotExecutionState.from(cx).androidAPI.storageSetMany(entries, ttlMs);
+                    } catch (BotStorage.QuotaExceededException e) {
+                        throw quotaExceededError(cx, scope, e.getMessage());
+                    }
+                    return org.mozilla.javascript.Context.getUndefinedValue();
+                }
+            });
+
+            // Wrapper personalizado para httpRequest que convierte objetos JS a JSON
+            defineFunction(androidObject, scope, "httpRequest", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    try {
+                        if (args.length == 0 || args[0] == null) {
+                            throw ScriptRuntime.constructError("TypeError", "httpRequest requires an options object");
+                        }
+                        String optionsJson = toOptionsJson(cx, scope, args[0]);
+
+                        // Llamar al método Java; la petición no puede durar más que la ejecución
+                        return BotExecutionState.from(cx).androidAPI.httpRequest(optionsJson,
+                                BotContextFactory.remainingMillis(cx, EXECUTION_TIMEOUT_MS));
+                    } catch (java.io.IOException e) {
+                        throw ScriptRuntime.constructError("Error", "HTTP request failed: " + e.getMessage());
+                    } catch (Exception e) {
+                        throw ScriptRuntime.constructError("Error", "httpRequest error: " + e.getMessage());
+                    }
+                }
+            });
+
+            // httpRequestAll([options, ...]) -> [{ ok, status, body } | { ok: false, error }]
+            defineFunction(androidObject, scope, "httpRequestAll", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length == 0 || !(args[0] instanceof Scriptable)) {
+                        throw ScriptRuntime.constructError("TypeError", "httpRequestAll requires an array of options objects");
+                    }
+                    Object[] requests = cx.getElements((Scriptable) args[0]);
+                    if (requests.length > MAX_PARALLEL_HTTP_REQUESTS) {
+                        throw ScriptRuntime.constructError("RangeError",
+                                "httpRequestAll accepts at most " + MAX_PARALLEL_HTTP_REQUESTS + " requests");
+                    }
+                    java.util.List<String> optionsJson = new java.util.ArrayList<>(requests.length);
+                    for (Object request : requests) {
+                        optionsJson.add(toOptionsJson(cx, scope, request));
+                    }
+
+                    // Deja un margen para que el bot procese las respuestas antes de agotar su tiempo
+                    long deadlineMs = Math.max(0, BotContextFactory.remainingMillis(cx, EXECUTION_TIMEOUT_MS)
+                            - HTTP_DEADLINE_MARGIN_MS);
+                    BotAndroidAPI.HttpResult[] results =
+                            BotExecutionState.from(cx).androidAPI.httpRequestAll(optionsJson, deadlineMs);
+
+                    Object[] elements = new Object[results.length];
+                    for (int i = 0; i < results.length; i++) {
+                        BotAndroidAPI.HttpResult result = results[i];
+                        Scriptable obj = cx.newObject(scope);
+                        ScriptableObject.putProperty(obj, "ok", result.ok);
+                        if (result.error != null) {
+                            ScriptableObject.putProperty(obj, "error", result.error);
+                        } else {
+                            ScriptableObject.putProperty(obj, "status", result.status);
+                            ScriptableObject.putProperty(obj, "body", result.body);
+                        }
+                        elements[i] = obj;
+                    }
+                    return cx.newArray(scope, elements);
+                }
+            });
+
+            defineFunction(androidObject, scope, "getCurrentTime", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    return BotExecutionState.from(cx).androidAPI.getCurrentTime();
+                }
+            });
+
+            defineFunction(androidObject, scope, "getAppName", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length == 0 || args[0] == null) {
+                        throw ScriptRuntime.constructError("TypeError", "getAppName requires a package name");
+                    }
+                    String packageName = org.mozilla.javascript.Context.toString(args[0]);
+                    return BotExecutionState.from(cx).androidAPI.getAppName(packageName);
+                }
+            });
+
+            defineFunction(androidObject, scope, "getenv", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length == 0 || args[0] == null) {
+                        return null;
+                    }
+                    String key = org.mozilla.javascript.Context.toString(args[0]);
+                    String value = BotExecutionState.from(cx).envVars.get(key);
+                    return value != null ? value : null;
+                }
+            });
+
+            defineFunction(androidObject, scope, "getAttachmentPath", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length == 0 || args[0] == null) {
+                        return null;
+                    }
+                    String attachmentId = org.mozilla.javascript.Context.toString(args[0]);
+                    BotExecutionState state = BotExecutionState.from(cx);
+                    String path = state.androidAPI.getAttachmentPath(state.attachmentExtractor,
+                            state.findAttachment(attachmentId), attachmentId);
+                    return path != null ? path : null;
+                }
+            });
+
+            defineFunction(androidObject, scope, "readAttachmentAsBase64", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length == 0 || args[0] == null) {
+                        return null;
+                    }
+                    String attachmentId = org.mozilla.javascript.Context.toString(args[0]);
+                    BotExecutionState state = BotExecutionState.from(cx);
+                    String base64 = state.androidAPI.readAttachmentAsBase64(state.attachmentExtractor,
+                            state.findAttachment(attachmentId), attachmentId);
+                    return base64 != null ? base64 : null;
+                }
+            });
+
+            // uploadAttachment(id, options) -> body; el archivo se envía en streaming, sin Base64
+            defineFunction(androidObject, scope, "uploadAttachment", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length < 2 || args[0] == null || args[1] == null) {
+                        throw ScriptRuntime.constructError("TypeError", "uploadAttachment requires an id and an options object");
+                    }
+                    String attachmentId = org.mozilla.javascript.Context.toString(args[0]);
+                    String optionsJson = toOptionsJson(cx, scope, args[1]);
+                    BotExecutionState state = BotExecutionState.from(cx);
+                    try {
+                        return state.androidAPI.uploadAttachment(state.attachmentExtractor,
+                                state.findAttachment(attachmentId), attachmentId, optionsJson,
+                                BotContextFactory.remainingMillis(cx, EXECUTION_TIMEOUT_MS));
+                    } catch (java.io.IOException e) {
+                        throw ScriptRuntime.constructError("Error", "Upload failed: " + e.getMessage());
+                    }
+                }
+            });
+
+            defineFunction(androidObject, scope, "getAttachmentThumbnail", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length == 0 || args[0] == null) {
+                        return null;
+                    }
+                    String attachmentId = org.mozilla.javascript.Context.toString(args[0]);
+                    BotExecutionState state = BotExecutionState.from(cx);
+                    com.parishod.watomagic.replyproviders.model.AttachmentInfo att = state.findAttachment(attachmentId);
+                    if (att == null) {
+                        return null;
+                    }
+                    String thumbnail = state.androidAPI.getAttachmentThumbnail(att);
+                    return thumbnail != null ? thumbnail : null;
+                }
+            });
+
+            defineFunction(androidObject, scope, "readLatestWhatsAppImage", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length == 0 || args[0] == null) {
+                        return null;
+                    }
+                    double timestamp = org.mozilla.javascript.Context.toNumber(args[0]);
+                    BotExecutionState state = BotExecutionState.from(cx);
+                    String base64 = state.androidAPI.readLatestWhatsAppImage(
+                            state.whatsAppMediaResolver, (long) timestamp);
+                    return base64 != null ? base64 : null;
+                }
+            });
+
+            // uploadLatestWhatsAppImage(timestamp, options) -> body, o null si no hay imagen
+            defineFunction(androidObject, scope, "uploadLatestWhatsAppImage", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    if (args.length < 2 || args[0] == null || args[1] == null) {
+                        throw ScriptRuntime.constructError("TypeError", "uploadLatestWhatsAppImage requires a timestamp and an options object");
+                    }
+                    double timestamp = org.mozilla.javascript.Context.toNumber(args[0]);
+                    String optionsJson = toOptionsJson(cx, scope, args[1]);
+                    BotExecutionState state = BotExecutionState.from(cx);
+                    try {
+                        String body = state.androidAPI.uploadLatestWhatsAppImage(state.whatsAppMediaResolver,
+                                (long) timestamp, optionsJson,
+                                BotContextFactory.remainingMillis(cx, EXECUTION_TIMEOUT_MS));
+                        return body != null ? body : null;
+                    } catch (java.io.IOException e) {
+                        throw ScriptRuntime.constructError("Error", "Upload failed: " + e.getMessage());
+                    }
+                }
+            });
+
+            defineFunction(androidObject, scope, "hasWhatsAppMediaAccess", new org.mozilla.javascript.BaseFunction() {
+                @Override
+                public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                    BotExecutionState state = BotExecutionState.from(cx);
+                    return state.androidAPI.hasWhatsAppMediaAccess(state.whatsAppMediaResolver);
+                }
+            });
+
+            androidObject.sealObject();
 
             // Inyectar el objeto Android en el scope global
             ScriptableObject.putProperty(scope, "Android", androidObject);
@@ -371,9 +508,9 @@ public class BotJsEngine {
 
             Log.i(TAG, "Android APIs injected successfully via Rhino");
             Log.i(TAG, "Available APIs: log, storageGet, storageSet, storageRemove, " +
-                      "storageKeys, httpRequest, getCurrentTime, getAppName, getenv, " +
-                      "getAttachmentPath, readAttachmentAsBase64, getAttachmentThumbnail, " +
-                      "readLatestWhatsAppImage, hasWhatsAppMediaAccess");
+                      "storageKeys, storageGetMany, storageSetMany, httpRequest, httpRequestAll, getCurrentTime, getAppName, getenv, " +
+                      "getAttachmentPath, readAttachmentAsBase64, uploadAttachment, getAttachmentThumbnail, " +
+                      "readLatestWhatsAppImage, uploadLatestWhatsAppImage, hasWhatsAppMediaAccess");
             Log.i(TAG, "localStorage API available (wraps Android.storage*)");
 
         } catch (Exception e) {
@@ -382,11 +519,62 @@ public class BotJsEngine {
         }
     }
 
+    /**
+     * Convierte las opciones de una petición HTTP (objeto JS o string JSON) a JSON.
+     */
+    private static String toOptionsJson(org.mozilla.javascript.Context cx, Scriptable scope, Object options) {
+        if (options instanceof Scriptable) {
+            // Es un objeto JavaScript, convertirlo a JSON
+            return (String) NativeJSON.stringify(cx, scope, options, null, null);
+        }
+        // Ya es un string
+        return org.mozilla.javascript.Context.toString(options);
+    }
+
+    /**
+     * Lee el TTL opcional (en milisegundos) de los argumentos de una función de storage.
+     * @return el TTL, o 0 si no se indicó
+     */
+    private static long toTtlMillis(Object[] args, int index) {
+        if (args.length <= index || args[index] == null
+                || args[index] == org.mozilla.javascript.Context.getUndefinedValue()) {
+            return 0;
+        }
+        double ttl = org.mozilla.javascript.Context.toNumber(args[index]);
+        if (Double.isNaN(ttl) || ttl < 0) {
+            throw ScriptRuntime.constructError("TypeError", "TTL must be a non-negative number of milliseconds");
+        }
+        return (long) ttl;
+    }
+
+    /**
+     * Error que se lanza a JS cuando una escritura supera la cuota del storage.
+     *
+     * Es un Error normal con {@code name = "QuotaExceededError"} (como en los navegadores):
+     * constructError con un nombre que no es un error nativo de Rhino rompe el try/catch del bot.
+     */
+    static JavaScriptException quotaExceededError(org.mozilla.javascript.Context cx, Scriptable scope,
+                                                  String message) {
+        Scriptable error = cx.newObject(ScriptableObject.getTopLevelScope(scope), "Error", new Object[]{message});
+        ScriptableObject.putProperty(error, "name", "QuotaExceededError");
+        return new JavaScriptException(error, null, 0);
+    }
+
+    /**
+     * Define una función de solo lectura en el objeto destino, con el prototipo y
+     * el scope de una función JS normal (permite call/apply/bind).
+     */
+    private static void defineFunction(ScriptableObject target, Scriptable scope, String name,
+                                       org.mozilla.javascript.BaseFunction function) {
+        ScriptRuntime.setFunctionProtoAndParent(function, scope);
+        target.defineProperty(name, function, ScriptableObject.READONLY | ScriptableObject.PERMANENT);
+    }
+
     /**
      * Inyecta un objeto localStorage global que usa Android.storage* internamente.
      * Proporciona la API estándar de localStorage (getItem, setItem, removeItem, clear, key, length).
      */
-    private void injectLocalStorage(org.mozilla.javascript.Context rhinoContext, Scriptable scope) {
+    private static void injectLocalStorage(org.mozilla.javascript.Context rhinoContext, Scriptable scope) {
         // Crear funciones una vez para reutilizarlas (comportamiento estándar de localStorage)
         final org.mozilla.javascript.BaseFunction getItemFunc = new org.mozilla.javascript.BaseFunction() {
             @Override
@@ -395,7 +583,7 @@ public class BotJsEngine {
                     return null;
                 }
                 String key = org.mozilla.javascript.Context.toString(args[0]);
-                String value = androidAPI.storageGet(key);
+                String value = BotExecutionState.from(cx).androidAPI.storageGet(key);
                 return value != null ? value : null;
             }
         };
@@ -415,7 +603,11 @@ public class BotJsEngine {
                 String value = args[1] == null || args[1] == org.mozilla.javascript.Context.getUndefinedValue()
                     ? "null"
                     : org.mozilla.javascript.Context.toString(args[1]);
-                androidAPI.storageSet(key, value);
+                try {
+                    BotExecutionState.from(cx).androidAPI.storageSet(key, value);
+                } catch (BotStorage.QuotaExceededException e) {
+                    throw quotaExceededError(cx, scope, e.getMessage());
+                }
                 return org.mozilla.javascript.Context.getUndefinedValue();
             }
         };
@@ -427,7 +619,7 @@ public class BotJsEngine {
                     return org.mozilla.javascript.Context.getUndefinedValue();
                 }
                 String key = org.mozilla.javascript.Context.toString(args[0]);
-                androidAPI.storageRemove(key);
+                BotExecutionState.from(cx).androidAPI.storageRemove(key);
                 return org.mozilla.javascript.Context.getUndefinedValue();
             }
         };
@@ -435,10 +627,7 @@ public class BotJsEngine {
         final org.mozilla.javascript.BaseFunction clearFunc = new org.mozilla.javascript.BaseFunction() {
             @Override
             public Object call(org.mozilla.javascript.Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
-                String[] keys = androidAPI.storageKeys();
-                for (String key : keys) {
-                    androidAPI.storageRemove(key);
-                }
+                BotExecutionState.from(cx).androidAPI.storageClear();
                 return org.mozilla.javascript.Context.getUndefinedValue();
             }
         };
@@ -454,12 +643,7 @@ public class BotJsEngine {
                 if (Double.isNaN(numValue) || Double.isInfinite(numValue)) {
                     return null;
                 }
-                int index = (int) numValue;
-                String[] keys = androidAPI.storageKeys();
-                if (index < 0 || index >= keys.length) {
-                    return null;
-                }
-                return keys[index];
+                return BotExecutionState.from(cx).androidAPI.storageKey((int) numValue);
             }
         };
         
@@ -474,7 +658,7 @@ public class BotJsEngine {
             public Object get(String name, Scriptable start) {
                 // Propiedad length: calculada dinámicamente
                 if ("length".equals(name)) {
-                    return androidAPI.storageKeys().length;
+                    return BotExecutionState.current().androidAPI.storageLength();
                 }
                 
                 // Métodos: retornar las funciones reutilizables
@@ -526,61 +710,16 @@ public class BotJsEngine {
             }
         };
 
-        // Inyectar localStorage como objeto global
-        ScriptableObject.putProperty(scope, "localStorage", localStorage);
-    }
-
-
-    /**
-     * Utilidad interna para mapear NotificationData a JSON.
-     */
-    private static final class BotNotificationMapper {
-        private BotNotificationMapper() {
-        }
-
-        static String toJson(NotificationData data) {
-            StringBuilder builder = new StringBuilder();
-            builder.append('{');
-            builder.append("\"id\":").append(data.getStatusBarNotification().getId()).append(',');
-            builder.append("\"appPackage\":\"").append(escape(data.getStatusBarNotification().getPackageName())).append("\",");
-            builder.append("\"title\":\"").append(escape(safeString(data.getStatusBarNotification().getNotification().extras.getCharSequence("android.title")))).append("\",");
-            builder.append("\"body\":\"").append(escape(safeString(data.getStatusBarNotification().getNotification().extras.getCharSequence("android.text")))).append("\",");
-            builder.append("\"timestamp\":").append(data.getStatusBarNotification().getPostTime()).append(',');
-            builder.append("\"isGroup\":").append(data.getStatusBarNotification().getNotification().extras.getBoolean("android.isGroupConversation", false));
-            builder.append(",\"isMediaPlaceholder\":").append(data.isMediaPlaceholder());
-            
-            // Add attachments array
-            builder.append(",\"attachments\":[");
-            java.util.List<com.parishod.watomagic.replyproviders.model.AttachmentInfo> attachments = data.getAttachments();
-            for (int i = 0; i < attachments.size(); i++) {
-                if (i > 0) builder.append(',');
-                com.parishod.watomagic.replyproviders.model.AttachmentInfo att = attachments.get(i);
-                builder.append('{');
-                builder.append("\"id\":\"").append(escape(att.getId())).append("\",");
-                builder.append("\"mimeType\":\"").append(escape(att.getMimeType())).append("\",");
-                builder.append("\"size\":").append(att.getSize()).append(',');
-                builder.append("\"hasFile\":").append(att.hasFile());
-                if (att.getThumbnailBase64() != null) {
-                    builder.append(",\"thumbnailBase64\":\"").append(escape(att.getThumbnailBase64())).append("\"");
-                }
-                builder.append('}');
-            }
-            builder.append(']');
-            
-            builder.append('}');
-            return builder.toString();
+        for (org.mozilla.javascript.BaseFunction function : new org.mozilla.javascript.BaseFunction[]{
+                getItemFunc, setItemFunc, removeItemFunc, clearFunc, keyFunc}) {
+            ScriptRuntime.setFunctionProtoAndParent(function, scope);
         }
 
-        private static String safeString(CharSequence value) {
-            return value != null ? value.toString() : "";
-        }
+        localStorage.setPrototype(ScriptableObject.getObjectPrototype(scope));
+        localStorage.setParentScope(scope);
+        localStorage.sealObject();
 
-        private static String escape(String value) {
-            return value
-                    .replace("\\", "\\\\")
-                    .replace("\"", "\\\"")
-                    .replace("\n", "\\n")
-                    .replace("\r", "\\r");
-        }
+        // Inyectar localStorage como objeto global
+        ScriptableObject.putProperty(scope, "localStorage", localStorage);
     }
 }
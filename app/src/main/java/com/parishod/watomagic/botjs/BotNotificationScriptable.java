@@ -0,0 +1,107 @@
+package com.parishod.watomagic.botjs;
+
+import android.os.Bundle;
+import android.service.notification.StatusBarNotification;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.parishod.watomagic.replyproviders.model.AttachmentInfo;
+import com.parishod.watomagic.replyproviders.model.NotificationData;
+
+import org.mozilla.javascript.Scriptable;
+
+import java.util.List;
+
+/**
+ * Vista JS perezosa de {@link NotificationData} que se pasa a processNotification.
+ *
+ * Sustituye la serialización a JSON + NativeJSON.parse: cada campo se lee de la
+ * notificación solo cuando el bot lo usa.
+ */
+final class BotNotificationScriptable extends LazyScriptable {
+
+    private final NotificationData data;
+
+    BotNotificationScriptable(@NonNull Scriptable scope, @NonNull NotificationData data) {
+        super(scope, "id", "appPackage", "title", "body", "messages", "timestamp",
+                "isGroup", "isMediaPlaceholder", "attachments");
+        this.data = data;
+    }
+
+    @Nullable
+    @Override
+    protected Object materialize(@NonNull String name) {
+        StatusBarNotification sbn = data.getStatusBarNotification();
+        Bundle extras = sbn.getNotification().extras;
+        switch (name) {
+            case "id":
+                return sbn.getId();
+            case "appPackage":
+                return sbn.getPackageName();
+            case "title":
+                return safeString(extras.getCharSequence("android.title"));
+            case "body":
+                return safeString(extras.getCharSequence("android.text"));
+            case "messages":
+                return org.mozilla.javascript.Context.getCurrentContext()
+                        .newArray(getParentScope(), data.getMessages().toArray());
+            case "timestamp":
+                return (double) sbn.getPostTime();
+            case "isGroup":
+                return extras.getBoolean("android.isGroupConversation", false);
+            case "isMediaPlaceholder":
+                return data.isMediaPlaceholder();
+            case "attachments":
+                return newAttachmentsArray();
+            default:
+                return null;
+        }
+    }
+
+    private Scriptable newAttachmentsArray() {
+        List<AttachmentInfo> attachments = data.getAttachments();
+        Object[] elements = new Object[attachments.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = new AttachmentScriptable(getParentScope(), attachments.get(i));
+        }
+        return org.mozilla.javascript.Context.getCurrentContext().newArray(getParentScope(), elements);
+    }
+
+    private static String safeString(CharSequence value) {
+        return value != null ? value.toString() : "";
+    }
+
+    /**
+     * Vista JS perezosa de un {@link AttachmentInfo}.
+     */
+    static final class AttachmentScriptable extends LazyScriptable {
+
+        private final AttachmentInfo attachment;
+
+        AttachmentScriptable(@NonNull Scriptable scope, @NonNull AttachmentInfo attachment) {
+            super(scope, "id", "mimeType", "size", "hasFile", "thumbnailBase64");
+            this.attachment = attachment;
+        }
+
+        @Nullable
+        @Override
+        protected Object materialize(@NonNull String name) {
+            switch (name) {
+                case "id":
+                    return attachment.getId();
+                case "mimeType":
+                    return attachment.getMimeType();
+                case "size":
+                    return (double) attachment.getSize();
+                case "hasFile":
+                    return attachment.hasFile();
+                case "thumbnailBase64":
+                    // Se omite cuando no hay miniatura, igual que antes en el JSON
+                    return attachment.getThumbnailBase64();
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -21,6 +21,8 @@ public class BotRepository {
     private static final String TAG = "BotRepository";
     private static final String BOT_FILE_NAME = "active-bot.js";
     private static final long DOWNLOAD_RATE_LIMIT_MS = 180000; // 3 minutos
+    /** Namespace de storage cuando no hay bot instalado (p. ej. pruebas) */
+    public static final String DEFAULT_STORAGE_NAMESPACE = "default";
     
     private final Context context;
     private final OkHttpClient httpClient;
@@ -176,6 +178,9 @@ public class BotRepository {
             // Actualizar tiempo de última descarga
             prefs.edit().putLong("last_download_time", now).apply();
 
+            // El bot cambió: descartar el script compilado anterior
+            BotScriptCache.invalidate();
+
             return Result.success(botInfo);
 
         } catch (IOException e) {
@@ -234,6 +239,27 @@ public class BotRepository {
         return new BotInfo(url, timestamp, hash);
     }
 
+    /**
+     * Obtiene el hash SHA-256 del bot instalado sin instanciar el repositorio
+     * @return hash del bot o null si no hay bot instalado
+     */
+    public static String getInstalledBotHash(Context context) {
+        return context.getSharedPreferences("bot_metadata", Context.MODE_PRIVATE)
+            .getString("hash", null);
+    }
+
+    /**
+     * Obtiene el namespace de storage del bot instalado sin instanciar el repositorio.
+     * Se deriva de la URL, no del hash del código, para que el estado del bot sobreviva
+     * a sus actualizaciones.
+     * @return namespace del bot, o {@link #DEFAULT_STORAGE_NAMESPACE} si no hay bot instalado
+     */
+    public static String getInstalledBotNamespace(Context context) {
+        String url = context.getSharedPreferences("bot_metadata", Context.MODE_PRIVATE)
+            .getString("url", null);
+        return url != null ? calculateSHA256(url) : DEFAULT_STORAGE_NAMESPACE;
+    }
+
     /**
      * Elimina el bot instalado
      */
@@ -247,6 +273,8 @@ public class BotRepository {
             .edit()
             .clear()
             .apply();
+
+        BotScriptCache.invalidate();
     }
 
     /**
@@ -264,7 +292,7 @@ public class BotRepository {
     /**
      * Calcula SHA-256 hash de un string
      */
-    private String calculateSHA256(String input) {
+    private static String calculateSHA256(String input) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hash = digest.digest(input.getBytes("UTF-8"));
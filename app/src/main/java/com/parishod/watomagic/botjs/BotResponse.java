@@ -0,0 +1,90 @@
+package com.parishod.watomagic.botjs;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+
+/**
+ * Respuesta devuelta por processNotification.
+ *
+ * Se lee directamente del objeto JS devuelto por el bot. Por compatibilidad también
+ * se acepta un string con el JSON de la respuesta.
+ */
+public class BotResponse {
+
+    @Nullable
+    private final String action;
+    @Nullable
+    private final String replyText;
+
+    public BotResponse(@Nullable String action, @Nullable String replyText) {
+        this.action = action;
+        this.replyText = replyText;
+    }
+
+    /**
+     * Convierte el valor devuelto por processNotification.
+     * Debe llamarse con el Context de Rhino de la ejecución todavía activo.
+     */
+    @NonNull
+    static BotResponse fromResult(@Nullable Object result) {
+        if (result instanceof Scriptable) {
+            Scriptable obj = (Scriptable) result;
+            return new BotResponse(
+                    readString(obj, "action"),
+                    readString(obj, "replyText"));
+        }
+        if (result instanceof CharSequence) {
+            return fromJson(result.toString());
+        }
+        return new BotResponse(null, null);
+    }
+
+    @NonNull
+    private static BotResponse fromJson(@NonNull String json) {
+        try {
+            JsonElement element = JsonParser.parseString(json);
+            if (!element.isJsonObject()) {
+                return new BotResponse(null, null);
+            }
+            JsonObject obj = element.getAsJsonObject();
+            return new BotResponse(
+                    obj.has("action") && !obj.get("action").isJsonNull() ? obj.get("action").getAsString() : null,
+                    obj.has("replyText") && !obj.get("replyText").isJsonNull() ? obj.get("replyText").getAsString() : null);
+        } catch (RuntimeException e) {
+            return new BotResponse(null, null);
+        }
+    }
+
+    @Nullable
+    private static String readString(@NonNull Scriptable obj, @NonNull String name) {
+        Object value = ScriptableObject.getProperty(obj, name);
+        if (value == Scriptable.NOT_FOUND || value == null || value instanceof Undefined) {
+            return null;
+        }
+        return org.mozilla.javascript.Context.toString(value);
+    }
+
+    @Nullable
+    public String getAction() {
+        return action;
+    }
+
+    @Nullable
+    public String getReplyText() {
+        return replyText;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "BotResponse{action=" + action + ", replyText=" + replyText + "}";
+    }
+}
@@ -0,0 +1,66 @@
+package com.parishod.watomagic.botjs;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.javascript.Script;
+
+/**
+ * Caché del bot compilado ({@link Script}) indexada por el hash SHA-256 que
+ * {@link BotRepository} guarda en bot_metadata.
+ *
+ * Solo hay un bot activo a la vez, así que se guarda una única entrada. El script
+ * compilado en modo interpretado es inmutable y puede ejecutarse desde varios hilos.
+ *
+ * Thread-safe: la entrada se publica como un objeto inmutable en un campo volatile.
+ */
+public final class BotScriptCache {
+
+    private static final String TAG = "BotScriptCache";
+
+    private static volatile Entry cached;
+
+    private BotScriptCache() {
+        // Utility class
+    }
+
+    private static final class Entry {
+        final String hash;
+        final Script script;
+
+        Entry(String hash, Script script) {
+            this.hash = hash;
+            this.script = script;
+        }
+    }
+
+    /**
+     * Devuelve el script compilado para el hash dado, compilándolo si no está en caché.
+     * Si el hash es null (bot sin metadata) se compila sin cachear.
+     */
+    @NonNull
+    public static Script getOrCompile(@NonNull org.mozilla.javascript.Context rhinoContext,
+                                      @Nullable String hash,
+                                      @NonNull String jsCode) {
+        Entry entry = cached;
+        if (hash != null && entry != null && hash.equals(entry.hash)) {
+            return entry.script;
+        }
+
+        Script script = rhinoContext.compileString(jsCode, "bot.js", 1, null);
+        if (hash != null) {
+            cached = new Entry(hash, script);
+            Log.d(TAG, "Bot compiled and cached (hash: " + hash + ")");
+        }
+        return script;
+    }
+
+    /**
+     * Descarta el script compilado. Se llama cuando el bot instalado cambia o se elimina.
+     */
+    public static void invalidate() {
+        cached = null;
+    }
+}
@@ -0,0 +1,625 @@
+package com.parishod.watomagic.botjs;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.parishod.watomagic.botjs.storage.BotKvDao;
+import com.parishod.watomagic.botjs.storage.BotKvEntry;
+import com.parishod.watomagic.botjs.storage.BotKvKey;
+import com.parishod.watomagic.botjs.storage.BotStorageDB;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Almacenamiento clave/valor de un bot (Android.storage* y localStorage), sobre SQLite.
+ *
+ * - Cada bot tiene su namespace; solo se carga en memoria el índice de claves del namespace
+ *   (clave, expiración y tamaño), ordenado. {@code localStorage.key(i)} y
+ *   {@code localStorage.length} se resuelven sin tocar la base de datos.
+ * - Los valores se leen bajo demanda y se mantienen en una caché LRU acotada.
+ * - Las escrituras se acumulan y se vuelcan en una transacción tras {@link #FLUSH_DELAY_MS};
+ *   varias escrituras sobre la misma clave se coalescen en una sola. Si el volcado falla,
+ *   las escrituras vuelven a quedar pendientes y se reintenta con espera creciente.
+ * - Las claves pueden tener TTL: una clave expirada deja de ser visible de inmediato y se
+ *   borra de disco en el siguiente volcado o en el barrido periódico
+ *   ({@link #EXPIRY_SWEEP_INTERVAL_MS}), que cubre también los namespaces no cargados.
+ * - Cada namespace tiene una cuota de {@link #QUOTA_BYTES}; una escritura que la supere
+ *   lanza {@link QuotaExceededException} y no se aplica.
+ *
+ * Thread-safe.
+ */
+public final class BotStorage {
+
+    private static final String TAG = "BotStorage";
+    /** SharedPreferences usado por versiones anteriores; se migra al primer uso */
+    static final String LEGACY_PREFS_NAME = "bot_storage";
+    /** Tiempo durante el que se acumulan escrituras antes de volcarlas */
+    static final long FLUSH_DELAY_MS = 500;
+    /** Espera máxima entre reintentos de un volcado que falló */
+    static final long MAX_FLUSH_RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+    static final long EXPIRY_SWEEP_INTERVAL_MS = TimeUnit.MINUTES.toMillis(15);
+    /** Cuota por namespace, en bytes aproximados (UTF-16 de clave + valor) */
+    public static final long QUOTA_BYTES = 5L * 1024 * 1024;
+    /** Caché de valores por namespace, en caracteres */
+    private static final int VALUE_CACHE_CHARS = 256 * 1024;
+    /** Límite de variables de SQLite para las consultas IN (...) */
+    private static final int SQL_BATCH_SIZE = 500;
+
+    private static final Map<String, BotStorage> instances = new ConcurrentHashMap<>();
+    private static volatile ScheduledExecutorService sharedWriter;
+
+    private final BotKvDao dao;
+    private final String namespace;
+    private final ScheduledExecutorService writer;
+    private final TransactionRunner transactionRunner;
+    private final Object lock = new Object();
+    /** Serializa los volcados para que se apliquen en orden */
+    private final Object flushLock = new Object();
+
+    // Protegidos por lock
+    private TreeMap<String, KeyMeta> index;
+    private String[] keySnapshot;
+    private long usedBytes;
+    /** Expiración más próxima del índice (Long.MAX_VALUE si ninguna clave expira) */
+    private long nextExpiry = Long.MAX_VALUE;
+    /** Escrituras pendientes por clave; una entrada con value null significa borrar la clave */
+    private final Map<String, PendingWrite> pendingWrites = new HashMap<>();
+    private boolean pendingClear;
+    private boolean flushScheduled;
+    /** Volcados fallidos seguidos, para la espera entre reintentos */
+    private int flushFailures;
+    /** Se incrementa con cada cambio; detecta cambios durante una lectura de disco */
+    private long mutationCount;
+    private final LruCache<String, String> values = new LruCache<String, String>(VALUE_CACHE_CHARS) {
+        @Override
+        protected int sizeOf(String key, String value) {
+            return key.length() + value.length();
+        }
+    };
+
+    @VisibleForTesting
+    BotStorage(@NonNull BotKvDao dao, @NonNull String namespace,
+               @NonNull ScheduledExecutorService writer, @NonNull TransactionRunner transactionRunner) {
+        this.dao = dao;
+        this.namespace = namespace;
+        this.writer = writer;
+        this.transactionRunner = transactionRunner;
+    }
+
+    /**
+     * Devuelve el storage del namespace indicado, creándolo (y migrando el storage
+     * antiguo en SharedPreferences) la primera vez.
+     */
+    @NonNull
+    public static BotStorage forNamespace(@NonNull Context context, @NonNull String namespace) {
+        BotStorage storage = instances.get(namespace);
+        if (storage != null) {
+            return storage;
+        }
+        synchronized (BotStorage.class) {
+            storage = instances.get(namespace);
+            if (storage == null) {
+                Context appContext = context.getApplicationContext();
+                BotStorageDB db = BotStorageDB.getInstance(appContext);
+                storage = new BotStorage(db.kvDao(), namespace, getSharedWriter(appContext), db::runInTransaction);
+                storage.migrateLegacyPrefs(appContext);
+                instances.put(namespace, storage);
+            }
+        }
+        return storage;
+    }
+
+    private static ScheduledExecutorService getSharedWriter(@NonNull Context appContext) {
+        if (sharedWriter == null) {
+            ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "BotStorageWriter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            BotKvDao dao = BotStorageDB.getInstance(appContext).kvDao();
+            writer.scheduleWithFixedDelay(() -> sweepExpired(dao),
+                    EXPIRY_SWEEP_INTERVAL_MS, EXPIRY_SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            sharedWriter = writer;
+        }
+        return sharedWriter;
+    }
+
+    private static void sweepExpired(@NonNull BotKvDao dao) {
+        try {
+            long now = System.currentTimeMillis();
+            for (BotStorage storage : instances.values()) {
+                storage.pruneExpired(now);
+            }
+            int deleted = dao.deleteExpired(now);
+            if (deleted > 0) {
+                Log.d(TAG, "Expired " + deleted + " bot storage keys");
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Expiry sweep failed", e);
+        }
+    }
+
+    @Nullable
+    public String get(@NonNull String key) {
+        long mutationsBefore;
+        synchronized (lock) {
+            mutationsBefore = mutationCount;
+            if (!isLiveLocked(key, System.currentTimeMillis())) {
+                return null;
+            }
+            PendingWrite pending = pendingWrites.get(key);
+            if (pending != null) {
+                return pending.value;
+            }
+            String value = values.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        // Lectura de disco fuera del lock; si el storage cambió mientras tanto se repite
+        String value = dao.getValue(namespace, key);
+        synchronized (lock) {
+            if (mutationCount != mutationsBefore) {
+                return get(key);
+            }
+            if (value != null) {
+                values.put(key, value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * @return valores de las claves pedidas, en el mismo orden; null para las que no existen
+     */
+    @NonNull
+    public String[] getMany(@NonNull String[] keys) {
+        String[] result = new String[keys.length];
+        List<String> missing = new ArrayList<>();
+        long mutationsBefore;
+        synchronized (lock) {
+            mutationsBefore = mutationCount;
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < keys.length; i++) {
+                String key = keys[i];
+                if (!isLiveLocked(key, now)) {
+                    continue;
+                }
+                PendingWrite pending = pendingWrites.get(key);
+                String value = pending != null ? pending.value : values.get(key);
+                if (value != null || pending != null) {
+                    result[i] = value;
+                } else {
+                    missing.add(key);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<String, String> loaded = new HashMap<>();
+        for (int start = 0; start < missing.size(); start += SQL_BATCH_SIZE) {
+            List<String> chunk = missing.subList(start, Math.min(missing.size(), start + SQL_BATCH_SIZE));
+            for (BotKvEntry entry : dao.getEntries(namespace, chunk)) {
+                loaded.put(entry.getKey(), entry.getValue());
+            }
+        }
+        synchronized (lock) {
+            if (mutationCount != mutationsBefore) {
+                return getMany(keys);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                String value = loaded.get(keys[i]);
+                if (value != null) {
+                    result[i] = value;
+                    values.put(keys[i], value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @see #set(String, String, long)
+     */
+    public void set(@NonNull String key, @NonNull String value) throws QuotaExceededException {
+        set(key, value, 0);
+    }
+
+    /**
+     * Guarda un valor.
+     *
+     * @param ttlMs milisegundos hasta que la clave expira, 0 para no expirar
+     * @throws QuotaExceededException si la escritura supera la cuota del namespace
+     */
+    public void set(@NonNull String key, @NonNull String value, long ttlMs) throws QuotaExceededException {
+        Map<String, String> single = new LinkedHashMap<>(1);
+        single.put(key, value);
+        setMany(single, ttlMs);
+    }
+
+    /**
+     * Guarda varios valores de forma atómica: o se aplican todos, o ninguno si superan la cuota.
+     *
+     * @param ttlMs milisegundos hasta que las claves expiran, 0 para no expirar
+     * @throws QuotaExceededException si las escrituras superan la cuota del namespace
+     */
+    public void setMany(@NonNull Map<String, String> entries, long ttlMs) throws QuotaExceededException {
+        long now = System.currentTimeMillis();
+        long expiresAt = ttlMs > 0 ? now + ttlMs : 0;
+        synchronized (lock) {
+            TreeMap<String, KeyMeta> index = loadedIndex();
+            long newUsed = usedBytesAfterLocked(entries);
+            if (newUsed > QUOTA_BYTES && pruneExpiredLocked(now) > 0) {
+                // Las claves expiradas ya no cuentan para la cuota
+                newUsed = usedBytesAfterLocked(entries);
+            }
+            if (newUsed > QUOTA_BYTES) {
+                throw new QuotaExceededException("Bot storage quota exceeded ("
+                        + newUsed + " > " + QUOTA_BYTES + " bytes)");
+            }
+
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                String key = entry.getKey();
+                int size = sizeOf(key, entry.getValue());
+                if (index.put(key, new KeyMeta(expiresAt, size)) == null) {
+                    keySnapshot = null;
+                }
+                values.remove(key);
+                pendingWrites.put(key, new PendingWrite(entry.getValue(), expiresAt, size));
+            }
+            usedBytes = newUsed;
+            if (expiresAt > 0) {
+                nextExpiry = Math.min(nextExpiry, expiresAt);
+            }
+            scheduleFlushLocked();
+        }
+    }
+
+    public void remove(@NonNull String key) {
+        synchronized (lock) {
+            if (!loadedIndex().containsKey(key)) {
+                return;
+            }
+            removeLocked(key);
+            scheduleFlushLocked();
+        }
+    }
+
+    /**
+     * Borra todas las claves del namespace. Se persiste como un único DELETE.
+     */
+    public void clear() {
+        synchronized (lock) {
+            index = new TreeMap<>();
+            keySnapshot = null;
+            usedBytes = 0;
+            nextExpiry = Long.MAX_VALUE;
+            values.evictAll();
+            pendingWrites.clear();
+            pendingClear = true;
+            scheduleFlushLocked();
+        }
+    }
+
+    /**
+     * @return claves vigentes en orden. El arreglo se comparte hasta el siguiente
+     * cambio: quien lo recibe no debe modificarlo.
+     */
+    @NonNull
+    public String[] keys() {
+        synchronized (lock) {
+            return keysLocked();
+        }
+    }
+
+    @Nullable
+    public String key(int index) {
+        synchronized (lock) {
+            String[] keys = keysLocked();
+            return index >= 0 && index < keys.length ? keys[index] : null;
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return keysLocked().length;
+        }
+    }
+
+    /**
+     * @return bytes aproximados usados por el namespace
+     */
+    public long getUsedBytes() {
+        synchronized (lock) {
+            loadedIndex();
+            return usedBytes;
+        }
+    }
+
+    /**
+     * Vuelca a disco las escrituras pendientes sin esperar al siguiente lote.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, PendingWrite> writes;
+            boolean clear;
+            synchronized (lock) {
+                flushScheduled = false;
+                if (pendingWrites.isEmpty() && !pendingClear) {
+                    return;
+                }
+                writes = new HashMap<>(pendingWrites);
+                clear = pendingClear;
+                pendingWrites.clear();
+                pendingClear = false;
+            }
+
+            List<BotKvEntry> upserts = new ArrayList<>();
+            List<String> deletes = new ArrayList<>();
+            for (Map.Entry<String, PendingWrite> write : writes.entrySet()) {
+                PendingWrite pending = write.getValue();
+                if (pending.value == null) {
+                    deletes.add(write.getKey());
+                } else {
+                    upserts.add(new BotKvEntry(namespace, write.getKey(), pending.value,
+                            pending.expiresAt, pending.size));
+                }
+            }
+            try {
+                transactionRunner.run(() -> {
+                    if (clear) {
+                        dao.clear(namespace);
+                    }
+                    for (int start = 0; start < deletes.size(); start += SQL_BATCH_SIZE) {
+                        dao.delete(namespace, deletes.subList(start, Math.min(deletes.size(), start + SQL_BATCH_SIZE)));
+                    }
+                    if (!upserts.isEmpty()) {
+                        dao.upsert(upserts);
+                    }
+                });
+                Log.d(TAG, "Flushed " + writes.size() + " writes" + (clear ? " after clear" : ""));
+                synchronized (lock) {
+                    flushFailures = 0;
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to flush bot storage", e);
+                synchronized (lock) {
+                    restorePendingLocked(writes, clear);
+                }
+            }
+        }
+    }
+
+    /**
+     * Devuelve a la cola un volcado que falló, sin pisar lo que se escribió después, y
+     * programa el reintento.
+     */
+    private void restorePendingLocked(@NonNull Map<String, PendingWrite> writes, boolean clear) {
+        flushFailures++;
+        if (!pendingClear) {
+            // Si hubo un clear posterior, las escrituras fallidas ya no aplican
+            for (Map.Entry<String, PendingWrite> write : writes.entrySet()) {
+                if (!pendingWrites.containsKey(write.getKey())) {
+                    pendingWrites.put(write.getKey(), write.getValue());
+                }
+            }
+            pendingClear = clear;
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            writer.schedule(this::flush, flushDelayLocked(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long flushDelayLocked() {
+        if (flushFailures == 0) {
+            return FLUSH_DELAY_MS;
+        }
+        return Math.min(FLUSH_DELAY_MS << Math.min(flushFailures, 16), MAX_FLUSH_RETRY_DELAY_MS);
+    }
+
+    private boolean isLiveLocked(@NonNull String key, long now) {
+        KeyMeta meta = loadedIndex().get(key);
+        if (meta == null) {
+            return false;
+        }
+        if (meta.isExpired(now)) {
+            removeLocked(key);
+            scheduleFlushLocked();
+            return false;
+        }
+        return true;
+    }
+
+    private void pruneExpired(long now) {
+        synchronized (lock) {
+            if (index != null) {
+                pruneExpiredLocked(now);
+            }
+        }
+    }
+
+    /**
+     * Quita del índice las claves expiradas. Se borran también de disco en el siguiente
+     * volcado, para que una escritura pendiente no deje viva una versión anterior.
+     *
+     * @return número de claves expiradas eliminadas
+     */
+    private int pruneExpiredLocked(long now) {
+        if (now < nextExpiry) {
+            return 0;
+        }
+        int pruned = 0;
+        long next = Long.MAX_VALUE;
+        Iterator<Map.Entry<String, KeyMeta>> it = loadedIndex().entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, KeyMeta> entry = it.next();
+            KeyMeta meta = entry.getValue();
+            if (meta.isExpired(now)) {
+                it.remove();
+                usedBytes -= meta.size;
+                values.remove(entry.getKey());
+                pendingWrites.put(entry.getKey(), PendingWrite.DELETE);
+                pruned++;
+            } else if (meta.expiresAt > 0) {
+                next = Math.min(next, meta.expiresAt);
+            }
+        }
+        nextExpiry = next;
+        if (pruned > 0) {
+            keySnapshot = null;
+            scheduleFlushLocked();
+        }
+        return pruned;
+    }
+
+    private long usedBytesAfterLocked(@NonNull Map<String, String> entries) {
+        long used = usedBytes;
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            KeyMeta previous = index.get(entry.getKey());
+            used += sizeOf(entry.getKey(), entry.getValue()) - (previous != null ? previous.size : 0);
+        }
+        return used;
+    }
+
+    private void removeLocked(@NonNull String key) {
+        KeyMeta meta = index.remove(key);
+        if (meta != null) {
+            usedBytes -= meta.size;
+        }
+        keySnapshot = null;
+        values.remove(key);
+        pendingWrites.put(key, PendingWrite.DELETE);
+    }
+
+    private String[] keysLocked() {
+        // Invalida el snapshot si alguna clave expiró desde que se construyó
+        pruneExpiredLocked(System.currentTimeMillis());
+        if (keySnapshot == null) {
+            keySnapshot = loadedIndex().keySet().toArray(new String[0]);
+        }
+        return keySnapshot;
+    }
+
+    private void scheduleFlushLocked() {
+        // Todas las mutaciones pasan por aquí
+        mutationCount++;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            writer.schedule(this::flush, flushDelayLocked(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private TreeMap<String, KeyMeta> loadedIndex() {
+        if (index == null) {
+            TreeMap<String, KeyMeta> loaded = new TreeMap<>();
+            long used = 0;
+            long next = Long.MAX_VALUE;
+            for (BotKvKey key : dao.getKeys(namespace)) {
+                loaded.put(key.key, new KeyMeta(key.expiresAt, key.size));
+                used += key.size;
+                if (key.expiresAt > 0) {
+                    next = Math.min(next, key.expiresAt);
+                }
+            }
+            index = loaded;
+            usedBytes = used;
+            nextExpiry = next;
+        }
+        return index;
+    }
+
+    /**
+     * Copia el storage de SharedPreferences de versiones anteriores a este namespace
+     * y lo borra, para que la migración ocurra una sola vez.
+     */
+    private void migrateLegacyPrefs(@NonNull Context appContext) {
+        SharedPreferences legacy = appContext.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+        Map<String, ?> all = legacy.getAll();
+        if (all.isEmpty()) {
+            return;
+        }
+        List<BotKvEntry> entries = new ArrayList<>(all.size());
+        for (Map.Entry<String, ?> entry : all.entrySet()) {
+            if (entry.getValue() instanceof String) {
+                String value = (String) entry.getValue();
+                entries.add(new BotKvEntry(namespace, entry.getKey(), value, 0,
+                        sizeOf(entry.getKey(), value)));
+            }
+        }
+        try {
+            transactionRunner.run(() -> dao.upsert(entries));
+            legacy.edit().clear().commit();
+            Log.i(TAG, "Migrated " + entries.size() + " keys from " + LEGACY_PREFS_NAME);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to migrate legacy bot storage", e);
+        }
+    }
+
+    static int sizeOf(@NonNull String key, @NonNull String value) {
+        return (key.length() + value.length()) * 2;
+    }
+
+    private static final class KeyMeta {
+        final long expiresAt;
+        final int size;
+
+        KeyMeta(long expiresAt, int size) {
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt > 0 && expiresAt <= now;
+        }
+    }
+
+    private static final class PendingWrite {
+        static final PendingWrite DELETE = new PendingWrite(null, 0, 0);
+
+        @Nullable
+        final String value;
+        final long expiresAt;
+        final int size;
+
+        PendingWrite(@Nullable String value, long expiresAt, int size) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Ejecuta un bloque dentro de una transacción de la base de datos.
+     */
+    interface TransactionRunner {
+        void run(@NonNull Runnable body);
+    }
+
+    /**
+     * La escritura superaría la cuota del namespace.
+     */
+    public static final class QuotaExceededException extends Exception {
+        QuotaExceededException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.parishod.watomagic.botjs;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool acotado de hilos de larga vida para ejecutar bots.
+ *
+ * - Un número fijo de workers que mantienen su Context de Rhino activo durante toda su vida,
+ *   así que cada ejecución solo anida el Context ya existente.
+ * - Una cola acotada: cuando está llena la tarea se rechaza (y se contabiliza) en lugar de
+ *   crear más hilos.
+ * - Un watchdog compartido que cancela las tareas que superan su timeout. El timeout cuenta
+ *   desde que la tarea empieza a ejecutarse; la espera en cola se mide aparte.
+ *
+ * Thread-safe.
+ */
+public final class BotWorkerPool {
+
+    private static final String TAG = "BotWorkerPool";
+    public static final int WORKER_COUNT = 2;
+    static final int QUEUE_CAPACITY = 64;
+
+    private static volatile BotWorkerPool instance;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService watchdog;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private final AtomicLong maxQueueWaitMs = new AtomicLong();
+
+    private BotWorkerPool() {
+        executor = new ThreadPoolExecutor(
+                WORKER_COUNT,
+                WORKER_COUNT,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                new WorkerThreadFactory(),
+                (task, pool) -> {
+                    long rejected = rejectedCount.incrementAndGet();
+                    String message = String.format("Bot queue full (%d pending), task rejected (total rejected: %d)",
+                            pool.getQueue().size(), rejected);
+                    Log.w(TAG, message);
+                    if (BotLogCapture.isEnabled()) {
+                        BotLogCapture.addLog("warn", message);
+                    }
+                    throw new RejectedExecutionException(message);
+                });
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BotWatchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @NonNull
+    public static BotWorkerPool getInstance() {
+        BotWorkerPool pool = instance;
+        if (pool == null) {
+            synchronized (BotWorkerPool.class) {
+                pool = instance;
+                if (pool == null) {
+                    pool = new BotWorkerPool();
+                    instance = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @return true si el hilo actual es un worker del pool
+     */
+    public static boolean isWorkerThread() {
+        return Thread.currentThread() instanceof WorkerThread;
+    }
+
+    /**
+     * Encola una tarea con timeout. El timeout empieza a contar cuando un worker toma la
+     * tarea, no al encolarla. Al vencer la tarea se cancela (interrumpiendo el worker) y se
+     * ejecuta {@code onTimeout}, si se proporcionó.
+     *
+     * @throws RejectedExecutionException si la cola está llena
+     */
+    @NonNull
+    public <T> Future<T> submit(@NonNull Callable<T> task, long timeoutMs, @Nullable Runnable onTimeout) {
+        WatchedTask<T> watched = new WatchedTask<>(task, timeoutMs, onTimeout);
+        executor.execute(watched);
+        return watched;
+    }
+
+    /**
+     * @see #submit(Callable, long, Runnable)
+     */
+    @NonNull
+    public Future<?> submit(@NonNull Runnable task, long timeoutMs, @Nullable Runnable onTimeout) {
+        return submit(Executors.callable(task), timeoutMs, onTimeout);
+    }
+
+    /**
+     * @return tareas esperando un worker libre
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return workers ejecutando una tarea en este momento
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+    /**
+     * @return mayor tiempo que una tarea esperó en cola antes de ejecutarse
+     */
+    public long getMaxQueueWaitMs() {
+        return maxQueueWaitMs.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("BotWorkerPool[active=%d, queued=%d, completed=%d, rejected=%d, timedOut=%d, maxQueueWaitMs=%d]",
+                getActiveCount(), getQueueDepth(), getCompletedCount(),
+                getRejectedCount(), getTimedOutCount(), getMaxQueueWaitMs());
+    }
+
+    private void recordQueueWait(long waitMs, long timeoutMs) {
+        maxQueueWaitMs.accumulateAndGet(waitMs, Math::max);
+        if (waitMs > timeoutMs) {
+            String message = String.format("Bot task waited %d ms in queue (%d pending)", waitMs, getQueueDepth());
+            Log.w(TAG, message);
+            if (BotLogCapture.isEnabled()) {
+                BotLogCapture.addLog("warn", message);
+            }
+        }
+    }
+
+    /**
+     * FutureTask que arma su timer del watchdog al empezar a ejecutarse y lo cancela al terminar.
+     */
+    private final class WatchedTask<T> extends FutureTask<T> {
+        private final long timeoutMs;
+        @Nullable
+        private final Runnable onTimeout;
+        private final long enqueuedAt = SystemClock.elapsedRealtime();
+        private volatile ScheduledFuture<?> timer;
+
+        WatchedTask(Callable<T> callable, long timeoutMs, @Nullable Runnable onTimeout) {
+            super(callable);
+            this.timeoutMs = timeoutMs;
+            this.onTimeout = onTimeout;
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) {
+                // Cancelada mientras esperaba en cola
+                return;
+            }
+            recordQueueWait(SystemClock.elapsedRealtime() - enqueuedAt, timeoutMs);
+            timer = watchdog.schedule(this::onWatchdog, timeoutMs, TimeUnit.MILLISECONDS);
+            super.run();
+        }
+
+        private void onWatchdog() {
+            if (!isDone()) {
+                timedOutCount.incrementAndGet();
+                Log.w(TAG, "Bot task exceeded " + timeoutMs + " ms, cancelling");
+                cancel(true);
+                if (onTimeout != null) {
+                    onTimeout.run();
+                }
+            }
+        }
+
+        @Override
+        protected void done() {
+            ScheduledFuture<?> scheduled = timer;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Hilo worker que entra en un Context de Rhino al arrancar y lo mantiene hasta terminar.
+     */
+    private static final class WorkerThread extends Thread {
+        WorkerThread(Runnable target, String name) {
+            super(target, name);
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            BotContextFactory.getInstance().enterContext();
+            try {
+                super.run();
+            } finally {
+                org.mozilla.javascript.Context.exit();
+            }
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new WorkerThread(runnable, "BotWorker-" + count.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.parishod.watomagic.botjs;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Cuerpo de petición que lee un content:// (p. ej. un documento SAF) mientras se envía,
+ * sin cargarlo en memoria. Se puede reenviar: cada escritura vuelve a abrir la URI.
+ */
+final class ContentUriRequestBody extends RequestBody {
+
+    private final ContentResolver resolver;
+    private final Uri uri;
+    private final long contentLength;
+    @Nullable
+    private final MediaType contentType;
+
+    ContentUriRequestBody(@NonNull ContentResolver resolver, @NonNull Uri uri, long contentLength,
+                          @Nullable MediaType contentType) {
+        this.resolver = resolver;
+        this.uri = uri;
+        this.contentLength = contentLength;
+        this.contentType = contentType;
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new FileNotFoundException("Cannot open " + uri);
+        }
+        try (Source source = Okio.source(in)) {
+            sink.writeAll(source);
+        }
+    }
+}
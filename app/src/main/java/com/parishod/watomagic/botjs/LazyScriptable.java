@@ -0,0 +1,74 @@
+package com.parishod.watomagic.botjs;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Objeto JS cuyas propiedades se calculan la primera vez que el bot las lee.
+ *
+ * Una vez calculada, la propiedad se guarda como una propiedad normal, así que el bot
+ * puede leerla, modificarla o serializarla con JSON.stringify como con cualquier objeto.
+ */
+abstract class LazyScriptable extends ScriptableObject {
+
+    private final List<String> lazyNames;
+
+    LazyScriptable(@NonNull Scriptable scope, @NonNull String... lazyNames) {
+        this.lazyNames = Arrays.asList(lazyNames);
+        setParentScope(scope);
+        setPrototype(ScriptableObject.getObjectPrototype(scope));
+    }
+
+    /**
+     * Calcula el valor de una propiedad perezosa.
+     * @return el valor, o null si la propiedad no existe para este objeto
+     */
+    @Nullable
+    protected abstract Object materialize(@NonNull String name);
+
+    @Override
+    public String getClassName() {
+        return "Object";
+    }
+
+    @Override
+    public Object get(String name, Scriptable start) {
+        if (super.has(name, start) || !lazyNames.contains(name)) {
+            return super.get(name, start);
+        }
+        Object value = materialize(name);
+        if (value == null) {
+            return Scriptable.NOT_FOUND;
+        }
+        super.put(name, this, value);
+        return value;
+    }
+
+    @Override
+    public boolean has(String name, Scriptable start) {
+        return super.has(name, start) || (lazyNames.contains(name) && get(name, start) != Scriptable.NOT_FOUND);
+    }
+
+    @Override
+    public Object[] getIds() {
+        List<Object> ids = new ArrayList<>();
+        for (String name : lazyNames) {
+            if (has(name, this)) {
+                ids.add(name);
+            }
+        }
+        for (Object id : super.getIds()) {
+            if (!ids.contains(id)) {
+                ids.add(id);
+            }
+        }
+        return ids.toArray();
+    }
+}
@@ -0,0 +1,329 @@
+package com.parishod.watomagic.botjs;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Base64;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Genera y cachea las miniaturas JPEG (Base64) de los adjuntos.
+ *
+ * Las imágenes nunca se decodifican a resolución completa: primero se leen solo las
+ * dimensiones y luego se decodifica con el mayor inSampleSize que mantiene la miniatura
+ * por encima de {@link #THUMBNAIL_MAX_SIZE}. Una foto de 12 MP ocupa así ~200 KB de bitmap
+ * en vez de ~48 MB.
+ *
+ * Las miniaturas se indexan por una clave del contenido, en memoria (LRU acotada por
+ * tamaño) y en disco (cacheDir/bot_thumbnails, acotado por número de archivos), así que
+ * la misma imagen reenviada o vuelta a notificar no se decodifica otra vez. La clave la da
+ * quien llama sin leer la imagen (el SHA-256 que ya calculó {@link AttachmentStore}, o
+ * {@link #keyForUri}); solo si no la tiene se calcula el SHA-256 leyendo el stream.
+ *
+ * El número de archivos en disco se lleva en memoria: el directorio solo se lista al
+ * arrancar y al recortar, y cada recorte baja hasta {@link #DISK_TRIM_TARGET}.
+ *
+ * Thread-safe.
+ */
+public final class ThumbnailCache {
+    private static final String TAG = "ThumbnailCache";
+    static final int THUMBNAIL_MAX_SIZE = 200; // 200x200px
+    private static final int JPEG_QUALITY = 70;
+    private static final String THUMBNAILS_DIR = "bot_thumbnails";
+    private static final int MEMORY_CACHE_CHARS = 1024 * 1024;
+    static final int MAX_DISK_ENTRIES = 200;
+    static final int DISK_TRIM_TARGET = MAX_DISK_ENTRIES * 3 / 4;
+
+    private static volatile ThumbnailCache instance;
+
+    /**
+     * Abre el contenido de la imagen; se llama una vez por cada pasada de lectura.
+     */
+    public interface StreamOpener {
+        @Nullable
+        InputStream open() throws IOException;
+    }
+
+    private final File thumbnailsDir;
+    // Guarded by this; -1 hasta listar el directorio
+    private int diskEntries = -1;
+    private final LruCache<String, String> memoryCache = new LruCache<String, String>(MEMORY_CACHE_CHARS) {
+        @Override
+        protected int sizeOf(String key, String value) {
+            return key.length() + value.length();
+        }
+    };
+
+    @VisibleForTesting
+    ThumbnailCache(@NonNull File thumbnailsDir) {
+        this.thumbnailsDir = thumbnailsDir;
+    }
+
+    @NonNull
+    public static ThumbnailCache getInstance(@NonNull Context context) {
+        ThumbnailCache cache = instance;
+        if (cache == null) {
+            synchronized (ThumbnailCache.class) {
+                cache = instance;
+                if (cache == null) {
+                    cache = new ThumbnailCache(
+                            new File(context.getApplicationContext().getCacheDir(), THUMBNAILS_DIR));
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Miniatura de una imagen codificada (archivo o URI), o null si no se puede decodificar.
+     *
+     * @param key identifica el contenido (hexadecimal); null para calcular el SHA-256
+     *            leyendo la imagen entera
+     */
+    @Nullable
+    public String getThumbnail(@Nullable String key, @NonNull StreamOpener opener) {
+        if (key == null) {
+            try {
+                key = hash(opener);
+            } catch (IOException | SecurityException e) {
+                Log.w(TAG, "Error reading image", e);
+                return null;
+            }
+            if (key == null) {
+                return null;
+            }
+        }
+
+        String thumbnail = memoryCache.get(key);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        byte[] jpeg = readFromDisk(key);
+        if (jpeg == null) {
+            jpeg = decodeThumbnail(opener);
+            if (jpeg == null) {
+                return null;
+            }
+            writeToDisk(key, jpeg);
+        }
+        thumbnail = Base64.encodeToString(jpeg, Base64.NO_WRAP);
+        memoryCache.put(key, thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * Miniatura de un bitmap ya decodificado (p. ej. EXTRA_PICTURE). No se cachea: el bitmap
+     * ya está en memoria y reducirlo es barato comparado con calcular su hash.
+     */
+    @Nullable
+    public String getThumbnail(@NonNull Bitmap bitmap) {
+        byte[] jpeg = scaleAndCompress(bitmap);
+        return jpeg != null ? Base64.encodeToString(jpeg, Base64.NO_WRAP) : null;
+    }
+
+    /**
+     * Clave de una URI de contenido que no se ha copiado. Las URIs de las notificaciones
+     * apuntan a archivos que no se reescriben; el tamaño distingue un archivo sustituido.
+     */
+    @NonNull
+    public static String keyForUri(@NonNull String uri, long size) {
+        return toHex(newDigest().digest((uri + '|' + size).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Mayor potencia de 2 que, al dividir el lado más largo, lo deja en al menos {@code maxSize}.
+     */
+    @VisibleForTesting
+    static int calculateInSampleSize(int width, int height, int maxSize) {
+        int longestSide = Math.max(width, height);
+        int inSampleSize = 1;
+        while (longestSide / (inSampleSize * 2) >= maxSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    @Nullable
+    private static byte[] decodeThumbnail(@NonNull StreamOpener opener) {
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream in = opener.open()) {
+                if (in == null) {
+                    return null;
+                }
+                BitmapFactory.decodeStream(in, null, options);
+            }
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, THUMBNAIL_MAX_SIZE);
+            Bitmap sampled;
+            try (InputStream in = opener.open()) {
+                if (in == null) {
+                    return null;
+                }
+                sampled = BitmapFactory.decodeStream(in, null, options);
+            }
+            if (sampled == null) {
+                return null;
+            }
+            byte[] jpeg = scaleAndCompress(sampled);
+            sampled.recycle();
+            return jpeg;
+        } catch (IOException | SecurityException | OutOfMemoryError e) {
+            Log.e(TAG, "Error generating thumbnail", e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static byte[] scaleAndCompress(@NonNull Bitmap original) {
+        try {
+            int width = original.getWidth();
+            int height = original.getHeight();
+            Bitmap thumbnail = original;
+            if (width > THUMBNAIL_MAX_SIZE || height > THUMBNAIL_MAX_SIZE) {
+                float scale = Math.min((float) THUMBNAIL_MAX_SIZE / width,
+                                       (float) THUMBNAIL_MAX_SIZE / height);
+                thumbnail = Bitmap.createScaledBitmap(original,
+                        Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), true);
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            thumbnail.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, baos);
+            if (thumbnail != original) {
+                thumbnail.recycle();
+            }
+            return baos.toByteArray();
+        } catch (Exception e) {
+            Log.e(TAG, "Error generating thumbnail", e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static String hash(@NonNull StreamOpener opener) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = opener.open()) {
+            if (in == null) {
+                return null;
+            }
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    @NonNull
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    private static String toHex(@NonNull byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    @Nullable
+    private byte[] readFromDisk(@NonNull String key) {
+        File file = new File(thumbnailsDir, key + ".jpg");
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] jpeg = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < jpeg.length && (read = in.read(jpeg, offset, jpeg.length - offset)) != -1) {
+                offset += read;
+            }
+            if (offset < jpeg.length) {
+                return null;
+            }
+            // lastModified hace de marca de uso para el recorte
+            file.setLastModified(System.currentTimeMillis());
+            return jpeg;
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading cached thumbnail", e);
+            return null;
+        }
+    }
+
+    private synchronized void writeToDisk(@NonNull String key, @NonNull byte[] jpeg) {
+        if (!thumbnailsDir.exists() && !thumbnailsDir.mkdirs()) {
+            return;
+        }
+        if (diskEntries < 0) {
+            diskEntries = listDisk().length;
+        }
+        File file = new File(thumbnailsDir, key + ".jpg");
+        File tmp = new File(thumbnailsDir, key + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(jpeg);
+        } catch (IOException e) {
+            Log.w(TAG, "Error caching thumbnail", e);
+            tmp.delete();
+            return;
+        }
+        boolean replaced = file.exists();
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+        if (!replaced && ++diskEntries > MAX_DISK_ENTRIES) {
+            trimDisk();
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = listDisk();
+        diskEntries = files.length;
+        if (files.length <= MAX_DISK_ENTRIES) {
+            // Se borraron archivos desde fuera (p. ej. al limpiar la caché)
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length - DISK_TRIM_TARGET; i++) {
+            if (files[i].delete()) {
+                diskEntries--;
+            }
+        }
+    }
+
+    @NonNull
+    private File[] listDisk() {
+        File[] files = thumbnailsDir.listFiles((dir, name) -> name.endsWith(".jpg"));
+        return files != null ? files : new File[0];
+    }
+}
@@ -1,15 +1,15 @@
 package com.parishod.watomagic.botjs;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
- * Utilidad para ejecutar tareas con timeout duro.
+ * Utilidad para ejecutar tareas con timeout duro sobre los workers de {@link BotWorkerPool}.
  */
 public final class TimeoutExecutor {
 
@@ -19,18 +19,37 @@ public final class TimeoutExecutor {
 
     public static <T> T executeWithTimeout(Callable<T> task, long timeoutMs)
             throws TimeoutException, ExecutionException {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Future<T> future = executor.submit(task);
+        // Si ya estamos en un worker, ejecutar en línea: encolar y esperar aquí podría
+        // bloquear el pool. El timeout lo aplica el watchdog de la tarea que nos trajo aquí.
+        if (BotWorkerPool.isWorkerThread()) {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new ExecutionException(e);
+            }
+        }
+
+        Future<T> future;
         try {
-            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            future = BotWorkerPool.getInstance().submit(task, timeoutMs, null);
+        } catch (RejectedExecutionException e) {
             throw new ExecutionException(e);
+        }
+
+        try {
+            // El watchdog cancela la tarea timeoutMs después de que empiece, así que el tiempo
+            // en cola no se descuenta de su ejecución. La espera en cola se acota aquí a otro
+            // timeoutMs para no bloquear al llamador mientras se vacía una cola llena.
+            return future.get(2 * timeoutMs, TimeUnit.MILLISECONDS);
         } catch (TimeoutException e) {
             future.cancel(true);
-            throw e;
-        } finally {
-            executor.shutdownNow();
+            throw new TimeoutException("Task not finished " + (2 * timeoutMs) + " ms after being queued");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new ExecutionException(e);
+        } catch (CancellationException e) {
+            throw new TimeoutException("Task cancelled after " + timeoutMs + " ms");
         }
     }
 }
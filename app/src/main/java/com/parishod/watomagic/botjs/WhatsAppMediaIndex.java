@@ -0,0 +1,428 @@
+package com.parishod.watomagic.botjs;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice en memoria de las imágenes de la carpeta SAF de WhatsApp, ordenado por fecha de
+ * modificación.
+ *
+ * Cada carpeta se lista con una única consulta de DocumentsContract que trae solo las
+ * columnas necesarias, en vez de varias IPC por archivo con DocumentFile. Tras la primera
+ * pasada el índice se actualiza de forma incremental: solo se vuelven a listar las carpetas
+ * cuya fecha de modificación cambió. Las búsquedas por ventana de tiempo son una búsqueda
+ * binaria sobre el índice.
+ *
+ * Reescribir un archivo no cambia la fecha de su carpeta, así que una imagen indexada mientras
+ * WhatsApp aún la escribía conserva un tamaño y una fecha parciales. Por eso el resultado de
+ * cada búsqueda se vuelve a consultar (una IPC) antes de devolverlo.
+ *
+ * Se comparte entre ejecuciones del bot mientras no cambie la carpeta elegida. Thread-safe.
+ */
+final class WhatsAppMediaIndex {
+
+    private static final String TAG = "WhatsAppMediaIndex";
+    /** Intervalo mínimo entre dos comprobaciones de cambios en la carpeta */
+    static final long MIN_REFRESH_INTERVAL_MS = 1_000L;
+
+    private static final String[] CHILD_PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+            DocumentsContract.Document.COLUMN_SIZE
+    };
+    private static final String[] LAST_MODIFIED_PROJECTION = {
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED
+    };
+    private static final String[] DOCUMENT_PROJECTION = {
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+            DocumentsContract.Document.COLUMN_SIZE
+    };
+    /** Búsquedas repetidas cuando la imagen elegida cambió de fecha al volver a consultarla */
+    private static final int MAX_FIND_ATTEMPTS = 2;
+
+    private static volatile WhatsAppMediaIndex instance;
+
+    /**
+     * Imagen indexada.
+     */
+    static final class Media {
+        private final Uri treeUri;
+        final String documentId;
+        final String name;
+        @Nullable
+        final String mimeType;
+        final long size;
+        final long lastModified;
+
+        Media(Uri treeUri, String documentId, String name, @Nullable String mimeType, long size,
+              long lastModified) {
+            this.treeUri = treeUri;
+            this.documentId = documentId;
+            this.name = name;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @NonNull
+        Uri getUri() {
+            return DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId);
+        }
+    }
+
+    /**
+     * Consultas al proveedor de documentos; separado para poder probar el índice.
+     */
+    interface DocumentSource {
+        /**
+         * Hijos de una carpeta con las columnas de {@link #CHILD_PROJECTION}, o null.
+         */
+        @Nullable
+        Cursor queryChildren(@NonNull String parentDocumentId);
+
+        /**
+         * Fecha de modificación del documento, o 0 si el proveedor no la informa.
+         */
+        long queryLastModified(@NonNull String documentId);
+
+        /**
+         * Fecha de modificación y tamaño actuales del documento ({@link #DOCUMENT_PROJECTION}),
+         * o null.
+         */
+        @Nullable
+        Cursor queryDocument(@NonNull String documentId);
+    }
+
+    private static final class Folder {
+        final long lastModified;
+        final List<Media> images;
+        final List<String> subfolders;
+
+        Folder(long lastModified, List<Media> images, List<String> subfolders) {
+            this.lastModified = lastModified;
+            this.images = images;
+            this.subfolders = subfolders;
+        }
+    }
+
+    private final Uri treeUri;
+    private final String rootDocumentId;
+    private final DocumentSource source;
+    // Guarded by this
+    private final Map<String, Folder> folders = new HashMap<>();
+    private Media[] sorted = new Media[0];
+    private long[] sortedTimes = new long[0];
+    private long lastRefresh = Long.MIN_VALUE;
+
+    @VisibleForTesting
+    WhatsAppMediaIndex(@NonNull Uri treeUri, @NonNull String rootDocumentId, @NonNull DocumentSource source) {
+        this.treeUri = treeUri;
+        this.rootDocumentId = rootDocumentId;
+        this.source = source;
+    }
+
+    /**
+     * Índice de la carpeta concedida; se reutiliza mientras sea la misma.
+     */
+    @NonNull
+    static WhatsAppMediaIndex forTree(@NonNull ContentResolver resolver, @NonNull Uri treeUri) {
+        WhatsAppMediaIndex index = instance;
+        if (index == null || !index.treeUri.equals(treeUri)) {
+            synchronized (WhatsAppMediaIndex.class) {
+                index = instance;
+                if (index == null || !index.treeUri.equals(treeUri)) {
+                    index = new WhatsAppMediaIndex(treeUri, DocumentsContract.getTreeDocumentId(treeUri),
+                            new ContentResolverSource(resolver, treeUri));
+                    instance = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Imagen modificada dentro de [windowStart, windowEnd] más cercana a {@code timestamp}
+     * (a igual distancia, la más reciente), o null.
+     */
+    @Nullable
+    synchronized Media findClosest(long timestamp, long windowStart, long windowEnd) {
+        refreshIfStale();
+
+        for (int attempt = 0; attempt < MAX_FIND_ATTEMPTS; attempt++) {
+            Media best = closest(timestamp, windowStart, windowEnd);
+            if (best == null) {
+                return null;
+            }
+            Media current = requery(best);
+            if (current != null && current.lastModified == best.lastModified) {
+                return current;
+            }
+            // Se borró o cambió de fecha: el índice ya está actualizado, se busca otra vez
+        }
+        return null;
+    }
+
+    @Nullable
+    private Media closest(long timestamp, long windowStart, long windowEnd) {
+        Media best = null;
+        long bestModified = Long.MIN_VALUE;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = lowerBound(sortedTimes, windowStart); i < sorted.length && sortedTimes[i] <= windowEnd; i++) {
+            Media media = sorted[i];
+            if (WhatsAppMediaResolver.isCloserMatch(media.lastModified, timestamp, bestModified, bestDistance)) {
+                bestDistance = Math.abs(media.lastModified - timestamp);
+                bestModified = media.lastModified;
+                best = media;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Vuelve a leer el tamaño y la fecha de la imagen y actualiza el índice.
+     *
+     * @return la imagen actualizada, o null si ya no existe o no se pudo leer
+     */
+    @Nullable
+    private Media requery(@NonNull Media media) {
+        Media current = null;
+        try (Cursor cursor = source.queryDocument(media.documentId)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                long lastModified = cursor.isNull(0) ? 0 : cursor.getLong(0);
+                long size = cursor.isNull(1) ? 0 : cursor.getLong(1);
+                if (lastModified == media.lastModified && size == media.size) {
+                    return media;
+                }
+                current = new Media(treeUri, media.documentId, media.name, media.mimeType, size, lastModified);
+            }
+        } catch (RuntimeException e) {
+            // Puede ser un error transitorio: se deja en el índice
+            Log.w(TAG, "Error reading SAF document " + media.documentId, e);
+            return null;
+        }
+
+        for (Folder folder : folders.values()) {
+            int i = folder.images.indexOf(media);
+            if (i >= 0) {
+                if (current != null) {
+                    folder.images.set(i, current);
+                } else {
+                    folder.images.remove(i);
+                }
+                break;
+            }
+        }
+        rebuildSorted();
+        return current;
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+        return sorted.length;
+    }
+
+    /**
+     * Primer índice con un valor >= {@code key}.
+     */
+    @VisibleForTesting
+    static int lowerBound(@NonNull long[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void refreshIfStale() {
+        long now = SystemClock.elapsedRealtime();
+        if (lastRefresh != Long.MIN_VALUE && now - lastRefresh < MIN_REFRESH_INTERVAL_MS) {
+            return;
+        }
+        lastRefresh = now;
+
+        long start = now;
+        int listed;
+        if (folders.isEmpty()) {
+            listed = scan(rootDocumentId, source.queryLastModified(rootDocumentId));
+        } else {
+            listed = 0;
+            for (String folderId : new ArrayList<>(folders.keySet())) {
+                Folder folder = folders.get(folderId);
+                if (folder == null) {
+                    // Eliminada al volver a listar su carpeta padre
+                    continue;
+                }
+                long lastModified = source.queryLastModified(folderId);
+                // Sin fecha de modificación no se puede saber si cambió
+                if (lastModified == 0 || lastModified != folder.lastModified) {
+                    listed += scan(folderId, lastModified);
+                }
+            }
+        }
+        if (listed > 0) {
+            rebuildSorted();
+            Log.d(TAG, "Listed " + listed + " folders, " + sorted.length + " images indexed in "
+                    + (SystemClock.elapsedRealtime() - start) + " ms");
+        }
+    }
+
+    /**
+     * Lista la carpeta y las subcarpetas nuevas.
+     *
+     * @return número de carpetas listadas
+     */
+    private int scan(@NonNull String folderId, long folderLastModified) {
+        int listed = 0;
+        Deque<String> pending = new ArrayDeque<>();
+        Deque<Long> pendingLastModified = new ArrayDeque<>();
+        pending.add(folderId);
+        pendingLastModified.add(folderLastModified);
+
+        while (!pending.isEmpty()) {
+            String id = pending.removeFirst();
+            long lastModified = pendingLastModified.removeFirst();
+            List<Media> images = new ArrayList<>();
+            List<String> subfolders = new ArrayList<>();
+            List<Long> subfolderLastModified = new ArrayList<>();
+            if (!listChildren(id, images, subfolders, subfolderLastModified)) {
+                continue;
+            }
+            listed++;
+
+            Folder previous = folders.put(id, new Folder(lastModified, images, subfolders));
+            if (previous != null) {
+                for (String removed : previous.subfolders) {
+                    if (!subfolders.contains(removed)) {
+                        remove(removed);
+                    }
+                }
+            }
+            for (int i = 0; i < subfolders.size(); i++) {
+                // Las subcarpetas ya indexadas se comprueban por su propia fecha
+                if (!folders.containsKey(subfolders.get(i))) {
+                    pending.add(subfolders.get(i));
+                    pendingLastModified.add(subfolderLastModified.get(i));
+                }
+            }
+        }
+        return listed;
+    }
+
+    private boolean listChildren(@NonNull String folderId, @NonNull List<Media> images,
+                                 @NonNull List<String> subfolders, @NonNull List<Long> subfolderLastModified) {
+        try (Cursor cursor = source.queryChildren(folderId)) {
+            if (cursor == null) {
+                return false;
+            }
+            while (cursor.moveToNext()) {
+                String documentId = cursor.getString(0);
+                String name = cursor.getString(1);
+                String mimeType = cursor.getString(2);
+                long lastModified = cursor.isNull(3) ? 0 : cursor.getLong(3);
+                if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType)) {
+                    subfolders.add(documentId);
+                    subfolderLastModified.add(lastModified);
+                } else if (WhatsAppMediaResolver.isImageFile(name)) {
+                    long size = cursor.isNull(4) ? 0 : cursor.getLong(4);
+                    images.add(new Media(treeUri, documentId, name, mimeType, size, lastModified));
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // SecurityException si se revocó el permiso, u otros errores del proveedor
+            Log.w(TAG, "Error listing SAF folder " + folderId, e);
+            return false;
+        }
+    }
+
+    private void remove(@NonNull String folderId) {
+        Folder folder = folders.remove(folderId);
+        if (folder != null) {
+            for (String subfolder : folder.subfolders) {
+                remove(subfolder);
+            }
+        }
+    }
+
+    private void rebuildSorted() {
+        int count = 0;
+        for (Folder folder : folders.values()) {
+            count += folder.images.size();
+        }
+        Media[] media = new Media[count];
+        int i = 0;
+        for (Folder folder : folders.values()) {
+            for (Media image : folder.images) {
+                media[i++] = image;
+            }
+        }
+        Arrays.sort(media, (a, b) -> Long.compare(a.lastModified, b.lastModified));
+        long[] times = new long[count];
+        for (int j = 0; j < count; j++) {
+            times[j] = media[j].lastModified;
+        }
+        sorted = media;
+        sortedTimes = times;
+    }
+
+    private static final class ContentResolverSource implements DocumentSource {
+        private final ContentResolver resolver;
+        private final Uri treeUri;
+
+        ContentResolverSource(ContentResolver resolver, Uri treeUri) {
+            this.resolver = resolver;
+            this.treeUri = treeUri;
+        }
+
+        @Nullable
+        @Override
+        public Cursor queryChildren(@NonNull String parentDocumentId) {
+            return resolver.query(DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, parentDocumentId),
+                    CHILD_PROJECTION, null, null, null);
+        }
+
+        @Override
+        public long queryLastModified(@NonNull String documentId) {
+            try (Cursor cursor = resolver.query(DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId),
+                    LAST_MODIFIED_PROJECTION, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                    return cursor.getLong(0);
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Error reading SAF folder " + documentId, e);
+            }
+            return 0;
+        }
+
+        @Nullable
+        @Override
+        public Cursor queryDocument(@NonNull String documentId) {
+            return resolver.query(DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId),
+                    DOCUMENT_PROJECTION, null, null, null);
+        }
+    }
+}
@@ -8,22 +8,20 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
-import androidx.documentfile.provider.DocumentFile;
 
 import com.parishod.watomagic.model.preferences.PreferencesManager;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Deque;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Set;
 
 /**
  * Lee imágenes de WhatsApp desde una carpeta concedida vía SAF (ACTION_OPEN_DOCUMENT_TREE).
+ * Las búsquedas usan {@link WhatsAppMediaIndex} en vez de recorrer la carpeta.
  */
 public class WhatsAppMediaResolver {
 
@@ -46,61 +44,39 @@ public class WhatsAppMediaResolver {
 
     @Nullable
     public String readLatestImageBase64(long notificationTimestamp) {
+        WhatsAppMediaIndex.Media bestMatch = findLatestImage(notificationTimestamp);
+        return bestMatch != null ? readFileAsBase64(bestMatch) : null;
+    }
+
+    /**
+     * Imagen de la carpeta SAF más cercana a {@code notificationTimestamp}, o null si no hay
+     * ninguna o supera el tamaño máximo.
+     */
+    @Nullable
+    WhatsAppMediaIndex.Media findLatestImage(long notificationTimestamp) {
         String treeUriString = PreferencesManager.getPreferencesInstance(context)
                 .getBotJsWhatsAppMediaTreeUri();
         if (treeUriString == null) {
             return null;
         }
 
-        DocumentFile tree = DocumentFile.fromTreeUri(context, Uri.parse(treeUriString));
-        if (tree == null || !tree.canRead()) {
-            Log.w(TAG, "SAF tree not readable");
+        WhatsAppMediaIndex index;
+        try {
+            index = WhatsAppMediaIndex.forTree(context.getContentResolver(), Uri.parse(treeUriString));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid SAF tree URI: " + treeUriString, e);
             return null;
         }
-
-        DocumentFile bestMatch = findBestMatchingImage(tree, notificationTimestamp);
+        WhatsAppMediaIndex.Media bestMatch = index.findClosest(notificationTimestamp,
+                notificationTimestamp - TIMESTAMP_MARGIN_MS, notificationTimestamp + TIMESTAMP_MARGIN_MS);
         if (bestMatch == null) {
             Log.d(TAG, "No image found near timestamp " + notificationTimestamp);
             return null;
         }
-
-        return readFileAsBase64(bestMatch);
-    }
-
-    @Nullable
-    @VisibleForTesting
-    DocumentFile findBestMatchingImage(@NonNull DocumentFile root, long notificationTimestamp) {
-        long windowStart = notificationTimestamp - TIMESTAMP_MARGIN_MS;
-        long windowEnd = notificationTimestamp + TIMESTAMP_MARGIN_MS;
-
-        DocumentFile best = null;
-        long bestModified = Long.MIN_VALUE;
-        long bestDistance = Long.MAX_VALUE;
-
-        Deque<DocumentFile> queue = new ArrayDeque<>();
-        queue.add(root);
-
-        while (!queue.isEmpty()) {
-            DocumentFile current = queue.removeFirst();
-            DocumentFile[] children = current.listFiles();
-            if (children == null) {
-                continue;
-            }
-            for (DocumentFile child : children) {
-                if (child.isDirectory()) {
-                    queue.addLast(child);
-                } else if (child.isFile() && isImageFile(child.getName())) {
-                    long modified = child.lastModified();
-                    if (modified >= windowStart && modified <= windowEnd
-                            && isCloserMatch(modified, notificationTimestamp, bestModified, bestDistance)) {
-                        bestDistance = Math.abs(modified - notificationTimestamp);
-                        bestModified = modified;
-                        best = child;
-                    }
-                }
-            }
+        if (bestMatch.size <= 0 || bestMatch.size > MAX_FILE_SIZE) {
+            return null;
         }
-        return best;
+        return bestMatch;
     }
 
     @VisibleForTesting
@@ -128,19 +104,16 @@ public class WhatsAppMediaResolver {
     }
 
     @Nullable
-    private String readFileAsBase64(@NonNull DocumentFile file) {
+    private String readFileAsBase64(@NonNull WhatsAppMediaIndex.Media file) {
         try {
-            long length = file.length();
-            if (length <= 0 || length > MAX_FILE_SIZE) {
-                return null;
-            }
+            long length = file.size;
 
             InputStream inputStream = context.getContentResolver().openInputStream(file.getUri());
             if (inputStream == null) {
                 return null;
             }
 
-            try (InputStream in = inputStream; ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
+            try (InputStream in = inputStream; ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) length)) {
                 byte[] chunk = new byte[8192];
                 int read;
                 while ((read = in.read(chunk)) != -1) {
@@ -0,0 +1,32 @@
+package com.parishod.watomagic.botjs.storage;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface BotKvDao {
+    @Query("SELECT `key`, expires_at, size FROM bot_kv WHERE namespace = :namespace")
+    List<BotKvKey> getKeys(String namespace);
+
+    @Query("SELECT value FROM bot_kv WHERE namespace = :namespace AND `key` = :key")
+    String getValue(String namespace, String key);
+
+    @Query("SELECT * FROM bot_kv WHERE namespace = :namespace AND `key` IN (:keys)")
+    List<BotKvEntry> getEntries(String namespace, List<String> keys);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(List<BotKvEntry> entries);
+
+    @Query("DELETE FROM bot_kv WHERE namespace = :namespace AND `key` IN (:keys)")
+    void delete(String namespace, List<String> keys);
+
+    @Query("DELETE FROM bot_kv WHERE namespace = :namespace")
+    void clear(String namespace);
+
+    @Query("DELETE FROM bot_kv WHERE expires_at > 0 AND expires_at <= :now")
+    int deleteExpired(long now);
+}
@@ -0,0 +1,80 @@
+package com.parishod.watomagic.botjs.storage;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+/**
+ * Una clave del storage de un bot. Las claves se agrupan por namespace (uno por bot).
+ */
+@Entity(tableName = "bot_kv",
+        primaryKeys = {"namespace", "key"},
+        indices = {
+                @Index(value = "expires_at")
+        })
+public class BotKvEntry {
+    @NonNull
+    private String namespace;
+    @NonNull
+    private String key;
+    @NonNull
+    private String value;
+    /** Momento de expiración (epoch ms), 0 si la clave no expira */
+    @ColumnInfo(name = "expires_at")
+    private long expiresAt;
+    /** Tamaño aproximado en bytes (clave + valor), usado para la cuota */
+    private int size;
+
+    public BotKvEntry(@NonNull String namespace, @NonNull String key, @NonNull String value,
+                      long expiresAt, int size) {
+        this.namespace = namespace;
+        this.key = key;
+        this.value = value;
+        this.expiresAt = expiresAt;
+        this.size = size;
+    }
+
+    @NonNull
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public void setNamespace(@NonNull String namespace) {
+        this.namespace = namespace;
+    }
+
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(@NonNull String key) {
+        this.key = key;
+    }
+
+    @NonNull
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(@NonNull String value) {
+        this.value = value;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+}
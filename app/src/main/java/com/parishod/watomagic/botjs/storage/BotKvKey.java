@@ -0,0 +1,21 @@
+package com.parishod.watomagic.botjs.storage;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+
+/**
+ * Metadatos de una clave sin su valor, para construir el índice en memoria.
+ */
+public class BotKvKey {
+    @NonNull
+    public final String key;
+    @ColumnInfo(name = "expires_at")
+    public final long expiresAt;
+    public final int size;
+
+    public BotKvKey(@NonNull String key, long expiresAt, int size) {
+        this.key = key;
+        this.expiresAt = expiresAt;
+        this.size = size;
+    }
+}
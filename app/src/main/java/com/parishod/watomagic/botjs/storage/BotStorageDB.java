@@ -0,0 +1,23 @@
+package com.parishod.watomagic.botjs.storage;
+
+import android.content.Context;
+
+import androidx.room.Database;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+
+@Database(entities = {BotKvEntry.class}, version = 1)
+public abstract class BotStorageDB extends RoomDatabase {
+    private static final String DB_NAME = "bot_storage_db";
+    private static BotStorageDB _instance;
+
+    public static synchronized BotStorageDB getInstance(Context context) {
+        if (_instance == null) {
+            _instance = Room.databaseBuilder(context.getApplicationContext(), BotStorageDB.class, DB_NAME)
+                    .build();
+        }
+        return _instance;
+    }
+
+    public abstract BotKvDao kvDao();
+}
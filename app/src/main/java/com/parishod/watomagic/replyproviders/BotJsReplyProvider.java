@@ -5,12 +5,12 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import com.parishod.watomagic.botjs.BotExecutionException;
 import com.parishod.watomagic.botjs.BotJsEngine;
 import com.parishod.watomagic.botjs.BotLogCapture;
+import com.parishod.watomagic.botjs.BotResponse;
 import com.parishod.watomagic.botjs.BotValidator;
+import com.parishod.watomagic.botjs.BotWorkerPool;
 import com.parishod.watomagic.botjs.RateLimiter;
 import com.parishod.watomagic.model.preferences.PreferencesManager;
 import com.parishod.watomagic.replyproviders.model.NotificationData;
@@ -20,6 +20,8 @@ import com.parishod.watomagic.service.NotificationService;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Provider de respuestas usando bots JavaScript personalizados
@@ -37,155 +39,215 @@ public class BotJsReplyProvider implements ReplyProvider {
         RATE_LIMIT_WINDOW_MS
     );
     
-    private final Gson gson = new Gson();
+    /**
+     * Un bot ocupa un worker del pool durante toda su ejecución
+     */
+    @Override
+    public int getMaxConcurrency() {
+        return BotWorkerPool.WORKER_COUNT;
+    }
 
     @Override
     public void generateReply(Context context,
                              NotificationData notificationData,
-                             ReplyCallback callback) {
-        // Ejecutar en thread background para no bloquear el UI thread
-        new Thread(() -> {
-            try {
-                // Log de inicio de ejecución
-                if (BotLogCapture.isEnabled()) {
-                    String title = NotificationUtils.getTitle(notificationData.getStatusBarNotification());
-                    String packageName = notificationData.getStatusBarNotification().getPackageName();
-                    String notifInfo = String.format("Bot execution started for: %s (package: %s)",
-                            title != null ? title : "unknown",
-                            packageName);
-                    BotLogCapture.addLog("info", notifInfo);
-                }
+                             ReplyCallback replyCallback) {
+        // El watchdog del pool puede responder por timeout mientras el bot sigue corriendo:
+        // solo la primera respuesta llega al llamador
+        final ReplyCallback callback = new SingleShotCallback(replyCallback);
 
-                // Verificar rate limiting
-                if (!rateLimiter.tryAcquire()) {
-                    Log.w(TAG, "Rate limit exceeded, skipping bot execution");
+        // Ejecutar en un worker del pool para no bloquear el UI thread
+        try {
+            BotWorkerPool.getInstance().submit(() -> {
+                try {
+                    // Log de inicio de ejecución
                     if (BotLogCapture.isEnabled()) {
-                        BotLogCapture.addLog("warn", "Rate limit exceeded - bot execution skipped");
+                        String title = NotificationUtils.getTitle(notificationData.getStatusBarNotification());
+                        String packageName = notificationData.getStatusBarNotification().getPackageName();
+                        String notifInfo = String.format("Bot execution started for: %s (package: %s)",
+                                title != null ? title : "unknown",
+                                packageName);
+                        BotLogCapture.addLog("info", notifInfo);
                     }
-                    callback.onFailure("Rate limit exceeded");
-                    return;
-                }
 
-                // Cargar bot.js desde almacenamiento interno
-                String jsCode = loadBotCode(context);
-
-                if (jsCode == null || jsCode.trim().isEmpty()) {
-                    Log.e(TAG, "Bot code not found or empty");
-                    if (BotLogCapture.isEnabled()) {
-                        BotLogCapture.addLog("error", "Bot code not found or empty");
+                    // Verificar rate limiting
+                    if (!rateLimiter.tryAcquire()) {
+                        Log.w(TAG, "Rate limit exceeded, skipping bot execution");
+                        if (BotLogCapture.isEnabled()) {
+                            BotLogCapture.addLog("warn", "Rate limit exceeded - bot execution skipped");
+                        }
+                        callback.onFailure("Rate limit exceeded");
+                        return;
                     }
-                    callback.onFailure("Bot code not found");
-                    return;
-                }
 
-                if (BotLogCapture.isEnabled()) {
-                    BotLogCapture.addLog("info", String.format("Bot code loaded (%d bytes)", jsCode.length()));
-                }
+                    // Cargar bot.js desde almacenamiento interno
+                    String jsCode = loadBotCode(context);
 
-                // Validar código
-                if (!BotValidator.validate(jsCode)) {
-                    Log.e(TAG, "Bot code validation failed");
-                    if (BotLogCapture.isEnabled()) {
-                        BotLogCapture.addLog("error", "Bot code validation failed");
+                    if (jsCode == null || jsCode.trim().isEmpty()) {
+                        Log.e(TAG, "Bot code not found or empty");
+                        if (BotLogCapture.isEnabled()) {
+                            BotLogCapture.addLog("error", "Bot code not found or empty");
+                        }
+                        callback.onFailure("Bot code not found");
+                        return;
                     }
-                    callback.onFailure("Bot validation failed");
-                    return;
-                }
-
-                if (BotLogCapture.isEnabled()) {
-                    BotLogCapture.addLog("info", "Bot code validated successfully");
-                }
 
-                // Ejecutar bot
-                BotJsEngine engine = new BotJsEngine(context);
-                engine.initialize();
-                try {
                     if (BotLogCapture.isEnabled()) {
-                        BotLogCapture.addLog("info", "Executing bot script...");
+                        BotLogCapture.addLog("info", String.format("Bot code loaded (%d bytes)", jsCode.length()));
                     }
 
-                    String responseJson = engine.executeBot(jsCode, notificationData);
+                    // Validar código
+                    if (!BotValidator.validate(jsCode)) {
+                        Log.e(TAG, "Bot code validation failed");
+                        if (BotLogCapture.isEnabled()) {
+                            BotLogCapture.addLog("error", "Bot code validation failed");
+                        }
+                        callback.onFailure("Bot validation failed");
+                        return;
+                    }
 
                     if (BotLogCapture.isEnabled()) {
-                        BotLogCapture.addLog("info", "Bot execution completed, parsing response...");
+                        BotLogCapture.addLog("info", "Bot code validated successfully");
                     }
 
-                    // Parsear respuesta
-                    JsonObject responseObj = gson.fromJson(responseJson, JsonObject.class);
-                    String action = responseObj.get("action").getAsString();
+                    // Ejecutar bot
+                    BotJsEngine engine = new BotJsEngine(context);
+                    engine.initialize();
+                    try {
+                        if (BotLogCapture.isEnabled()) {
+                            BotLogCapture.addLog("info", "Executing bot script...");
+                        }
 
-                    if (BotLogCapture.isEnabled()) {
-                        BotLogCapture.addLog("info", String.format("Bot returned action: %s", action));
-                    }
+                        BotResponse response = engine.executeBot(jsCode, notificationData);
 
-                    // Manejar acción
-                    switch (action) {
-                        case "REPLY":
-                            if (responseObj.has("replyText")) {
-                                String replyText = responseObj.get("replyText").getAsString();
+                        if (BotLogCapture.isEnabled()) {
+                            BotLogCapture.addLog("info", "Bot execution completed, reading response...");
+                        }
 
-                                if (BotLogCapture.isEnabled()) {
-                                    BotLogCapture.addLog("info", String.format("Sending reply: %s", replyText));
+                        String action = response.getAction();
+                        if (action == null) {
+                            Log.e(TAG, "Bot response missing action");
+                            if (BotLogCapture.isEnabled()) {
+                                BotLogCapture.addLog("error", "Bot response missing action field");
+                            }
+                            callback.onFailure("Bot response missing action");
+                            return;
+                        }
+
+                        if (BotLogCapture.isEnabled()) {
+                            BotLogCapture.addLog("info", String.format("Bot returned action: %s", action));
+                        }
+
+                        // Manejar acción
+                        switch (action) {
+                            case "REPLY":
+                                if (response.getReplyText() != null) {
+                                    String replyText = response.getReplyText();
+
+                                    if (BotLogCapture.isEnabled()) {
+                                        BotLogCapture.addLog("info", String.format("Sending reply: %s", replyText));
+                                    }
+
+                                    callback.onSuccess(replyText);
+                                } else {
+                                    Log.e(TAG, "REPLY action missing replyText");
+                                    if (BotLogCapture.isEnabled()) {
+                                        BotLogCapture.addLog("error", "REPLY action missing replyText field");
+                                    }
+                                    callback.onFailure("Bot response missing replyText");
                                 }
+                                break;
 
-                                callback.onSuccess(replyText);
-                            } else {
-                                Log.e(TAG, "REPLY action missing replyText");
+                            case "DISMISS":
                                 if (BotLogCapture.isEnabled()) {
-                                    BotLogCapture.addLog("error", "REPLY action missing replyText field");
+                                    BotLogCapture.addLog("info", "Bot requested DISMISS - notification will be dismissed");
                                 }
-                                callback.onFailure("Bot response missing replyText");
-                            }
-                            break;
-
-                        case "DISMISS":
-                            if (BotLogCapture.isEnabled()) {
-                                BotLogCapture.addLog("info", "Bot requested DISMISS - notification will be dismissed");
-                            }
-                            callback.onFailure("DISMISS");
-                            break;
+                                callback.onFailure("DISMISS");
+                                break;
 
-                        case "KEEP":
-                            if (BotLogCapture.isEnabled()) {
-                                BotLogCapture.addLog("info", "Bot requested KEEP - no action taken");
-                            }
-                            callback.onFailure("KEEP");
-                            break;
+                            case "KEEP":
+                                if (BotLogCapture.isEnabled()) {
+                                    BotLogCapture.addLog("info", "Bot requested KEEP - no action taken");
+                                }
+                                callback.onFailure("KEEP");
+                                break;
 
-                        case "SNOOZE":
-                            if (BotLogCapture.isEnabled()) {
-                                BotLogCapture.addLog("info", "Bot requested SNOOZE - notification will be snoozed");
-                            }
-                            callback.onFailure("SNOOZE");
-                            break;
+                            case "SNOOZE":
+                                if (BotLogCapture.isEnabled()) {
+                                    BotLogCapture.addLog("info", "Bot requested SNOOZE - notification will be snoozed");
+                                }
+                                callback.onFailure("SNOOZE");
+                                break;
 
-                        default:
-                            Log.e(TAG, "Unknown bot action: " + action);
-                            if (BotLogCapture.isEnabled()) {
-                                BotLogCapture.addLog("error", String.format("Unknown bot action: %s", action));
-                            }
-                            callback.onFailure("Unknown action: " + action);
+                            default:
+                                Log.e(TAG, "Unknown bot action: " + action);
+                                if (BotLogCapture.isEnabled()) {
+                                    BotLogCapture.addLog("error", String.format("Unknown bot action: %s", action));
+                                }
+                                callback.onFailure("Unknown action: " + action);
+                        }
+                    } finally {
+                        engine.cleanup();
                     }
-                } finally {
-                    engine.cleanup();
-                }
 
-            } catch (BotExecutionException e) {
-                Log.e(TAG, "Bot execution failed", e);
-                if (BotLogCapture.isEnabled()) {
-                    String errorDetails = String.format("Bot execution failed: %s",
-                            e.getDetailedMessage() != null ? e.getDetailedMessage() : e.getMessage());
-                    BotLogCapture.addLog("error", errorDetails);
+                } catch (BotExecutionException e) {
+                    Log.e(TAG, "Bot execution failed", e);
+                    if (BotLogCapture.isEnabled()) {
+                        String errorDetails = String.format("Bot execution failed: %s",
+                                e.getDetailedMessage() != null ? e.getDetailedMessage() : e.getMessage());
+                        BotLogCapture.addLog("error", errorDetails);
+                    }
+                    callback.onFailure("Bot execution error: " + e.getMessage());
+                } catch (Exception e) {
+                    Log.e(TAG, "Bot execution failed", e);
+                    if (BotLogCapture.isEnabled()) {
+                        BotLogCapture.addLog("error", String.format("Unexpected error: %s", e.getMessage()));
+                    }
+                    callback.onFailure("Bot execution error: " + e.getMessage());
                 }
-                callback.onFailure("Bot execution error: " + e.getMessage());
-            } catch (Exception e) {
-                Log.e(TAG, "Bot execution failed", e);
+            }, BotJsEngine.EXECUTION_TIMEOUT_MS, () -> {
+                Log.w(TAG, "Bot execution timed out");
                 if (BotLogCapture.isEnabled()) {
-                    BotLogCapture.addLog("error", String.format("Unexpected error: %s", e.getMessage()));
+                    BotLogCapture.addLog("error", "Bot execution timed out");
                 }
-                callback.onFailure("Bot execution error: " + e.getMessage());
+                callback.onFailure("Bot execution error: Bot execution timed out");
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Bot worker queue full, skipping bot execution: " + BotWorkerPool.getInstance());
+            callback.onFailure("Bot queue full");
+        }
+    }
+
+    /**
+     * Callback que solo reenvía la primera respuesta recibida.
+     */
+    private static final class SingleShotCallback implements ReplyCallback {
+        private final ReplyCallback delegate;
+        private final AtomicBoolean delivered = new AtomicBoolean(false);
+
+        SingleShotCallback(ReplyCallback delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onSuccess(@NonNull String reply) {
+            if (delivered.compareAndSet(false, true)) {
+                delegate.onSuccess(reply);
+            }
+        }
+
+        @Override
+        public void onFailure(@NonNull String error) {
+            if (delivered.compareAndSet(false, true)) {
+                delegate.onFailure(error);
             }
-        }).start();
+        }
+
+        @Override
+        public void onDropped(@NonNull String reason) {
+            if (delivered.compareAndSet(false, true)) {
+                delegate.onDropped(reason);
+            }
+        }
     }
 
     /**
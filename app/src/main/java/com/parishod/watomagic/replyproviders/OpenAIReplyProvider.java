@@ -31,12 +31,18 @@ import retrofit2.Response;
 public class OpenAIReplyProvider implements ReplyProvider {
 
     private static final String TAG = "OpenAIReplyProvider";
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
     private final PreferencesManager preferencesManager;
 
     public OpenAIReplyProvider(@NonNull PreferencesManager preferencesManager) {
         this.preferencesManager = preferencesManager;
     }
 
+    @Override
+    public int getMaxConcurrency() {
+        return MAX_CONCURRENT_REQUESTS;
+    }
+
     @Override
     public void generateReply(@NonNull Context context,
                               @NonNull NotificationData notificationData,
@@ -16,9 +16,23 @@ public interface ReplyProvider {
                        @NonNull NotificationData notificationData,
                        @NonNull ReplyCallback callback);
 
+    /**
+     * @return how many replies this provider may generate at the same time, see {@link ReplyScheduler}
+     */
+    default int getMaxConcurrency() {
+        return Integer.MAX_VALUE;
+    }
+
     interface ReplyCallback {
         void onSuccess(@NonNull String reply);
 
         void onFailure(@NonNull String error);
+
+        /**
+         * The reply was not generated, or arrived too late, and nothing should be sent
+         * (not even the fallback reply).
+         */
+        default void onDropped(@NonNull String reason) {
+        }
     }
 }
@@ -0,0 +1,316 @@
+package com.parishod.watomagic.replyproviders;
+
+import android.content.Context;
+import android.service.notification.StatusBarNotification;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.parishod.watomagic.model.utils.NotificationUtils;
+import com.parishod.watomagic.replyproviders.model.NotificationData;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Single entry point for reply generation, so replies across conversations are coordinated
+ * instead of every notification calling its provider directly.
+ *
+ * - Each provider type runs at most {@link ReplyProvider#getMaxConcurrency()} replies at a time.
+ *   A reply holds its slot until its callback is called.
+ * - Waiting replies are queued per conversation and served round-robin, so one busy chat can't
+ *   starve the others. 1:1 chats are served before groups.
+ * - Every reply has a deadline (the relevance window of the notification). Replies still queued
+ *   after it, or generated after it, are dropped through {@link ReplyProvider.ReplyCallback#onDropped}
+ *   instead of being sent late.
+ *
+ * Providers are called from a single scheduler thread. Thread-safe.
+ */
+public class ReplyScheduler {
+    private static final String TAG = ReplyScheduler.class.getSimpleName();
+    static final int MAX_QUEUED_PER_PROVIDER = 64;
+    private static volatile ReplyScheduler instance;
+
+    private final Executor dispatcher;
+    private final LongSupplier clock;
+    // Guarded by this
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private long dropped;
+
+    @VisibleForTesting
+    ReplyScheduler(@NonNull Executor dispatcher, @NonNull LongSupplier clock) {
+        this.dispatcher = dispatcher;
+        this.clock = clock;
+    }
+
+    @NonNull
+    public static ReplyScheduler getInstance() {
+        ReplyScheduler scheduler = instance;
+        if (scheduler == null) {
+            synchronized (ReplyScheduler.class) {
+                scheduler = instance;
+                if (scheduler == null) {
+                    scheduler = new ReplyScheduler(
+                            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "ReplyScheduler")),
+                            System::currentTimeMillis);
+                    instance = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Queues the reply; {@code callback} gets exactly one of its methods called.
+     */
+    public void schedule(@NonNull ReplyProvider provider,
+                         @NonNull Context context,
+                         @NonNull NotificationData notificationData,
+                         @NonNull ReplyProvider.ReplyCallback callback) {
+        StatusBarNotification sbn = notificationData.getStatusBarNotification();
+        Job job = new Job(provider, context, notificationData, callback,
+                sbn.getPackageName() + '\u0000' + NotificationUtils.getTitle(sbn),
+                sbn.getNotification().extras.getBoolean("android.isGroupConversation"),
+                NotificationUtils.getReplyDeadline(sbn));
+        boolean accepted;
+        ArrayDeque<Job> expired = null;
+        synchronized (this) {
+            Lane lane = lanes.get(provider.getClass().getName());
+            if (lane == null) {
+                lane = new Lane(provider.getMaxConcurrency());
+                lanes.put(provider.getClass().getName(), lane);
+            }
+            if (lane.size() >= MAX_QUEUED_PER_PROVIDER) {
+                expired = lane.removeExpired(clock.getAsLong());
+            }
+            accepted = lane.size() < MAX_QUEUED_PER_PROVIDER;
+            if (accepted) {
+                lane.add(job);
+            }
+        }
+        if (expired != null) {
+            for (Job expiredJob : expired) {
+                drop(expiredJob, "Reply deadline passed while queued");
+            }
+        }
+        if (!accepted) {
+            drop(job, "Reply queue full");
+            return;
+        }
+        dispatcher.execute(this::dispatch);
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    @VisibleForTesting
+    synchronized int getQueuedCount() {
+        int queued = 0;
+        for (Lane lane : lanes.values()) {
+            queued += lane.size();
+        }
+        return queued;
+    }
+
+    private void dispatch() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                job = null;
+                for (Lane lane : lanes.values()) {
+                    if (lane.running < lane.maxConcurrency) {
+                        job = lane.poll();
+                        if (job != null) {
+                            lane.running++;
+                            break;
+                        }
+                    }
+                }
+            }
+            if (job == null) {
+                return;
+            }
+            if (clock.getAsLong() > job.deadline) {
+                drop(job, "Reply deadline passed while queued");
+                release(job);
+                continue;
+            }
+            try {
+                job.provider.generateReply(job.context, job.notificationData, job.completion());
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Reply provider failed", e);
+                job.completion().onFailure("Reply provider error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void release(Job job) {
+        synchronized (this) {
+            lanes.get(job.provider.getClass().getName()).running--;
+        }
+        dispatcher.execute(this::dispatch);
+    }
+
+    private void drop(Job job, String reason) {
+        long total;
+        synchronized (this) {
+            total = ++dropped;
+        }
+        Log.w(TAG, reason + " (total dropped: " + total + ")");
+        job.callback.onDropped(reason);
+    }
+
+    private final class Job {
+        final ReplyProvider provider;
+        final Context context;
+        final NotificationData notificationData;
+        final ReplyProvider.ReplyCallback callback;
+        final String conversationKey;
+        final boolean isGroup;
+        final long deadline;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private ReplyProvider.ReplyCallback completion;
+
+        Job(ReplyProvider provider, Context context, NotificationData notificationData,
+            ReplyProvider.ReplyCallback callback, String conversationKey, boolean isGroup, long deadline) {
+            this.provider = provider;
+            this.context = context;
+            this.notificationData = notificationData;
+            this.callback = callback;
+            this.conversationKey = conversationKey;
+            this.isGroup = isGroup;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Callback given to the provider: only the first call counts, late replies are dropped,
+         * and the slot is freed once the caller's callback returns.
+         */
+        synchronized ReplyProvider.ReplyCallback completion() {
+            if (completion == null) {
+                completion = new ReplyProvider.ReplyCallback() {
+                    @Override
+                    public void onSuccess(@NonNull String reply) {
+                        complete(() -> callback.onSuccess(reply), "Reply generated after its deadline");
+                    }
+
+                    @Override
+                    public void onFailure(@NonNull String error) {
+                        complete(() -> callback.onFailure(error), "Reply failed after its deadline: " + error);
+                    }
+
+                    @Override
+                    public void onDropped(@NonNull String reason) {
+                        complete(() -> drop(Job.this, reason), reason);
+                    }
+                };
+            }
+            return completion;
+        }
+
+        private void complete(Runnable deliver, String lateReason) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (clock.getAsLong() > deadline) {
+                    drop(this, lateReason);
+                } else {
+                    deliver.run();
+                }
+            } finally {
+                release(this);
+            }
+        }
+    }
+
+    /**
+     * Queued replies of one provider type: per conversation FIFO queues, served round-robin,
+     * 1:1 conversations first.
+     */
+    private static final class Lane {
+        final int maxConcurrency;
+        int running;
+        private final LinkedHashMap<String, ArrayDeque<Job>> direct = new LinkedHashMap<>();
+        private final LinkedHashMap<String, ArrayDeque<Job>> groups = new LinkedHashMap<>();
+        private int size;
+
+        Lane(int maxConcurrency) {
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(Job job) {
+            LinkedHashMap<String, ArrayDeque<Job>> queues = job.isGroup ? groups : direct;
+            ArrayDeque<Job> queue = queues.get(job.conversationKey);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(job.conversationKey, queue);
+            }
+            queue.add(job);
+            size++;
+        }
+
+        Job poll() {
+            Job job = poll(direct);
+            return job != null ? job : poll(groups);
+        }
+
+        /**
+         * Takes the next job of the first conversation and moves the conversation to the back.
+         */
+        private Job poll(LinkedHashMap<String, ArrayDeque<Job>> queues) {
+            Iterator<Map.Entry<String, ArrayDeque<Job>>> it = queues.entrySet().iterator();
+            if (!it.hasNext()) {
+                return null;
+            }
+            Map.Entry<String, ArrayDeque<Job>> first = it.next();
+            it.remove();
+            Job job = first.getValue().poll();
+            if (!first.getValue().isEmpty()) {
+                queues.put(first.getKey(), first.getValue());
+            }
+            size--;
+            return job;
+        }
+
+        ArrayDeque<Job> removeExpired(long now) {
+            ArrayDeque<Job> expired = new ArrayDeque<>();
+            removeExpired(direct, now, expired);
+            removeExpired(groups, now, expired);
+            size -= expired.size();
+            return expired;
+        }
+
+        private static void removeExpired(LinkedHashMap<String, ArrayDeque<Job>> queues, long now,
+                                          ArrayDeque<Job> expired) {
+            Iterator<ArrayDeque<Job>> it = queues.values().iterator();
+            while (it.hasNext()) {
+                ArrayDeque<Job> queue = it.next();
+                Iterator<Job> jobs = queue.iterator();
+                while (jobs.hasNext()) {
+                    Job job = jobs.next();
+                    if (now > job.deadline) {
+                        jobs.remove();
+                        expired.add(job);
+                    }
+                }
+                if (queue.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.parishod.watomagic.replyproviders.model;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.UUID;
+import java.io.File;
 
 /**
  * Información sobre un archivo adjunto (imagen) extraído de una notificación.
+ *
+ * Los adjuntos extraídos de notificaciones son descriptores perezosos: la copia a disco
+ * y la miniatura se generan con su {@link Loader} la primera vez que se piden
+ * (ruta, tamaño o miniatura), no al construir el {@link NotificationData}.
  */
 public class AttachmentInfo {
     public enum SourceType {
@@ -14,14 +19,43 @@ public class AttachmentInfo {
         FILE     // Archivo temporal creado por el bot
     }
 
+    /**
+     * Materializa un adjunto perezoso. Cada método se llama como mucho una vez, salvo
+     * {@link #loadFile()}, que se repite si el archivo copiado ya se liberó.
+     */
+    public interface Loader {
+        /**
+         * Tamaño conocido sin copiar el contenido, o -1 si hace falta copiarlo para saberlo.
+         */
+        long querySize();
+
+        /**
+         * Copia el adjunto a disco y devuelve el archivo, o null si no se pudo.
+         */
+        @Nullable
+        File loadFile();
+
+        /**
+         * Genera la miniatura en Base64; {@code file} es el resultado de {@link #loadFile()}
+         * si ya se había copiado.
+         */
+        @Nullable
+        String loadThumbnail(@Nullable File file);
+    }
+
     private final String id;
     private final String mimeType;
-    private final long size;
     private final SourceType sourceType;
     @Nullable
-    private final String temporaryPath;
+    private final Loader loader;
+    // Guarded by this
+    private long size;
     @Nullable
-    private final String thumbnailBase64;
+    private String temporaryPath;
+    @Nullable
+    private String thumbnailBase64;
+    private boolean fileLoaded;
+    private boolean thumbnailLoaded;
 
     public AttachmentInfo(String id, String mimeType, long size, SourceType sourceType,
                           @Nullable String temporaryPath, @Nullable String thumbnailBase64) {
@@ -31,6 +65,17 @@ public class AttachmentInfo {
         this.sourceType = sourceType;
         this.temporaryPath = temporaryPath;
         this.thumbnailBase64 = thumbnailBase64;
+        this.loader = null;
+        this.fileLoaded = true;
+        this.thumbnailLoaded = true;
+    }
+
+    public AttachmentInfo(String id, String mimeType, SourceType sourceType, @NonNull Loader loader) {
+        this.id = id;
+        this.mimeType = mimeType;
+        this.size = -1;
+        this.sourceType = sourceType;
+        this.loader = loader;
     }
 
     public String getId() {
@@ -41,26 +86,69 @@ public class AttachmentInfo {
         return mimeType;
     }
 
-    public long getSize() {
-        return size;
+    /**
+     * Tamaño en bytes, 0 si no se pudo obtener. Puede copiar el adjunto a disco.
+     */
+    public synchronized long getSize() {
+        if (size < 0 && !fileLoaded) {
+            size = loader.querySize();
+        }
+        if (size < 0) {
+            loadFile();
+        }
+        return Math.max(size, 0);
     }
 
     public SourceType getSourceType() {
         return sourceType;
     }
 
+    /**
+     * Ruta del adjunto en disco; lo copia la primera vez.
+     */
     @Nullable
-    public String getTemporaryPath() {
+    public synchronized String getTemporaryPath() {
+        if (loader != null && temporaryPath != null && !new File(temporaryPath).exists()) {
+            // Se liberó al terminar una ejecución anterior: se vuelve a copiar
+            fileLoaded = false;
+            temporaryPath = null;
+        }
+        loadFile();
         return temporaryPath;
     }
 
     @Nullable
-    public String getThumbnailBase64() {
+    public synchronized String getThumbnailBase64() {
+        if (!thumbnailLoaded) {
+            thumbnailLoaded = true;
+            thumbnailBase64 = loader.loadThumbnail(temporaryPath != null ? new File(temporaryPath) : null);
+        }
         return thumbnailBase64;
     }
 
-    public boolean hasFile() {
-        return temporaryPath != null;
+    /**
+     * @return true si el adjunto se puede leer como archivo (se copia al pedir su ruta)
+     */
+    public synchronized boolean hasFile() {
+        return !fileLoaded || temporaryPath != null;
     }
-}
 
+    /**
+     * @return true si ya existe la copia en disco o la miniatura
+     */
+    public synchronized boolean isMaterialized() {
+        return temporaryPath != null || (loader != null && thumbnailLoaded);
+    }
+
+    private void loadFile() {
+        if (fileLoaded) {
+            return;
+        }
+        fileLoaded = true;
+        File file = loader.loadFile();
+        if (file != null) {
+            temporaryPath = file.getAbsolutePath();
+            size = file.length();
+        }
+    }
+}
@@ -23,6 +23,8 @@ public class NotificationData {
     @NonNull
     private final List<AttachmentInfo> attachments;
     private final boolean mediaPlaceholder;
+    @NonNull
+    private final List<String> messages;
 
     public NotificationData(StatusBarNotification statusBarNotification,
                             NotificationWear notificationWear,
@@ -47,12 +49,28 @@ public class NotificationData {
                             String fallbackReply,
                             @NonNull List<AttachmentInfo> attachments,
                             boolean mediaPlaceholder) {
+        this(statusBarNotification, notificationWear, incomingMessage, fallbackReply,
+             attachments, mediaPlaceholder,
+             incomingMessage != null ? Collections.singletonList(incomingMessage) : Collections.emptyList());
+    }
+
+    /**
+     * @param messages every message of the burst being answered, oldest first
+     */
+    public NotificationData(StatusBarNotification statusBarNotification,
+                            NotificationWear notificationWear,
+                            @Nullable String incomingMessage,
+                            String fallbackReply,
+                            @NonNull List<AttachmentInfo> attachments,
+                            boolean mediaPlaceholder,
+                            @NonNull List<String> messages) {
         this.statusBarNotification = statusBarNotification;
         this.notificationWear = notificationWear;
         this.incomingMessage = incomingMessage;
         this.fallbackReply = fallbackReply;
         this.attachments = attachments != null ? attachments : Collections.emptyList();
         this.mediaPlaceholder = mediaPlaceholder;
+        this.messages = messages != null ? messages : Collections.emptyList();
     }
 
     public StatusBarNotification getStatusBarNotification() {
@@ -80,4 +98,13 @@ public class NotificationData {
     public boolean isMediaPlaceholder() {
         return mediaPlaceholder;
     }
+
+    /**
+     * Messages received in the conversation since the last reply, when several arrived together.
+     * {@link #getIncomingMessage()} has them joined by new lines.
+     */
+    @NonNull
+    public List<String> getMessages() {
+        return messages;
+    }
 }
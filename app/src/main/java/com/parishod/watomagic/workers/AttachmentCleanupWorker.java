@@ -7,10 +7,10 @@ import androidx.annotation.NonNull;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
-import java.io.File;
+import com.parishod.watomagic.botjs.AttachmentStore;
 
 /**
- * Worker que limpia archivos adjuntos antiguos (>24 horas) cada 6 horas.
+ * Worker que limpia archivos adjuntos no usados en las últimas 24 horas, cada 6 horas.
  */
 public class AttachmentCleanupWorker extends Worker {
     private static final String TAG = "AttachmentCleanupWorker";
@@ -24,37 +24,11 @@ public class AttachmentCleanupWorker extends Worker {
     @Override
     public Result doWork() {
         try {
-            File attachmentsDir = new File(getApplicationContext().getExternalFilesDir(null), "bot_attachments");
-            if (!attachmentsDir.exists() || !attachmentsDir.isDirectory()) {
-                Log.d(TAG, "Attachments directory does not exist");
-                return Result.success();
-            }
-
-            long currentTime = System.currentTimeMillis();
-            int deletedCount = 0;
-            long totalFreedBytes = 0;
-
-            File[] files = attachmentsDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        long fileAge = currentTime - file.lastModified();
-                        if (fileAge > MAX_AGE_MS) {
-                            long fileSize = file.length();
-                            if (file.delete()) {
-                                deletedCount++;
-                                totalFreedBytes += fileSize;
-                                Log.d(TAG, "Deleted old attachment: " + file.getName());
-                            } else {
-                                Log.w(TAG, "Failed to delete: " + file.getName());
-                            }
-                        }
-                    }
-                }
-            }
+            AttachmentStore.CleanupResult result = AttachmentStore.getInstance(getApplicationContext())
+                    .deleteOlderThan(System.currentTimeMillis() - MAX_AGE_MS);
 
             Log.i(TAG, String.format("Cleanup completed: %d files deleted, %d bytes freed", 
-                    deletedCount, totalFreedBytes));
+                    result.filesDeleted, result.bytesFreed));
             return Result.success();
 
         } catch (Exception e) {
@@ -0,0 +1,87 @@
+package com.parishod.watomagic.workers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.Worker;
+import androidx.work.WorkManager;
+import androidx.work.WorkerParameters;
+
+import com.parishod.watomagic.model.logs.MessageLogsDB;
+import com.parishod.watomagic.model.logs.MessageLogsRetention;
+import com.parishod.watomagic.model.preferences.PreferencesManager;
+import com.parishod.watomagic.model.utils.DbUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker que borra los logs de respuestas más antiguos que la retención configurada.
+ * Se ejecuta una vez al día, fuera del camino de respuesta.
+ *
+ * Si la base de datos es grande y aún no usa auto_vacuum incremental, el VACUUM completo
+ * que la convierte se encola aparte, solo con el dispositivo inactivo y cargando.
+ */
+public class MessageLogsRetentionWorker extends Worker {
+    private static final String TAG = "MessageLogsRetention";
+    public static final String WORK_NAME = "message_logs_retention_work";
+    private static final String VACUUM_WORK_NAME = "message_logs_vacuum_work";
+    private static final String KEY_FULL_VACUUM = "full_vacuum";
+
+    public MessageLogsRetentionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        try {
+            if (getInputData().getBoolean(KEY_FULL_VACUUM, false)) {
+                new MessageLogsRetention(MessageLogsDB.getInstance(getApplicationContext())).enableIncrementalVacuum();
+                return Result.success();
+            }
+            MessageLogsRetention.Result result = new DbUtils(getApplicationContext()).purgeMessageLogs(this::isStopped);
+            PreferencesManager.getPreferencesInstance(getApplicationContext())
+                    .setPurgeMessageTime(System.currentTimeMillis());
+            Log.i(TAG, result.toString());
+            if (result.needsFullVacuum) {
+                scheduleFullVacuum(getApplicationContext());
+            }
+            return Result.success();
+        } catch (Exception e) {
+            Log.e(TAG, "Error purging message logs", e);
+            return Result.retry();
+        }
+    }
+
+    public static void schedule(@NonNull Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest workRequest = new PeriodicWorkRequest.Builder(
+                MessageLogsRetentionWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, workRequest);
+    }
+
+    private static void scheduleFullVacuum(@NonNull Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .build();
+        OneTimeWorkRequest workRequest = new OneTimeWorkRequest.Builder(MessageLogsRetentionWorker.class)
+                .setConstraints(constraints)
+                .setInputData(new Data.Builder().putBoolean(KEY_FULL_VACUUM, true).build())
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                VACUUM_WORK_NAME, ExistingWorkPolicy.KEEP, workRequest);
+    }
+}
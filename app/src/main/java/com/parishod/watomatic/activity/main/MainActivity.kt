@@ -13,6 +13,7 @@ import androidx.core.view.ViewCompat
 import androidx.core.view.WindowCompat
 import androidx.core.view.WindowInsetsCompat
 import com.parishod.watomagic.service.NlsHealthCheckWorker
+import com.parishod.watomagic.workers.MessageLogsRetentionWorker
 
 class MainActivity : BaseActivity() {
     private lateinit var viewModel: SwipeToKillAppDetectViewModel
@@ -41,5 +42,6 @@ class MainActivity : BaseActivity() {
 
         // Schedule health check
         NlsHealthCheckWorker.schedule(this)
+        MessageLogsRetentionWorker.schedule(this)
     }
 }
\ No newline at end of file
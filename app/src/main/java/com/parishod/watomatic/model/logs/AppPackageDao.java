@@ -10,6 +10,7 @@ public interface AppPackageDao {
     @Query("SELECT [index] FROM app_packages WHERE package_name=:packageName")
     int getPackageIndex(String packageName);
 
+    //Returns the rowid, which is the new package index
     @Insert
-    void insertAppPackage(AppPackage appPackage);
+    long insertAppPackage(AppPackage appPackage);
 }
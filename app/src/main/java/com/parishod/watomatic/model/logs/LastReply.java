@@ -0,0 +1,15 @@
+package com.parishod.watomagic.model.logs;
+
+import androidx.room.ColumnInfo;
+
+/**
+ * Latest reply time of a conversation (package + title), read from message_logs.
+ */
+public class LastReply {
+    @ColumnInfo(name = "package_name")
+    public String packageName;
+    @ColumnInfo(name = "notif_title")
+    public String title;
+    @ColumnInfo(name = "last_reply_time")
+    public long lastReplyTime;
+}
@@ -15,7 +15,9 @@ import androidx.room.PrimaryKey;
                 onDelete = ForeignKey.CASCADE
         )},
         indices = {
-                @Index(value = "index")
+                @Index(value = "index"),
+                @Index(value = {"index", "notif_title", "notif_reply_time"}),
+                @Index(value = "notif_reply_time")
         })
 public class MessageLog {
     @PrimaryKey(autoGenerate = true)
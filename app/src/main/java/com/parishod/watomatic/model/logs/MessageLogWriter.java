@@ -0,0 +1,207 @@
+package com.parishod.watomagic.model.logs;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes reply logs off the reply path.
+ *
+ * {@link #log} only queues the log in memory. Queued logs are inserted in a single transaction
+ * once {@link #BATCH_SIZE} are waiting or {@link #FLUSH_INTERVAL_MS} after the first one,
+ * whichever comes first. Package indices are cached, so a flush usually needs no lookups.
+ *
+ * The cooldown check depends on these logs, so a batch whose transaction fails is queued again
+ * and only dropped (and counted) after {@link #MAX_WRITE_ATTEMPTS} failed writes.
+ *
+ * Call {@link #flush()} before the process may die (e.g. when the service is destroyed).
+ */
+public class MessageLogWriter {
+    private static final String TAG = MessageLogWriter.class.getSimpleName();
+    static final int BATCH_SIZE = 32;
+    static final long FLUSH_INTERVAL_MS = 500;
+    private static final long FLUSH_TIMEOUT_MS = 5000;
+    static final int MAX_WRITE_ATTEMPTS = 3;
+    private static volatile MessageLogWriter instance;
+
+    private final MessageLogsDB messageLogsDB;
+    private final ScheduledExecutorService executor;
+    private final Map<String, Integer> packageIndices = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private final AtomicLong droppedCount = new AtomicLong();
+    // Guarded by lock
+    private List<PendingLog> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    @VisibleForTesting
+    MessageLogWriter(@NonNull MessageLogsDB messageLogsDB) {
+        this.messageLogsDB = messageLogsDB;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "MessageLogWriter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @NonNull
+    public static MessageLogWriter getInstance(@NonNull Context context) {
+        MessageLogWriter writer = instance;
+        if (writer == null) {
+            synchronized (MessageLogWriter.class) {
+                writer = instance;
+                if (writer == null) {
+                    writer = new MessageLogWriter(MessageLogsDB.getInstance(context.getApplicationContext()));
+                    instance = writer;
+                }
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Queues a reply log. Does not touch the DB.
+     */
+    public void log(@NonNull String packageName, @Nullable String title, long arrivedTime,
+                    @Nullable String repliedMsg, long replyTime) {
+        synchronized (lock) {
+            pending.add(new PendingLog(packageName, title, arrivedTime, repliedMsg, replyTime));
+            if (pending.size() >= BATCH_SIZE) {
+                executor.execute(this::writePending);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(this::writePending, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Writes every queued log and waits for it, up to a few seconds.
+     */
+    public void flush() {
+        try {
+            executor.submit(this::writePending).get(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            Log.e(TAG, "Failed to flush reply logs", e);
+        }
+    }
+
+    /**
+     * @return logs discarded after failing every write attempt
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @VisibleForTesting
+    int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    // Runs on the writer thread only
+    private void writePending() {
+        List<PendingLog> batch;
+        synchronized (lock) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        try {
+            messageLogsDB.runInTransaction(() -> {
+                List<MessageLog> logs = new ArrayList<>(batch.size());
+                for (PendingLog log : batch) {
+                    logs.add(new MessageLog(packageIndex(log.packageName), log.title, log.arrivedTime,
+                            log.repliedMsg, log.replyTime));
+                }
+                messageLogsDB.logsDao().logReplies(logs);
+            });
+        } catch (RuntimeException e) {
+            // Indices resolved inside the failed transaction may have been rolled back
+            packageIndices.clear();
+            Log.e(TAG, "Failed to write " + batch.size() + " reply logs", e);
+            requeue(batch);
+        }
+    }
+
+    /**
+     * Puts a failed batch back in front of newer logs, dropping the logs that ran out of attempts.
+     */
+    private void requeue(List<PendingLog> batch) {
+        List<PendingLog> retry = new ArrayList<>(batch.size());
+        for (PendingLog log : batch) {
+            if (++log.attempts < MAX_WRITE_ATTEMPTS) {
+                retry.add(log);
+            }
+        }
+        int dropped = batch.size() - retry.size();
+        if (dropped > 0) {
+            Log.e(TAG, "Dropped " + dropped + " reply logs (total dropped: " + droppedCount.addAndGet(dropped) + ")");
+        }
+        if (retry.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            retry.addAll(pending);
+            pending = retry;
+            if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(this::writePending, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private int packageIndex(String packageName) {
+        Integer cached = packageIndices.get(packageName);
+        if (cached != null) {
+            return cached;
+        }
+        int packageIndex = messageLogsDB.appPackageDao().getPackageIndex(packageName);
+        if (packageIndex <= 0) {
+            packageIndex = (int) messageLogsDB.appPackageDao().insertAppPackage(new AppPackage(packageName));
+        }
+        packageIndices.put(packageName, packageIndex);
+        return packageIndex;
+    }
+
+    private static class PendingLog {
+        final String packageName;
+        final String title;
+        final long arrivedTime;
+        final String repliedMsg;
+        final long replyTime;
+        // Only touched on the writer thread
+        int attempts;
+
+        PendingLog(String packageName, String title, long arrivedTime, String repliedMsg, long replyTime) {
+            this.packageName = packageName;
+            this.title = title;
+            this.arrivedTime = arrivedTime;
+            this.repliedMsg = repliedMsg;
+            this.replyTime = replyTime;
+        }
+    }
+}
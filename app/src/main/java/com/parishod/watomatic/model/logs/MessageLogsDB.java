@@ -2,21 +2,38 @@ package com.parishod.watomagic.model.logs;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.parishod.watomagic.model.utils.Constants;
 
-@Database(entities = {MessageLog.class, AppPackage.class}, version = 2)
+@Database(entities = {MessageLog.class, AppPackage.class}, version = 3)
 public abstract class MessageLogsDB extends RoomDatabase {
     private static final String DB_NAME = Constants.LOGS_DB_NAME;
     private static MessageLogsDB _instance;
 
+    //Indices for the reply cooldown lookup (index + title, latest reply time) and for purging/sorting by reply time
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_message_logs_index_notif_title_notif_reply_time` " +
+                    "ON `message_logs` (`index`, `notif_title`, `notif_reply_time`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_message_logs_notif_reply_time` " +
+                    "ON `message_logs` (`notif_reply_time`)");
+        }
+    };
+
     public static synchronized MessageLogsDB getInstance(Context context) {
         if (_instance == null) {
             _instance = Room.databaseBuilder(context.getApplicationContext(), MessageLogsDB.class, DB_NAME)
-                    .fallbackToDestructiveMigration()
+                    .addMigrations(MIGRATION_2_3)
+                    //Version 1 has no migration path
+                    .fallbackToDestructiveMigrationFrom(1)
+                    .fallbackToDestructiveMigrationOnDowngrade()
                     .allowMainThreadQueries()
                     .build();
         }
@@ -4,6 +4,8 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.Query;
 
+import java.util.List;
+
 @Dao
 public interface MessageLogsDao {
     @Query("SELECT message_logs.notif_reply_time FROM MESSAGE_LOGS " +
@@ -12,15 +14,26 @@ public interface MessageLogsDao {
     )
     long getLastReplyTimeStamp(String title, String packageName);
 
+    @Query("SELECT app_packages.package_name, message_logs.notif_title, MAX(message_logs.notif_reply_time) AS last_reply_time " +
+            "FROM MESSAGE_LOGS INNER JOIN app_packages ON app_packages.`index` = message_logs.`index` " +
+            "WHERE message_logs.notif_title IS NOT NULL " +
+            "GROUP BY message_logs.`index`, message_logs.notif_title"
+    )
+    List<LastReply> getLastReplyTimes();
+
     @Insert
     void logReply(MessageLog log);
 
+    @Insert
+    void logReplies(List<MessageLog> logs);
+
     @Query("SELECT COUNT(id) FROM MESSAGE_LOGS")
     long getNumReplies();
 
-    //https://stackoverflow.com/questions/11771580/deleting-android-sqlite-rows-older-than-x-days
-    @Query("DELETE FROM message_logs WHERE notif_reply_time <= strftime('%s', datetime('now', '-30 days'));")
-    void purgeMessageLogs();
+    //Bounded so a purge never holds the write lock for long; uses index_message_logs_notif_reply_time
+    @Query("DELETE FROM message_logs WHERE id IN " +
+            "(SELECT id FROM message_logs WHERE notif_reply_time < :cutoffTime ORDER BY notif_reply_time LIMIT :limit)")
+    int deleteOlderThan(long cutoffTime, int limit);
 
     @Query("SELECT notif_reply_time FROM MESSAGE_LOGS ORDER BY notif_reply_time DESC LIMIT 1")
     long getFirstRepliedTime();
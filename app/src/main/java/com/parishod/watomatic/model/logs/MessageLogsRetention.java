@@ -0,0 +1,148 @@
+package com.parishod.watomagic.model.logs;
+
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Deletes message logs older than the retention window.
+ *
+ * Rows are deleted in chunks of {@link #CHUNK_SIZE}, each in its own transaction, so replies
+ * logged meanwhile only wait for one chunk. Freed pages are then returned to the filesystem
+ * with an incremental vacuum.
+ *
+ * Incremental vacuum needs auto_vacuum=INCREMENTAL, which an existing database only picks up
+ * after a full VACUUM. That rewrites the whole file, so it is done inline only for small
+ * databases; larger ones report {@link Result#needsFullVacuum} and are converted later with
+ * {@link #enableIncrementalVacuum()} while the device is idle and charging.
+ */
+public class MessageLogsRetention {
+    private static final String TAG = MessageLogsRetention.class.getSimpleName();
+    static final int CHUNK_SIZE = 500;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    //Largest database converted to incremental auto-vacuum during a purge
+    static final long MAX_INLINE_VACUUM_BYTES = 4 * 1024 * 1024;
+
+    private final MessageLogsDB messageLogsDB;
+    private final long maxInlineVacuumBytes;
+
+    public MessageLogsRetention(@NonNull MessageLogsDB messageLogsDB) {
+        this(messageLogsDB, MAX_INLINE_VACUUM_BYTES);
+    }
+
+    @VisibleForTesting
+    MessageLogsRetention(@NonNull MessageLogsDB messageLogsDB, long maxInlineVacuumBytes) {
+        this.messageLogsDB = messageLogsDB;
+        this.maxInlineVacuumBytes = maxInlineVacuumBytes;
+    }
+
+    /**
+     * Must not run on the main thread.
+     *
+     * @param cutoffTime    logs replied before this time (ms) are deleted
+     * @param stopRequested checked between chunks, may be null
+     */
+    @NonNull
+    public Result purge(long cutoffTime, @Nullable BooleanSupplier stopRequested) {
+        long start = SystemClock.elapsedRealtime();
+        SupportSQLiteDatabase db = messageLogsDB.getOpenHelper().getWritableDatabase();
+        long sizeBefore = databaseSize(db);
+
+        int rowsDeleted = 0;
+        int deleted;
+        do {
+            if (stopRequested != null && stopRequested.getAsBoolean()) {
+                Log.i(TAG, "Purge stopped after " + rowsDeleted + " rows");
+                break;
+            }
+            deleted = messageLogsDB.logsDao().deleteOlderThan(cutoffTime, CHUNK_SIZE);
+            rowsDeleted += deleted;
+        } while (deleted == CHUNK_SIZE);
+
+        boolean needsFullVacuum = false;
+        if (rowsDeleted > 0) {
+            if (isIncrementalVacuum(db)) {
+                incrementalVacuum(db);
+            } else if (sizeBefore <= maxInlineVacuumBytes) {
+                enableIncrementalVacuum(db);
+            } else {
+                needsFullVacuum = true;
+            }
+        }
+        Result result = new Result(rowsDeleted, Math.max(0, sizeBefore - databaseSize(db)),
+                SystemClock.elapsedRealtime() - start, needsFullVacuum);
+        Log.i(TAG, result.toString());
+        return result;
+    }
+
+    /**
+     * Switches the database to auto_vacuum=INCREMENTAL. Rewrites the whole file and needs
+     * about its size in free disk space, so only run it when the device is idle.
+     */
+    public void enableIncrementalVacuum() {
+        SupportSQLiteDatabase db = messageLogsDB.getOpenHelper().getWritableDatabase();
+        if (!isIncrementalVacuum(db)) {
+            long start = SystemClock.elapsedRealtime();
+            enableIncrementalVacuum(db);
+            Log.i(TAG, "Enabled incremental vacuum in " + (SystemClock.elapsedRealtime() - start) + " ms");
+        }
+    }
+
+    private static boolean isIncrementalVacuum(SupportSQLiteDatabase db) {
+        return queryLong(db, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL;
+    }
+
+    private static void enableIncrementalVacuum(SupportSQLiteDatabase db) {
+        //auto_vacuum only takes effect on existing databases after a full VACUUM
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        db.execSQL("VACUUM");
+    }
+
+    private static void incrementalVacuum(SupportSQLiteDatabase db) {
+        //incremental_vacuum frees one page per step, so the cursor must be drained
+        try (Cursor cursor = db.query("PRAGMA incremental_vacuum")) {
+            while (cursor.moveToNext()) {
+                // Keep stepping
+            }
+        }
+    }
+
+    private static long databaseSize(SupportSQLiteDatabase db) {
+        return queryLong(db, "PRAGMA page_count") * queryLong(db, "PRAGMA page_size");
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    public static class Result {
+        public final int rowsDeleted;
+        public final long bytesReclaimed;
+        public final long durationMs;
+        //Space was not reclaimed because the database still needs the one-time full VACUUM
+        public final boolean needsFullVacuum;
+
+        Result(int rowsDeleted, long bytesReclaimed, long durationMs, boolean needsFullVacuum) {
+            this.rowsDeleted = rowsDeleted;
+            this.bytesReclaimed = bytesReclaimed;
+            this.durationMs = durationMs;
+            this.needsFullVacuum = needsFullVacuum;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Purged " + rowsDeleted + " message logs, reclaimed " + bytesReclaimed
+                    + " bytes in " + durationMs + " ms" + (needsFullVacuum ? ", full vacuum pending" : "");
+        }
+    }
+}
@@ -34,10 +34,13 @@ public class PreferencesManager {
     private final String KEY_SERVICE_ENABLED = "pref_service_enabled";
     private final String KEY_GROUP_REPLY_ENABLED = "pref_group_reply_enabled";
     private final String KEY_AUTO_REPLY_THROTTLE_TIME_MS = "pref_auto_reply_throttle_time_ms";
+    private final String KEY_REPLY_COALESCE_WINDOW_MS = "pref_reply_coalesce_window_ms";
+    private static final long DEFAULT_REPLY_COALESCE_WINDOW_MS = 1000;
     private final String KEY_SELECTED_APPS_ARR = "pref_selected_apps_arr";
     private final String KEY_IS_APPEND_watomagic_ATTRIBUTION = "pref_is_append_watomagic_attribution";
     private final String KEY_GITHUB_RELEASE_NOTES_ID = "pref_github_release_notes_id";
     private final String KEY_PURGE_MESSAGE_LOGS_LAST_TIME = "pref_purge_message_logs_last_time";
+    private final String KEY_MESSAGE_LOGS_RETENTION_DAYS = "pref_message_logs_retention_days";
     private final String KEY_PLAY_STORE_RATING_STATUS = "pref_play_store_rating_status";
     private final String KEY_PLAY_STORE_RATING_LAST_TIME = "pref_play_store_rating_last_time";
     private final String KEY_SHOW_FOREGROUND_SERVICE_NOTIFICATION = "pref_show_foreground_service_notification";
@@ -67,10 +70,26 @@ public class PreferencesManager {
     private final String KEY_BOT_JS_ATTACHMENT_ACCESS_ENABLED = "pref_bot_js_attachment_access_enabled";
     private final String KEY_BOT_JS_WHATSAPP_MEDIA_TREE_URI = "pref_bot_js_whatsapp_media_tree_uri";
     private final String KEY_BOT_JS_ENV_VARS = "pref_bot_js_env_vars";
+    private final String KEY_BOT_JS_HTTP_MAX_REQUESTS_PER_HOST = "pref_bot_js_http_max_requests_per_host";
     private static PreferencesManager _instance;
     private final SharedPreferences _sharedPrefs;
     private SharedPreferences _encryptedSharedPrefs;
     private final Context thisAppContext;
+    private static final Gson GSON = new Gson();
+    private static final Type ENABLED_APPS_TYPE = new TypeToken<Set<String>>() {
+    }.getType();
+    private final Object snapshotLock = new Object();
+    private volatile PreferencesSnapshot snapshot;
+    // Guarded by snapshotLock, bumped on every preference change
+    private int snapshotGeneration;
+    //SharedPreferences keeps listeners in a weak map, so keep a strong reference
+    private final SharedPreferences.OnSharedPreferenceChangeListener snapshotUpdater = (prefs, key) -> {
+        PreferencesSnapshot rebuilt = PreferencesSnapshot.from(this);
+        synchronized (snapshotLock) {
+            snapshotGeneration++;
+            snapshot = rebuilt;
+        }
+    };
 
     private PreferencesManager(Context context) {
         thisAppContext = context;
@@ -91,6 +110,7 @@ public class PreferencesManager {
             _encryptedSharedPrefs = null;
         }
         init();
+        _sharedPrefs.registerOnSharedPreferenceChangeListener(snapshotUpdater);
     }
 
     public static PreferencesManager getPreferencesInstance(Context context) {
@@ -105,6 +125,28 @@ public class PreferencesManager {
         _instance = null;
     }
 
+    /**
+     * @return the current values of the preferences read for every notification. Cheap, thread-safe.
+     */
+    public PreferencesSnapshot getSnapshot() {
+        PreferencesSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        int generation;
+        synchronized (snapshotLock) {
+            generation = snapshotGeneration;
+        }
+        PreferencesSnapshot built = PreferencesSnapshot.from(this);
+        synchronized (snapshotLock) {
+            //Don't replace a snapshot published by a change that happened while building
+            if (snapshot == null && snapshotGeneration == generation) {
+                snapshot = built;
+            }
+            return snapshot != null ? snapshot : built;
+        }
+    }
+
     /**
      * Execute this code when the singleton is first created.
      * when the instance is first created goes here. For example, set specific keys based on new install
@@ -168,6 +210,23 @@ public class PreferencesManager {
         editor.apply();
     }
 
+    /**
+     * How long to wait for more messages of a conversation before generating one reply for all of them.
+     * 0 replies to the first message right away. Set from the settings screen (a ListPreference,
+     * so it is stored as a string).
+     */
+    public long getReplyCoalesceWindowMs() {
+        String windowMs = _sharedPrefs.getString(KEY_REPLY_COALESCE_WINDOW_MS, null);
+        if (windowMs == null) {
+            return DEFAULT_REPLY_COALESCE_WINDOW_MS;
+        }
+        try {
+            return Math.max(0, Long.parseLong(windowMs));
+        } catch (NumberFormatException e) {
+            return DEFAULT_REPLY_COALESCE_WINDOW_MS;
+        }
+    }
+
     public Set<String> getEnabledApps() {
         String enabledAppsJsonStr = _sharedPrefs.getString(KEY_SELECTED_APPS_ARR, null);
 
@@ -178,9 +237,7 @@ public class PreferencesManager {
             enabledAppsJsonStr = setAppsAsEnabled(Collections.singleton(new App("WhatsApp", "com.whatsapp")));
         }
 
-        Type type = new TypeToken<Set<String>>() {
-        }.getType();
-        return new Gson().fromJson(enabledAppsJsonStr, type);
+        return GSON.fromJson(enabledAppsJsonStr, ENABLED_APPS_TYPE);
     }
 
     public boolean isAppEnabled(App thisApp) {
@@ -192,7 +249,7 @@ public class PreferencesManager {
     }
 
     private String serializeAndSetEnabledPackageList(Collection<String> packageList) {
-        String jsonStr = new Gson().toJson(packageList);
+        String jsonStr = GSON.toJson(packageList);
         SharedPreferences.Editor editor = _sharedPrefs.edit();
         editor.putString(KEY_SELECTED_APPS_ARR, jsonStr);
         editor.apply();
@@ -328,6 +385,16 @@ public class PreferencesManager {
         editor.apply();
     }
 
+    public int getMessageLogsRetentionDays() {
+        return _sharedPrefs.getInt(KEY_MESSAGE_LOGS_RETENTION_DAYS, 30);
+    }
+
+    public void setMessageLogsRetentionDays(int days) {
+        SharedPreferences.Editor editor = _sharedPrefs.edit();
+        editor.putInt(KEY_MESSAGE_LOGS_RETENTION_DAYS, Math.max(1, days));
+        editor.apply();
+    }
+
     public String getPlayStoreRatingStatus() {
         return _sharedPrefs.getString(KEY_PLAY_STORE_RATING_STATUS, "");
     }
@@ -654,4 +721,14 @@ public class PreferencesManager {
     public String getBotJsEnvVars() {
         return _sharedPrefs.getString(KEY_BOT_JS_ENV_VARS, "");
     }
+
+    public void setBotJsHttpMaxRequestsPerHost(int maxRequestsPerHost) {
+        SharedPreferences.Editor editor = _sharedPrefs.edit();
+        editor.putInt(KEY_BOT_JS_HTTP_MAX_REQUESTS_PER_HOST, maxRequestsPerHost);
+        editor.apply();
+    }
+
+    public int getBotJsHttpMaxRequestsPerHost() {
+        return _sharedPrefs.getInt(KEY_BOT_JS_HTTP_MAX_REQUESTS_PER_HOST, 5);
+    }
 }
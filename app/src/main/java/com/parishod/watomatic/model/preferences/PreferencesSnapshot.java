@@ -0,0 +1,109 @@
+package com.parishod.watomagic.model.preferences;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable copy of the preferences read for every incoming notification.
+ *
+ * Obtained with {@link PreferencesManager#getSnapshot()}, which rebuilds it whenever a preference
+ * changes. Reading it needs no JSON parsing or SharedPreferences lookups, so it is safe to use on
+ * the notification filter path.
+ */
+public final class PreferencesSnapshot {
+    private final boolean serviceEnabled;
+    private final boolean groupReplyEnabled;
+    private final long autoReplyDelay;
+    private final long replyCoalesceWindowMs;
+    private final Set<String> enabledApps;
+    private final boolean contactReplyEnabled;
+    private final boolean contactReplyBlacklistMode;
+    private final Set<String> replyToNames;
+    private final Set<String> customReplyNames;
+    private final boolean showNotificationEnabled;
+    private final boolean botJsEnabled;
+    private final boolean botJsAttachmentAccessEnabled;
+
+    private PreferencesSnapshot(PreferencesManager prefs) {
+        serviceEnabled = prefs.isServiceEnabled();
+        groupReplyEnabled = prefs.isGroupReplyEnabled();
+        autoReplyDelay = prefs.getAutoReplyDelay();
+        replyCoalesceWindowMs = prefs.getReplyCoalesceWindowMs();
+        enabledApps = immutableCopy(prefs.getEnabledApps());
+        contactReplyEnabled = prefs.isContactReplyEnabled();
+        contactReplyBlacklistMode = prefs.isContactReplyBlacklistMode();
+        replyToNames = immutableCopy(prefs.getReplyToNames());
+        customReplyNames = immutableCopy(prefs.getCustomReplyNames());
+        showNotificationEnabled = prefs.isShowNotificationEnabled();
+        botJsEnabled = prefs.isBotJsEnabled();
+        botJsAttachmentAccessEnabled = prefs.isBotJsAttachmentAccessEnabled();
+    }
+
+    @NonNull
+    static PreferencesSnapshot from(@NonNull PreferencesManager prefs) {
+        return new PreferencesSnapshot(prefs);
+    }
+
+    private static Set<String> immutableCopy(Set<String> values) {
+        //Sets returned by SharedPreferences must not be kept or modified
+        return values == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(values));
+    }
+
+    public boolean isServiceEnabled() {
+        return serviceEnabled;
+    }
+
+    public boolean isGroupReplyEnabled() {
+        return groupReplyEnabled;
+    }
+
+    public long getAutoReplyDelay() {
+        return autoReplyDelay;
+    }
+
+    public long getReplyCoalesceWindowMs() {
+        return replyCoalesceWindowMs;
+    }
+
+    @NonNull
+    public Set<String> getEnabledApps() {
+        return enabledApps;
+    }
+
+    public boolean isAppEnabled(String packageName) {
+        return enabledApps.contains(packageName);
+    }
+
+    public boolean isContactReplyEnabled() {
+        return contactReplyEnabled;
+    }
+
+    public boolean isContactReplyBlacklistMode() {
+        return contactReplyBlacklistMode;
+    }
+
+    @NonNull
+    public Set<String> getReplyToNames() {
+        return replyToNames;
+    }
+
+    @NonNull
+    public Set<String> getCustomReplyNames() {
+        return customReplyNames;
+    }
+
+    public boolean isShowNotificationEnabled() {
+        return showNotificationEnabled;
+    }
+
+    public boolean isBotJsEnabled() {
+        return botJsEnabled;
+    }
+
+    public boolean isBotJsAttachmentAccessEnabled() {
+        return botJsAttachmentAccessEnabled;
+    }
+}
@@ -0,0 +1,309 @@
+package com.parishod.watomagic.model.utils;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.telephony.PhoneNumberUtils;
+import android.telephony.TelephonyManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.core.content.ContextCompat;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Matches notification titles against the contacts selected for contact-based replies.
+ *
+ * Names are compared after Unicode (NFKC) normalization, case folding and whitespace cleanup,
+ * so "José", "JOSÉ" and "Jose" followed by a combining accent all match. Titles that are phone
+ * numbers (unsaved contacts) are converted to E.164 and mapped back to the contact name.
+ *
+ * The phone contacts are loaded once and reloaded in the background when the contacts
+ * provider changes. Lookups are hash lookups and never touch the provider. Thread-safe.
+ */
+public class ContactMatcher {
+    private static final String TAG = ContactMatcher.class.getSimpleName();
+    private static final long RELOAD_DELAY_MS = 2000;
+    private static volatile ContactMatcher instance;
+
+    private final Context context;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "ContactMatcher"));
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean loadQueued = new AtomicBoolean();
+    private final Runnable reloadTask = this::queueLoad;
+    private volatile ContactIndex index;
+    //Most recent first; two entries so the contact and custom name lists don't evict each other
+    private volatile SelectionCache[] selectionCaches = new SelectionCache[0];
+    private boolean observerRegistered;
+
+    private final ContentObserver contactsObserver = new ContentObserver(handler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            //Sync adapters fire bursts of changes, reload once they settle
+            handler.removeCallbacks(reloadTask);
+            handler.postDelayed(reloadTask, RELOAD_DELAY_MS);
+        }
+    };
+
+    private ContactMatcher(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @NonNull
+    public static ContactMatcher getInstance(@NonNull Context context) {
+        ContactMatcher matcher = instance;
+        if (matcher == null) {
+            synchronized (ContactMatcher.class) {
+                matcher = instance;
+                if (matcher == null) {
+                    matcher = new ContactMatcher(context);
+                    instance = matcher;
+                }
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * @return true if {@code title} is one of {@code selectedNames}, by normalized name or by phone number
+     */
+    public boolean isSelectedContact(@Nullable String title, @NonNull Set<String> selectedNames) {
+        String normalizedTitle = normalizeName(title);
+        if (normalizedTitle.isEmpty()) {
+            return false;
+        }
+        Set<String> selected = normalizedSelection(selectedNames);
+        if (selected.contains(normalizedTitle)) {
+            return true;
+        }
+        ContactIndex current = getIndexOrLoadAsync();
+        if (current == null) {
+            return false;
+        }
+        String nameForNumber = current.nameByNumber.get(current.toE164(title));
+        return nameForNumber != null && selected.contains(nameForNumber);
+    }
+
+    /**
+     * @return true if {@code title} equals one of {@code names} once both are normalized
+     */
+    public boolean matchesName(@Nullable String title, @NonNull Set<String> names) {
+        String normalizedTitle = normalizeName(title);
+        return !normalizedTitle.isEmpty() && normalizedSelection(names).contains(normalizedTitle);
+    }
+
+    /**
+     * Phone contacts sorted by name, loading them on the calling thread if they are not loaded yet.
+     */
+    @NonNull
+    public List<Contact> getContacts() {
+        ContactIndex current = index;
+        if (current == null) {
+            current = load();
+        }
+        return current != null ? current.contacts : Collections.emptyList();
+    }
+
+    @Nullable
+    private ContactIndex getIndexOrLoadAsync() {
+        ContactIndex current = index;
+        if (current == null) {
+            queueLoad();
+        }
+        return current;
+    }
+
+    private void queueLoad() {
+        if (loadQueued.compareAndSet(false, true)) {
+            loader.execute(() -> {
+                loadQueued.set(false);
+                load();
+            });
+        }
+    }
+
+    @Nullable
+    private synchronized ContactIndex load() {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_CONTACTS)
+                != PackageManager.PERMISSION_GRANTED) {
+            return null;
+        }
+        if (!observerRegistered) {
+            context.getContentResolver().registerContentObserver(
+                    ContactsContract.Contacts.CONTENT_URI, true, contactsObserver);
+            observerRegistered = true;
+        }
+        long start = System.currentTimeMillis();
+        List<Contact> contacts = new ArrayList<>();
+        String[] projection = {
+                ContactsContract.Data.DISPLAY_NAME_PRIMARY,
+                ContactsContract.CommonDataKinds.Phone.NUMBER
+        };
+        try (Cursor cursor = context.getContentResolver().query(
+                ContactsContract.Data.CONTENT_URI,
+                projection,
+                ContactsContract.Data.MIMETYPE + " = ?",
+                new String[]{ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE},
+                ContactsContract.Data.SORT_KEY_PRIMARY + " ASC")) {
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    String name = cursor.getString(0);
+                    if (!TextUtils.isEmpty(name)) {
+                        contacts.add(new Contact(name, cursor.getString(1)));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to load contacts", e);
+            return index;
+        }
+        ContactIndex loaded = new ContactIndex(contacts, getCountryIso());
+        index = loaded;
+        Log.d(TAG, "Indexed " + contacts.size() + " contacts in " + (System.currentTimeMillis() - start) + " ms");
+        return loaded;
+    }
+
+    private Set<String> normalizedSelection(Set<String> names) {
+        SelectionCache[] caches = selectionCaches;
+        //Preference snapshots hand out the same set until the preference changes
+        for (SelectionCache cache : caches) {
+            if (cache.source == names) {
+                return cache.normalized;
+            }
+        }
+        Set<String> normalized = new HashSet<>(names.size() * 2);
+        for (String name : names) {
+            String normalizedName = normalizeName(name);
+            if (!normalizedName.isEmpty()) {
+                normalized.add(normalizedName);
+            }
+        }
+        SelectionCache cache = new SelectionCache(names, normalized);
+        selectionCaches = caches.length == 0 ? new SelectionCache[]{cache} : new SelectionCache[]{cache, caches[0]};
+        return normalized;
+    }
+
+    private String getCountryIso() {
+        TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+        String countryIso = telephonyManager != null ? telephonyManager.getSimCountryIso() : null;
+        if (TextUtils.isEmpty(countryIso) && telephonyManager != null) {
+            countryIso = telephonyManager.getNetworkCountryIso();
+        }
+        if (TextUtils.isEmpty(countryIso)) {
+            countryIso = Locale.getDefault().getCountry();
+        }
+        return countryIso.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * NFKC, case folded, without invisible format characters and with single spaces.
+     */
+    @NonNull
+    static String normalizeName(@Nullable String name) {
+        if (name == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(name, Normalizer.Form.NFKC);
+        StringBuilder sb = new StringBuilder(normalized.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < normalized.length(); ) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.getType(codePoint) == Character.FORMAT) {
+                //Bidi marks and zero width characters that messaging apps add to titles
+                continue;
+            }
+            if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)) {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.appendCodePoint(codePoint);
+        }
+        //Upper then lower case folds "ß" and "SS" together, like Unicode case folding
+        return sb.toString().toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    @VisibleForTesting
+    void setContacts(@NonNull List<Contact> contacts, @NonNull String countryIso) {
+        index = new ContactIndex(contacts, countryIso);
+    }
+
+    public static class Contact {
+        public final String name;
+        @Nullable
+        public final String phoneNumber;
+
+        public Contact(@NonNull String name, @Nullable String phoneNumber) {
+            this.name = name;
+            this.phoneNumber = phoneNumber;
+        }
+    }
+
+    private static class ContactIndex {
+        final List<Contact> contacts;
+        final String countryIso;
+        /** E.164 number -> normalized contact name */
+        final Map<String, String> nameByNumber;
+
+        ContactIndex(List<Contact> contacts, String countryIso) {
+            this.contacts = Collections.unmodifiableList(contacts);
+            this.countryIso = countryIso;
+            this.nameByNumber = new HashMap<>(contacts.size() * 2);
+            for (Contact contact : contacts) {
+                String number = toE164(contact.phoneNumber);
+                if (number != null) {
+                    nameByNumber.put(number, normalizeName(contact.name));
+                }
+            }
+        }
+
+        @Nullable
+        String toE164(@Nullable String number) {
+            if (TextUtils.isEmpty(number)) {
+                return null;
+            }
+            String e164 = PhoneNumberUtils.formatNumberToE164(number, countryIso);
+            if (e164 != null) {
+                return e164;
+            }
+            //Not a valid number for the country, compare the dialable digits instead
+            String digits = PhoneNumberUtils.normalizeNumber(number);
+            return digits.length() >= 5 ? digits : null;
+        }
+    }
+
+    private static class SelectionCache {
+        final Set<String> source;
+        final Set<String> normalized;
+
+        SelectionCache(Set<String> source, Set<String> normalized) {
+            this.source = source;
+            this.normalized = normalized;
+        }
+    }
+}
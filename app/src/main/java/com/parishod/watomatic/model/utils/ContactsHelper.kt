@@ -5,7 +5,6 @@ import android.app.Activity
 import android.content.Context
 import android.content.pm.PackageManager
 import android.os.Build
-import android.provider.ContactsContract
 import androidx.annotation.RequiresApi
 import androidx.core.content.ContextCompat
 import com.google.android.material.dialog.MaterialAlertDialogBuilder
@@ -26,37 +25,14 @@ class ContactsHelper(private val mContext: Context) {
             val unselectedContactList = ArrayList<ContactHolder>()
             val selectedContactList = ArrayList<ContactHolder>()
             val previousSelectedContacts = prefs.replyToNames
-            val contentResolver = mContext.contentResolver
-            val queryColumnAttribute = arrayOf(
-                ContactsContract.Data.DISPLAY_NAME_PRIMARY,
-                ContactsContract.CommonDataKinds.Phone.NUMBER
-            )
-            val selection = ContactsContract.Data.MIMETYPE + " = ?"
-            val selectionArgs = arrayOf(ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)
-            val cursor = contentResolver.query(
-                ContactsContract.Data.CONTENT_URI,
-                queryColumnAttribute,
-                selection,
-                selectionArgs,
-                ContactsContract.Data.SORT_KEY_PRIMARY + " ASC"
-            )
-            cursor?.use {
-                if (it.moveToFirst()) {
-                    do {
-                        val nameColumnIndex = it.getColumnIndex(ContactsContract.Data.DISPLAY_NAME_PRIMARY)
-                        val numberColumnIndex = it.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER)
-                        val contactName = it.getString(nameColumnIndex)
-                        val phoneNumber = it.getString(numberColumnIndex)
-                        if (contactName != null && contactName.isNotEmpty()) {
-                            val contactChecked = previousSelectedContacts.contains(contactName)
-                            val contactHolder = ContactHolder(contactName, phoneNumber, contactChecked)
-                            if (contactChecked) {
-                                selectedContactList.add(contactHolder)
-                            } else {
-                                unselectedContactList.add(contactHolder)
-                            }
-                        }
-                    } while (it.moveToNext())
+            // Cached and kept up to date by ContactMatcher instead of querying the provider every time
+            for (contact in ContactMatcher.getInstance(mContext).getContacts()) {
+                val contactChecked = previousSelectedContacts.contains(contact.name)
+                val contactHolder = ContactHolder(contact.name, contact.phoneNumber, contactChecked)
+                if (contactChecked) {
+                    selectedContactList.add(contactHolder)
+                } else {
+                    unselectedContactList.add(contactHolder)
                 }
             }
             customContactList.addAll(selectedContactList)
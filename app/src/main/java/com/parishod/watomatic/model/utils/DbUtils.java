@@ -3,12 +3,18 @@ package com.parishod.watomagic.model.utils;
 import android.content.Context;
 import android.service.notification.StatusBarNotification;
 
+import androidx.annotation.Nullable;
+
 import com.parishod.watomagic.model.CustomRepliesData;
-import com.parishod.watomagic.model.logs.AppPackage;
-import com.parishod.watomagic.model.logs.MessageLog;
+import com.parishod.watomagic.model.logs.MessageLogWriter;
 import com.parishod.watomagic.model.logs.MessageLogsDB;
+import com.parishod.watomagic.model.logs.MessageLogsRetention;
+import com.parishod.watomagic.model.preferences.PreferencesManager;
+
+import java.util.function.BooleanSupplier;
 
 public class DbUtils {
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
     private final Context mContext;
 
     public DbUtils(Context context) {
@@ -20,27 +26,32 @@ public class DbUtils {
         return messageLogsDB.logsDao().getNumReplies();
     }
 
-    public void purgeMessageLogs() {
+    /**
+     * Deletes logs older than the configured retention. Slow on large tables, run it from a worker.
+     */
+    public MessageLogsRetention.Result purgeMessageLogs(@Nullable BooleanSupplier stopRequested) {
+        int retentionDays = PreferencesManager.getPreferencesInstance(mContext).getMessageLogsRetentionDays();
+        //Reply times are stored in ms
+        long cutoffTime = System.currentTimeMillis() - retentionDays * DAY_MS;
         MessageLogsDB messageLogsDB = MessageLogsDB.getInstance(mContext.getApplicationContext());
-        messageLogsDB.logsDao().purgeMessageLogs();
+        MessageLogsRetention.Result result = new MessageLogsRetention(messageLogsDB).purge(cutoffTime, stopRequested);
+        ReplyCooldownIndex.getInstance().evictOlderThan(cutoffTime);
+        return result;
     }
 
+    /**
+     * Records the reply for the cooldown check right away; the log itself is written in the background.
+     */
     public void logReply(StatusBarNotification sbn, String title) {
         CustomRepliesData customRepliesData = CustomRepliesData.getInstance(mContext);
-        MessageLogsDB messageLogsDB = MessageLogsDB.getInstance(mContext.getApplicationContext());
-        int packageIndex = messageLogsDB.appPackageDao().getPackageIndex(sbn.getPackageName());
-        if (packageIndex <= 0) {
-            AppPackage appPackage = new AppPackage(sbn.getPackageName());
-            messageLogsDB.appPackageDao().insertAppPackage(appPackage);
-            packageIndex = messageLogsDB.appPackageDao().getPackageIndex(sbn.getPackageName());
-        }
-        MessageLog logs = new MessageLog(packageIndex, title, sbn.getNotification().when, customRepliesData.getTextToSendOrElse(), System.currentTimeMillis());
-        messageLogsDB.logsDao().logReply(logs);
+        long replyTime = System.currentTimeMillis();
+        MessageLogWriter.getInstance(mContext).log(sbn.getPackageName(), title, sbn.getNotification().when,
+                customRepliesData.getTextToSendOrElse(), replyTime);
+        ReplyCooldownIndex.getInstance().record(sbn.getPackageName(), title, replyTime);
     }
 
     public long getLastRepliedTime(String packageName, String title) {
-        MessageLogsDB messageLogsDB = MessageLogsDB.getInstance(mContext.getApplicationContext());
-        return messageLogsDB.logsDao().getLastReplyTimeStamp(title, packageName);
+        return ReplyCooldownIndex.getInstance().getLastReplyTime(mContext, packageName, title);
     }
 
     public long getFirstRepliedTime() {
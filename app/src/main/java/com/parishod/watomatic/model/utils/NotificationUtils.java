@@ -66,6 +66,14 @@ public class NotificationUtils {
                 (System.currentTimeMillis() - sbn.getNotification().when) < MAX_OLD_NOTIFICATION_CAN_BE_REPLIED_TIME_MS;
     }
 
+    /**
+     * @return time after which a reply to this notification is no longer relevant (same window as isNewNotification)
+     */
+    public static long getReplyDeadline(StatusBarNotification sbn) {
+        long when = sbn.getNotification().when;
+        return (when != 0 ? when : sbn.getPostTime()) + MAX_OLD_NOTIFICATION_CAN_BE_REPLIED_TIME_MS;
+    }
+
     /**
      * Extract WearNotification with RemoteInputs that can be used to send a response
      */
@@ -0,0 +1,114 @@
+package com.parishod.watomagic.model.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.parishod.watomagic.model.logs.LastReply;
+import com.parishod.watomagic.model.logs.MessageLogsDB;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory last reply time per conversation (package + title), used by the reply cooldown
+ * check instead of querying message_logs for every notification.
+ *
+ * Warmed from the DB when the listener connects and updated on every logged reply. Until
+ * it is warmed, misses fall back to the DB. Thread-safe.
+ */
+public class ReplyCooldownIndex {
+    private static final String TAG = ReplyCooldownIndex.class.getSimpleName();
+    private static volatile ReplyCooldownIndex instance;
+
+    private final Map<String, Long> lastReplyTimes = new ConcurrentHashMap<>();
+    private volatile boolean warmed;
+
+    @VisibleForTesting
+    ReplyCooldownIndex() {
+    }
+
+    @NonNull
+    public static ReplyCooldownIndex getInstance() {
+        ReplyCooldownIndex index = instance;
+        if (index == null) {
+            synchronized (ReplyCooldownIndex.class) {
+                index = instance;
+                if (index == null) {
+                    index = new ReplyCooldownIndex();
+                    instance = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Loads the last reply time of every conversation from the DB. Must not run on the main thread.
+     */
+    public void warm(@NonNull Context context) {
+        long start = System.currentTimeMillis();
+        try {
+            MessageLogsDB messageLogsDB = MessageLogsDB.getInstance(context.getApplicationContext());
+            for (LastReply lastReply : messageLogsDB.logsDao().getLastReplyTimes()) {
+                record(lastReply.packageName, lastReply.title, lastReply.lastReplyTime);
+            }
+            warmed = true;
+            Log.d(TAG, "Warmed " + lastReplyTimes.size() + " conversations in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } catch (RuntimeException e) {
+            // Keep falling back to the DB
+            Log.e(TAG, "Failed to warm reply cooldown index", e);
+        }
+    }
+
+    /**
+     * @return last reply time for the conversation, or 0 if we never replied to it
+     */
+    public long getLastReplyTime(@NonNull Context context, @NonNull String packageName, @Nullable String title) {
+        if (title == null) {
+            // Replies are never matched by a null title (same as the SQL query)
+            return 0;
+        }
+        Long lastReplyTime = lastReplyTimes.get(key(packageName, title));
+        if (lastReplyTime != null) {
+            return lastReplyTime;
+        }
+        if (warmed) {
+            return 0;
+        }
+        // Not warmed yet: the DB is the source of truth
+        MessageLogsDB messageLogsDB = MessageLogsDB.getInstance(context.getApplicationContext());
+        long fromDb = messageLogsDB.logsDao().getLastReplyTimeStamp(title, packageName);
+        if (fromDb > 0) {
+            record(packageName, title, fromDb);
+        }
+        return fromDb;
+    }
+
+    public void record(@NonNull String packageName, @Nullable String title, long replyTime) {
+        if (title == null) {
+            return;
+        }
+        lastReplyTimes.merge(key(packageName, title), replyTime, Math::max);
+    }
+
+    /**
+     * Drops conversations whose last reply is older than {@code cutoffTime}, e.g. after purging logs.
+     */
+    public void evictOlderThan(long cutoffTime) {
+        lastReplyTimes.values().removeIf(time -> time < cutoffTime);
+    }
+
+    @VisibleForTesting
+    boolean isWarmed() {
+        return warmed;
+    }
+
+    private static String key(@NonNull String packageName, @NonNull String title) {
+        return packageName + '\u0000' + title;
+    }
+}
@@ -0,0 +1,93 @@
+package com.parishod.watomagic.service;
+
+import android.app.Notification;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers recently seen notifications so re-posts of the same message are dropped in the
+ * filter stage, before any extraction, DB or reply provider work.
+ *
+ * A notification is identified by package, key, post time ({@code when}) and a hash of its
+ * text. Messaging apps re-post the same notification several times per message (group summary
+ * updates, alerts re-sent on reconnect...) and all of them share this fingerprint.
+ *
+ * Bounded to {@link #MAX_ENTRIES} fingerprints (least recently seen evicted first), each kept
+ * for {@link #EXPIRY_MS}.
+ */
+public class NotificationDeduplicator {
+    static final int MAX_ENTRIES = 256;
+    static final long EXPIRY_MS = 2 * 60 * 1000L;
+
+    // Fingerprint -> last seen time (elapsedRealtime). Access ordered, guarded by this
+    private final LinkedHashMap<Fingerprint, Long> seen = new LinkedHashMap<Fingerprint, Long>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Fingerprint, Long> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private long suppressed;
+
+    /**
+     * @return true if the same notification was already seen recently. Records it otherwise.
+     */
+    public boolean isDuplicate(@NonNull StatusBarNotification sbn) {
+        Notification notification = sbn.getNotification();
+        CharSequence text = notification.extras.getCharSequence(Notification.EXTRA_TEXT);
+        int textHash = text != null ? text.toString().hashCode() : 0;
+        return isDuplicate(new Fingerprint(sbn.getPackageName(), sbn.getKey(), notification.when, textHash),
+                SystemClock.elapsedRealtime());
+    }
+
+    @VisibleForTesting
+    synchronized boolean isDuplicate(@NonNull Fingerprint fingerprint, long now) {
+        Long lastSeen = seen.put(fingerprint, now);
+        if (lastSeen != null && now - lastSeen < EXPIRY_MS) {
+            suppressed++;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized long getSuppressedCount() {
+        return suppressed;
+    }
+
+    @VisibleForTesting
+    static final class Fingerprint {
+        private final String packageName;
+        private final String key;
+        private final long when;
+        private final int textHash;
+
+        Fingerprint(String packageName, String key, long when, int textHash) {
+            this.packageName = packageName;
+            this.key = key;
+            this.when = when;
+            this.textHash = textHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Fingerprint)) return false;
+            Fingerprint that = (Fingerprint) o;
+            return when == that.when
+                    && textHash == that.textHash
+                    && Objects.equals(packageName, that.packageName)
+                    && Objects.equals(key, that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(packageName, key, when, textHash);
+        }
+    }
+}
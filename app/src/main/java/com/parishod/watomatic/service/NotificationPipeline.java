@@ -0,0 +1,187 @@
+package com.parishod.watomagic.service;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Staged processing of incoming notifications, so the listener callback returns immediately.
+ *
+ * 1. Filter stage: runs on the listener callback thread and must stay cheap (no DB, no JSON).
+ * 2. Processing stage: runs on a single background worker fed by a bounded queue. Reply checks,
+ *    attachment extraction, reply generation and sending happen here.
+ *
+ * Backpressure: while a notification is waiting in the queue, newer updates with the same key
+ * replace it instead of being queued again. If the queue is still full, the new notification
+ * is dropped and counted.
+ */
+public class NotificationPipeline {
+    private static final String TAG = NotificationPipeline.class.getSimpleName();
+    private static final int QUEUE_CAPACITY = 32;
+
+    private final Predicate<StatusBarNotification> filterStage;
+    private final Consumer<StatusBarNotification> processStage;
+    private final ThreadPoolExecutor executor;
+    /** Latest update of each notification waiting in the queue, by notification key */
+    private final Map<String, StatusBarNotification> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong filtered = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalProcessingMs = new AtomicLong();
+    private final AtomicLong maxProcessingMs = new AtomicLong();
+
+    public NotificationPipeline(@NonNull Predicate<StatusBarNotification> filterStage,
+                                @NonNull Consumer<StatusBarNotification> processStage) {
+        this.filterStage = filterStage;
+        this.processStage = processStage;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "NotificationPipeline"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Runs the filter stage and queues the notification for processing. Called from the
+     * listener callback.
+     */
+    public void submit(@NonNull StatusBarNotification sbn) {
+        received.incrementAndGet();
+        if (!filterStage.test(sbn)) {
+            filtered.incrementAndGet();
+            return;
+        }
+
+        String key = sbn.getKey();
+        if (pending.put(key, sbn) != null) {
+            // The queued task will pick up this newer update
+            coalesced.incrementAndGet();
+            return;
+        }
+        try {
+            executor.execute(() -> process(key));
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+            long total = dropped.incrementAndGet();
+            Log.w(TAG, "Pipeline queue full, dropping notification from " + sbn.getPackageName()
+                    + " (total dropped: " + total + ")");
+        }
+    }
+
+    /**
+     * Runs a task on the processing worker, after the notifications already queued.
+     */
+    public void post(@NonNull Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Pipeline queue full, task not posted");
+        }
+    }
+
+    /**
+     * Runs a coalesced burst's delivery on the processing worker. Like the processing stage,
+     * an exception is logged and counted as failed instead of reaching the thread.
+     */
+    public void postBurst(@NonNull Runnable delivery) {
+        post(() -> {
+            try {
+                delivery.run();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                Log.e(TAG, "Error delivering coalesced notifications", e);
+            }
+        });
+    }
+
+    private void process(String key) {
+        StatusBarNotification sbn = pending.remove(key);
+        if (sbn == null) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtime();
+        try {
+            processStage.accept(sbn);
+            processed.incrementAndGet();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            Log.e(TAG, "Error processing notification from " + sbn.getPackageName(), e);
+        } finally {
+            long elapsed = SystemClock.elapsedRealtime() - start;
+            totalProcessingMs.addAndGet(elapsed);
+            maxProcessingMs.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        pending.clear();
+        Log.i(TAG, "Shutting down: " + this);
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getFilteredCount() {
+        return filtered.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public long getAverageProcessingMs() {
+        long count = processed.get() + failed.get();
+        return count == 0 ? 0 : totalProcessingMs.get() / count;
+    }
+
+    public long getMaxProcessingMs() {
+        return maxProcessingMs.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("NotificationPipeline[received=%d, filtered=%d, coalesced=%d, dropped=%d, "
+                        + "processed=%d, failed=%d, queued=%d, avgMs=%d, maxMs=%d]",
+                getReceivedCount(), getFilteredCount(), getCoalescedCount(), getDroppedCount(),
+                getProcessedCount(), getFailedCount(), getQueueDepth(),
+                getAverageProcessingMs(), getMaxProcessingMs());
+    }
+}
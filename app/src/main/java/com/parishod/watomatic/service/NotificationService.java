@@ -8,6 +8,7 @@ import android.os.Bundle;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import android.text.SpannableString;
+import android.text.TextUtils;
 import android.util.Log;
 import android.widget.Toast;
 // import Constants.kt
@@ -18,40 +19,87 @@ import androidx.core.app.RemoteInput;
 
 import com.parishod.watomagic.NotificationWear;
 import com.parishod.watomagic.model.CustomRepliesData;
+import com.parishod.watomagic.model.logs.MessageLogWriter;
 import com.parishod.watomagic.model.preferences.PreferencesManager;
+import com.parishod.watomagic.model.preferences.PreferencesSnapshot;
+import com.parishod.watomagic.model.utils.ContactMatcher;
 import com.parishod.watomagic.model.utils.ContactsHelper;
 import com.parishod.watomagic.model.utils.DbUtils;
 import com.parishod.watomagic.model.utils.NotificationHelper;
 import com.parishod.watomagic.model.utils.NotificationUtils;
+import com.parishod.watomagic.model.utils.ReplyCooldownIndex;
 import com.parishod.watomagic.replyproviders.ReplyProvider;
 import com.parishod.watomagic.replyproviders.ReplyProviderFactory;
+import com.parishod.watomagic.replyproviders.ReplyScheduler;
 import com.parishod.watomagic.replyproviders.model.NotificationData;
 
+import java.util.List;
+
 import static java.lang.Math.max;
 
 public class NotificationService extends NotificationListenerService {
     private final String TAG = NotificationService.class.getSimpleName();
     // CustomRepliesData customRepliesData; // Will be initialized locally where needed or passed
     private DbUtils dbUtils;
+    private NotificationPipeline pipeline;
+    private ReplyCoalescer replyCoalescer;
+    private final NotificationDeduplicator deduplicator = new NotificationDeduplicator();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        pipeline = new NotificationPipeline(this::isCandidateForReply, this::processNotification);
+        replyCoalescer = new ReplyCoalescer(pipeline::postBurst, this::sendReply);
+    }
+
+    @Override
+    public void onDestroy() {
+        if (replyCoalescer != null) {
+            replyCoalescer.shutdown();
+        }
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+        Log.i(TAG, "Suppressed " + deduplicator.getSuppressedCount() + " duplicate notifications");
+        MessageLogWriter.getInstance(this).flush();
+        super.onDestroy();
+    }
 
     @Override
     public void onNotificationPosted(StatusBarNotification sbn) {
         super.onNotificationPosted(sbn);
+        // Runs on the listener callback thread: only the cheap filter happens here
+        pipeline.submit(sbn);
+    }
+
+    /**
+     * Cheap checks run on the listener callback thread, before queueing the notification.
+     */
+    private boolean isCandidateForReply(StatusBarNotification sbn) {
+        return isServiceEnabled() &&
+                NotificationUtils.isNewNotification(sbn) &&
+                !deduplicator.isDuplicate(sbn);
+    }
+
+    /**
+     * Runs on the pipeline worker thread.
+     */
+    private void processNotification(StatusBarNotification sbn) {
         if (canReply(sbn) && shouldReply(sbn)) {
-            sendReply(sbn);
+            // One reply for the whole burst when more messages of the conversation follow
+            replyCoalescer.submit(sbn, PreferencesManager.getPreferencesInstance(this)
+                    .getSnapshot().getReplyCoalesceWindowMs());
         }
     }
 
     private boolean canReply(StatusBarNotification sbn) {
-        return isServiceEnabled() &&
-                isSupportedPackage(sbn) &&
-                NotificationUtils.isNewNotification(sbn) &&
+        return isSupportedPackage(sbn) &&
                 isGroupMessageAndReplyAllowed(sbn) &&
                 canSendReplyNow(sbn);
     }
 
     private boolean shouldReply(StatusBarNotification sbn) {
-        PreferencesManager prefs = PreferencesManager.getPreferencesInstance(this);
+        PreferencesSnapshot prefs = PreferencesManager.getPreferencesInstance(this).getSnapshot();
         boolean isGroup = sbn.getNotification().extras.getBoolean("android.isGroupConversation");
 
         //Check contact based replies
@@ -59,10 +107,12 @@ public class NotificationService extends NotificationListenerService {
             //Title contains sender name (at least on WhatsApp)
             String senderName = sbn.getNotification().extras.getString("android.title");
             //Check if should reply to contact
+            //Matches ignore case and Unicode form, and phone number titles match the saved contact
+            ContactMatcher contactMatcher = ContactMatcher.getInstance(this);
             boolean isNameSelected =
                     (ContactsHelper.Companion.getInstance(this).hasContactPermission()
-                            && prefs.getReplyToNames().contains(senderName)) ||
-                            prefs.getCustomReplyNames().contains(senderName);
+                            && contactMatcher.isSelectedContact(senderName, prefs.getReplyToNames())) ||
+                            contactMatcher.matchesName(senderName, prefs.getCustomReplyNames());
             if ((isNameSelected && prefs.isContactReplyBlacklistMode()) ||
                     !isNameSelected && !prefs.isContactReplyBlacklistMode()) {
                 //If contact is on the list and contact reply is on blacklist mode, 
@@ -107,21 +157,20 @@ public class NotificationService extends NotificationListenerService {
                 }
                 dbUtils.logReply(sbn, NotificationUtils.getTitle(sbn));
                 notificationWear.getPendingIntent().send(this, 0, localIntent);
-                if (PreferencesManager.getPreferencesInstance(this).isShowNotificationEnabled()) {
+                if (PreferencesManager.getPreferencesInstance(this).getSnapshot().isShowNotificationEnabled()) {
                     NotificationHelper.getInstance(getApplicationContext()).sendNotification(sbn.getNotification().extras.getString("android.title"), sbn.getNotification().extras.getString("android.text"), sbn.getPackageName());
                 }
                 cancelNotification(sbn.getKey());
-                if (canPurgeMessages()) {
-                    dbUtils.purgeMessageLogs();
-                    PreferencesManager.getPreferencesInstance(this).setPurgeMessageTime(System.currentTimeMillis());
-                }
             }
         } catch (PendingIntent.CanceledException e) {
             Log.e(TAG, "sendActualReply error: " + e.getLocalizedMessage());
         }
     }
 
-    private void sendReply(StatusBarNotification sbn) {
+    /**
+     * @param messages the messages being answered, oldest first
+     */
+    private void sendReply(StatusBarNotification sbn, List<String> messages) {
         final NotificationWear notificationWear = NotificationUtils.extractWearNotification(sbn);
         if (notificationWear.getRemoteInputs().isEmpty()) {
             return;
@@ -131,13 +180,20 @@ public class NotificationService extends NotificationListenerService {
         CustomRepliesData customRepliesData = CustomRepliesData.getInstance(this);
         final String fallbackReplyText = customRepliesData.getTextToSendOrElse();
 
-        CharSequence incomingMessageChars = sbn.getNotification().extras.getCharSequence(android.app.Notification.EXTRA_TEXT);
-        String incomingMessage = (incomingMessageChars != null) ? incomingMessageChars.toString() : null;
+        String incomingMessage;
+        if (!messages.isEmpty()) {
+            incomingMessage = TextUtils.join("\n", messages);
+        } else {
+            CharSequence incomingMessageChars = sbn.getNotification().extras.getCharSequence(android.app.Notification.EXTRA_TEXT);
+            incomingMessage = (incomingMessageChars != null) ? incomingMessageChars.toString() : null;
+        }
 
-        // Extract attachments if bot is enabled and attachment access is allowed
+        // Describe attachments if bot is enabled and attachment access is allowed.
+        // They are copied and thumbnailed only if the bot asks for them
         java.util.List<com.parishod.watomagic.replyproviders.model.AttachmentInfo> attachments = 
             java.util.Collections.emptyList();
-        if (preferencesManager.isBotJsEnabled() && preferencesManager.isBotJsAttachmentAccessEnabled()) {
+        PreferencesSnapshot prefs = preferencesManager.getSnapshot();
+        if (prefs.isBotJsEnabled() && prefs.isBotJsAttachmentAccessEnabled()) {
             com.parishod.watomagic.botjs.AttachmentExtractor extractor = 
                 new com.parishod.watomagic.botjs.AttachmentExtractor(this);
             attachments = extractor.extractAttachments(sbn);
@@ -155,11 +211,13 @@ public class NotificationService extends NotificationListenerService {
                 incomingMessage,
                 fallbackReplyText,
                 attachments,
-                mediaPlaceholder
+                mediaPlaceholder,
+                messages
         );
 
         ReplyProvider provider = ReplyProviderFactory.getProvider(preferencesManager);
-        provider.generateReply(this, notificationData, new ReplyProvider.ReplyCallback() {
+        // Queued with the other conversations' replies; dropped if it can't be sent in time
+        ReplyScheduler.getInstance().schedule(provider, this, notificationData, new ReplyProvider.ReplyCallback() {
             @Override
             public void onSuccess(@NonNull String reply) {
                 sendActualReply(sbn, notificationWear, reply);
@@ -170,20 +228,17 @@ public class NotificationService extends NotificationListenerService {
                 Log.e(TAG, "Reply generation failed: " + error);
                 sendActualReply(sbn, notificationWear, fallbackReplyText);
             }
-        });
-    }
 
-    private boolean canPurgeMessages() {
-        //Added L to avoid numeric overflow expression
-        //https://stackoverflow.com/questions/43801874/numeric-overflow-in-expression-manipulating-timestamps
-        long daysBeforePurgeInMS = 30 * 24 * 60 * 60 * 1000L;
-        return (System.currentTimeMillis() - PreferencesManager.getPreferencesInstance(this).getLastPurgedTime()) > daysBeforePurgeInMS;
+            @Override
+            public void onDropped(@NonNull String reason) {
+                Log.i(TAG, "Reply dropped: " + reason);
+            }
+        });
     }
 
     private boolean isSupportedPackage(StatusBarNotification sbn) {
-        return PreferencesManager.getPreferencesInstance(this)
-                .getEnabledApps()
-                .contains(sbn.getPackageName());
+        return PreferencesManager.getPreferencesInstance(this).getSnapshot()
+                .isAppEnabled(sbn.getPackageName());
     }
 
     private boolean canSendReplyNow(StatusBarNotification sbn) {
@@ -199,7 +254,7 @@ public class NotificationService extends NotificationListenerService {
         if (dbUtils == null) {
             dbUtils = new DbUtils(getApplicationContext());
         }
-        long timeDelay = PreferencesManager.getPreferencesInstance(this).getAutoReplyDelay();
+        long timeDelay = PreferencesManager.getPreferencesInstance(this).getSnapshot().getAutoReplyDelay();
         return (System.currentTimeMillis() - dbUtils.getLastRepliedTime(sbn.getPackageName(), title) >= max(timeDelay, DELAY_BETWEEN_REPLY_IN_MILLISEC));
     }
 
@@ -213,12 +268,12 @@ public class NotificationService extends NotificationListenerService {
         if (!sbn.getNotification().extras.getBoolean("android.isGroupConversation")) {
             return !isPossiblyAnImageGrpMsg;
         } else {
-            return PreferencesManager.getPreferencesInstance(this).isGroupReplyEnabled();
+            return PreferencesManager.getPreferencesInstance(this).getSnapshot().isGroupReplyEnabled();
         }
     }
 
     private boolean isServiceEnabled() {
-        return PreferencesManager.getPreferencesInstance(this).isServiceEnabled();
+        return PreferencesManager.getPreferencesInstance(this).getSnapshot().isServiceEnabled();
     }
 
     @Override
@@ -233,6 +288,8 @@ public class NotificationService extends NotificationListenerService {
     public void onListenerConnected() {
         super.onListenerConnected();
         Toast.makeText(getApplicationContext(), "Listener connected!", Toast.LENGTH_SHORT).show();
+        // Load reply cooldowns before processing notifications; until then they fall back to the DB
+        pipeline.post(() -> ReplyCooldownIndex.getInstance().warm(getApplicationContext()));
     }
 
 }
@@ -0,0 +1,166 @@
+package com.parishod.watomagic.service;
+
+import android.app.Notification;
+import android.service.notification.StatusBarNotification;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+
+import com.parishod.watomagic.model.utils.NotificationUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers the messages of a conversation (package + title) that arrive close together, so a
+ * burst of short messages gets one reply generated for all of them instead of one per message.
+ *
+ * Every new message restarts the window, up to {@link #MAX_WINDOW_FACTOR} times the window
+ * since the first one. When it ends, the handler is called once with the latest notification
+ * and the burst's messages, taken from the MessagingStyle history when the app provides it.
+ *
+ * Bursts still waiting when {@link #shutdown()} is called are dropped.
+ */
+public class ReplyCoalescer {
+    private static final String TAG = ReplyCoalescer.class.getSimpleName();
+    static final int MAX_WINDOW_FACTOR = 3;
+    //MessagingStyle timestamps come from the sender's app, allow for small clock differences
+    private static final long HISTORY_SLACK_MS = 1000;
+
+    public interface BurstHandler {
+        void onBurst(@NonNull StatusBarNotification latest, @NonNull List<String> messages);
+    }
+
+    private final Executor deliveryExecutor;
+    private final BurstHandler handler;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "ReplyCoalescer"));
+    // Guarded by this
+    private final Map<String, Burst> bursts = new HashMap<>();
+
+    /**
+     * @param deliveryExecutor where {@code handler} runs
+     */
+    public ReplyCoalescer(@NonNull Executor deliveryExecutor, @NonNull BurstHandler handler) {
+        this.deliveryExecutor = deliveryExecutor;
+        this.handler = handler;
+    }
+
+    /**
+     * Adds the notification to its conversation's burst. With a window of 0 or less the handler
+     * is called right away.
+     */
+    public void submit(@NonNull StatusBarNotification sbn, long windowMs) {
+        String text = getText(sbn);
+        if (windowMs <= 0) {
+            List<String> messages = new ArrayList<>(1);
+            if (text != null) {
+                messages.add(text);
+            }
+            handler.onBurst(sbn, messages);
+            return;
+        }
+
+        String key = sbn.getPackageName() + '\u0000' + NotificationUtils.getTitle(sbn);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Burst burst = bursts.get(key);
+            if (burst == null) {
+                burst = new Burst(now, now + windowMs * MAX_WINDOW_FACTOR);
+                bursts.put(key, burst);
+            } else {
+                burst.flushFuture.cancel(false);
+            }
+            burst.latest = sbn;
+            if (text != null && !text.equals(lastOf(burst.texts))) {
+                burst.texts.add(text);
+            }
+            long delay = Math.max(0, Math.min(windowMs, burst.deadline - now));
+            Burst scheduled = burst;
+            burst.flushFuture = timer.schedule(() -> flush(key, scheduled), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        synchronized (this) {
+            if (!bursts.isEmpty()) {
+                Log.i(TAG, "Dropping " + bursts.size() + " pending bursts");
+            }
+            bursts.clear();
+        }
+    }
+
+    private void flush(String key, Burst burst) {
+        synchronized (this) {
+            if (bursts.get(key) != burst) {
+                return;
+            }
+            bursts.remove(key);
+        }
+        List<String> messages = messagesFromHistory(burst);
+        deliveryExecutor.execute(() -> handler.onBurst(burst.latest, messages));
+    }
+
+    /**
+     * Incoming MessagingStyle messages received since the burst started, or the notification
+     * texts seen during the burst when there is no usable history.
+     */
+    private static List<String> messagesFromHistory(Burst burst) {
+        NotificationCompat.MessagingStyle style = null;
+        try {
+            style = NotificationCompat.MessagingStyle.extractMessagingStyleFromNotification(
+                    burst.latest.getNotification());
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not read MessagingStyle history", e);
+        }
+        if (style != null) {
+            List<String> messages = new ArrayList<>();
+            for (NotificationCompat.MessagingStyle.Message message : style.getMessages()) {
+                //Messages without a person are the user's own
+                if (message.getPerson() != null && !TextUtils.isEmpty(message.getText())
+                        && message.getTimestamp() >= burst.startTime - HISTORY_SLACK_MS) {
+                    messages.add(message.getText().toString());
+                }
+            }
+            if (!messages.isEmpty()) {
+                return messages;
+            }
+        }
+        return burst.texts;
+    }
+
+    @Nullable
+    private static String getText(StatusBarNotification sbn) {
+        CharSequence text = sbn.getNotification().extras.getCharSequence(Notification.EXTRA_TEXT);
+        return text != null ? text.toString() : null;
+    }
+
+    @Nullable
+    private static String lastOf(List<String> list) {
+        return list.isEmpty() ? null : list.get(list.size() - 1);
+    }
+
+    private static class Burst {
+        final long startTime;
+        final long deadline;
+        final List<String> texts = new ArrayList<>();
+        StatusBarNotification latest;
+        ScheduledFuture<?> flushFuture;
+
+        Burst(long startTime, long deadline) {
+            this.startTime = startTime;
+            this.deadline = deadline;
+        }
+    }
+}
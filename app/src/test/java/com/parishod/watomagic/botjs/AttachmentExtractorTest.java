@@ -2,6 +2,8 @@ package com.parishod.watomagic.botjs;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -16,6 +18,8 @@ import android.service.notification.StatusBarNotification;
 
 import androidx.core.app.NotificationCompat;
 
+import com.parishod.watomagic.replyproviders.model.AttachmentInfo;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -23,6 +27,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -110,4 +115,36 @@ public class AttachmentExtractorTest {
 
         shared.recycle();
     }
+
+    @Test
+    public void extractAttachments_copiesOnlyWhenRequested() {
+        Bitmap picture = Bitmap.createBitmap(300, 150, Bitmap.Config.ARGB_8888);
+        Notification notification = new NotificationCompat.Builder(RuntimeEnvironment.getApplication(), "test")
+                .setSmallIcon(android.R.drawable.ic_dialog_info)
+                .setContentTitle("Test")
+                .setStyle(new NotificationCompat.BigPictureStyle().bigPicture(picture))
+                .build();
+
+        StatusBarNotification sbn = mock(StatusBarNotification.class);
+        when(sbn.getNotification()).thenReturn(notification);
+
+        AttachmentExtractor extractor = new AttachmentExtractor(RuntimeEnvironment.getApplication());
+        List<AttachmentInfo> attachments = extractor.extractAttachments(sbn);
+        assertEquals(1, attachments.size());
+        AttachmentInfo attachment = attachments.get(0);
+        assertFalse(attachment.isMaterialized());
+        assertTrue(attachment.hasFile());
+        assertNull(extractor.getAttachmentPath(attachment.getId()));
+
+        String path = attachment.getTemporaryPath();
+        assertNotNull(path);
+        assertTrue(new File(path).exists());
+        assertEquals(new File(path).length(), attachment.getSize());
+        assertEquals(path, extractor.getAttachmentPath(attachment.getId()));
+        assertNotNull(attachment.getThumbnailBase64());
+
+        assertTrue(extractor.deleteAttachment(attachment.getId()));
+        assertFalse(new File(path).exists());
+        picture.recycle();
+    }
 }
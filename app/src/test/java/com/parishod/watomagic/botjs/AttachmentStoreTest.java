@@ -0,0 +1,128 @@
+package com.parishod.watomagic.botjs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AttachmentStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private AttachmentStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder("bot_attachments");
+        store = new AttachmentStore(dir, 1024);
+    }
+
+    private static AttachmentStore.Source bytes(int length, int value) {
+        return out -> {
+            byte[] content = new byte[length];
+            Arrays.fill(content, (byte) value);
+            out.write(content);
+        };
+    }
+
+    @Test
+    public void sameContentIsStoredOnce() {
+        File first = store.put("a", ".jpg", bytes(100, 1));
+        File second = store.put("b", ".jpg", bytes(100, 1));
+
+        assertNotNull(first);
+        assertEquals(first, second);
+        assertEquals(100, store.getTotalBytes());
+        assertEquals(1, dir.listFiles().length);
+        assertEquals(first.getAbsolutePath(), store.getPath("a"));
+        assertEquals(first.getAbsolutePath(), store.getPath("b"));
+    }
+
+    @Test
+    public void fileIsDeletedWhenLastReferenceIsReleased() {
+        File file = store.put("a", ".jpg", bytes(100, 1));
+        store.put("b", ".jpg", bytes(100, 1));
+
+        assertTrue(store.release("a"));
+        assertTrue(file.exists());
+        assertNull(store.getPath("a"));
+
+        assertTrue(store.release("b"));
+        assertFalse(file.exists());
+        assertEquals(0, store.getTotalBytes());
+    }
+
+    @Test
+    public void leastRecentlyUsedUnreferencedFilesAreEvictedOverBudget() {
+        File older = store.put("a", ".jpg", bytes(400, 1));
+        File newer = store.put("b", ".jpg", bytes(400, 2));
+        assertTrue(older.setLastModified(1_000));
+        assertTrue(newer.setLastModified(2_000));
+
+        // Archivos de una ejecución anterior, sin ids que los referencien
+        AttachmentStore reopened = new AttachmentStore(dir, 1024);
+        reopened.put("c", ".jpg", bytes(400, 3));
+
+        assertFalse(older.exists());
+        assertTrue(newer.exists());
+        assertNotNull(reopened.getPath("c"));
+        assertEquals(800, reopened.getTotalBytes());
+    }
+
+    @Test
+    public void referencedFilesAreNotEvictedOverBudget() {
+        File a = store.put("a", ".jpg", bytes(400, 1));
+        File b = store.put("b", ".jpg", bytes(400, 2));
+
+        store.put("c", ".jpg", bytes(400, 3));
+
+        assertTrue(a.exists());
+        assertTrue(b.exists());
+        assertEquals(a.getAbsolutePath(), store.getPath("a"));
+        assertEquals(b.getAbsolutePath(), store.getPath("b"));
+        assertNotNull(store.getPath("c"));
+        assertEquals(1200, store.getTotalBytes());
+
+        // Se borra al soltar su última referencia
+        assertTrue(store.release("a"));
+        assertFalse(a.exists());
+        assertEquals(800, store.getTotalBytes());
+    }
+
+    @Test
+    public void oversizedContentIsRejected() {
+        assertNull(store.put("a", ".jpg", bytes((int) AttachmentStore.MAX_FILE_SIZE + 1, 1)));
+        assertNull(store.getPath("a"));
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void filesFromPreviousRunsCountTowardsTheBudget() {
+        store.put("a", ".jpg", bytes(300, 1));
+
+        AttachmentStore reopened = new AttachmentStore(dir, 1024);
+        reopened.deleteOlderThan(0);
+
+        assertEquals(300, reopened.getTotalBytes());
+        assertNull(reopened.getPath("a"));
+        assertEquals(1, reopened.deleteOlderThan(Long.MAX_VALUE).filesDeleted);
+        assertEquals(0, dir.listFiles().length);
+    }
+}
@@ -0,0 +1,57 @@
+package com.parishod.watomagic.botjs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BotAndroidAPITest {
+
+    /**
+     * Cliente que responde sin red con la URL pedida como cuerpo.
+     */
+    private static OkHttpClient echoClient() {
+        return new OkHttpClient.Builder()
+                .addInterceptor(chain -> new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(chain.request().url().toString(),
+                                MediaType.parse("text/plain")))
+                        .build())
+                .build();
+    }
+
+    @Test
+    public void httpRequestAll_invalidHeaderFailsOnlyItsEntry() {
+        BotAndroidAPI api = new BotAndroidAPI(RuntimeEnvironment.getApplication(), echoClient());
+
+        BotAndroidAPI.HttpResult[] results = api.httpRequestAll(Arrays.asList(
+                "{\"url\": \"https://example.com/bad\", \"headers\": {\"X-Bad\": \"a\\nb\"}}",
+                "{\"url\": \"https://example.com/good\"}"
+        ), 2_000);
+
+        assertEquals(2, results.length);
+        assertFalse(results[0].ok);
+        assertEquals("Invalid header: X-Bad", results[0].error);
+        assertTrue(results[1].ok);
+        assertEquals(200, results[1].status);
+        assertEquals("https://example.com/good", results[1].body);
+    }
+}
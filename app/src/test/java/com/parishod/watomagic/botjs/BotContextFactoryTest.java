@@ -0,0 +1,92 @@
+package com.parishod.watomagic.botjs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptableObject;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BotContextFactoryTest {
+
+    /** Corta los bucles enseguida sin depender del reloj */
+    private static final long MAX_INSTRUCTIONS = 100_000;
+    private static final long TIMEOUT_MS = 60_000;
+
+    private Context cx;
+    private ScriptableObject scope;
+
+    @Before
+    public void setUp() {
+        cx = BotContextFactory.getInstance().enterContext();
+        scope = cx.initStandardObjects();
+    }
+
+    @After
+    public void tearDown() {
+        BotContextFactory.endBudget(cx);
+        Context.exit();
+    }
+
+    private Object eval(String source) {
+        return cx.evaluateString(scope, source, "test", 1, null);
+    }
+
+    private void assertAborted(String source) {
+        try {
+            eval(source);
+            fail("Script was not aborted");
+        } catch (BotContextFactory.BudgetExceededError e) {
+            assertEquals("Instruction budget exceeded (" + MAX_INSTRUCTIONS + ")", e.getMessage());
+        }
+    }
+
+    @Test
+    public void infiniteLoop_isAborted() {
+        BotContextFactory.startBudget(cx, TIMEOUT_MS, MAX_INSTRUCTIONS);
+
+        assertAborted("while (true) {}");
+    }
+
+    @Test
+    public void abort_cannotBeCaughtFromJs() {
+        BotContextFactory.startBudget(cx, TIMEOUT_MS, MAX_INSTRUCTIONS);
+
+        assertAborted("var caught = false; try { while (true) {} } catch (e) { caught = true; }");
+        // El catch no llegó a ejecutarse
+        assertEquals(false, ScriptableObject.getProperty(scope, "caught"));
+    }
+
+    @Test
+    public void timeBudget_abortsLoop() {
+        // El reloj de Robolectric no avanza: un deadline ya vencido
+        BotContextFactory.startBudget(cx, -1, Long.MAX_VALUE);
+
+        try {
+            eval("while (true) {}");
+            fail("Script was not aborted");
+        } catch (BotContextFactory.BudgetExceededError e) {
+            assertEquals("Execution time budget exceeded", e.getMessage());
+        }
+    }
+
+    @Test
+    public void context_runsNextExecutionAfterAbort() {
+        BotContextFactory.startBudget(cx, TIMEOUT_MS, MAX_INSTRUCTIONS);
+        assertAborted("while (true) {}");
+        BotContextFactory.endBudget(cx);
+
+        // Nueva ejecución en el mismo hilo y Context, con su propio presupuesto
+        BotContextFactory.startBudget(cx, TIMEOUT_MS, MAX_INSTRUCTIONS);
+        Object result = eval("var n = 0; for (var i = 0; i < 1000; i++) { n += i; } n");
+
+        assertEquals(499500, Context.toNumber(result), 0);
+    }
+}
@@ -0,0 +1,104 @@
+package com.parishod.watomagic.botjs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BotJsEngineTest {
+
+    private Context cx;
+    private ScriptableObject scope;
+
+    @Before
+    public void setUp() {
+        cx = Context.enter();
+        scope = cx.initStandardObjects();
+        ScriptableObject.putProperty(scope, "overQuota", new BaseFunction() {
+            @Override
+            public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                throw BotJsEngine.quotaExceededError(cx, scope, "Storage quota exceeded");
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        Context.exit();
+    }
+
+    @Test
+    public void quotaExceededError_canBeCaughtFromJs() {
+        Object result = cx.evaluateString(scope,
+                "var r; try { overQuota(); r = 'not thrown'; } "
+                        + "catch (e) { r = e.name + '|' + (e instanceof Error) + '|' + e.message; } r",
+                "test", 1, null);
+
+        assertEquals("QuotaExceededError|true|Storage quota exceeded", Context.toString(result));
+    }
+
+    @Test
+    public void quotaExceededError_canBeMatchedByName() {
+        Object result = cx.evaluateString(scope,
+                "var r; try { overQuota(); r = 'not thrown'; } "
+                        + "catch (e) { if (e.name !== 'QuotaExceededError') { throw e; } r = 'handled'; } r",
+                "test", 1, null);
+
+        assertEquals("handled", Context.toString(result));
+    }
+
+    private String evalInExecution(Scriptable executionScope, String source) {
+        return Context.toString(cx.evaluateString(executionScope, source, "test", 1, null));
+    }
+
+    private void assertSealed(String source) {
+        try {
+            evalInExecution(BotJsEngine.newExecutionScope(cx), source);
+            fail("Write to the shared scope was not rejected: " + source);
+        } catch (EvaluatorException expected) {
+            // Objeto sellado
+        }
+    }
+
+    @Test
+    public void executionScope_globalsDoNotLeakToNextExecution() {
+        Scriptable first = BotJsEngine.newExecutionScope(cx);
+        evalInExecution(first, "var counter = 1; leaked = 2; function processNotification() {}");
+        assertEquals("number|number", evalInExecution(first, "typeof counter + '|' + typeof leaked"));
+
+        Scriptable next = BotJsEngine.newExecutionScope(cx);
+        assertEquals("undefined|undefined|undefined", evalInExecution(next,
+                "typeof counter + '|' + typeof leaked + '|' + typeof processNotification"));
+    }
+
+    @Test
+    public void executionScope_shadowingAndroidDoesNotLeak() {
+        evalInExecution(BotJsEngine.newExecutionScope(cx), "Android = null; localStorage = 1;");
+
+        assertEquals("function|object", evalInExecution(BotJsEngine.newExecutionScope(cx),
+                "typeof Android.log + '|' + typeof localStorage"));
+    }
+
+    @Test
+    public void executionScope_sharedObjectsAreSealed() {
+        assertSealed("Object.prototype.polluted = 1");
+        assertSealed("Array.prototype.push = null");
+        assertSealed("Android.log = null");
+        assertSealed("Android.extra = function () {}");
+
+        assertEquals("undefined|function", evalInExecution(BotJsEngine.newExecutionScope(cx),
+                "typeof ({}).polluted + '|' + typeof Android.log"));
+    }
+}
@@ -0,0 +1,181 @@
+package com.parishod.watomagic.botjs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import androidx.room.Room;
+
+import com.parishod.watomagic.botjs.storage.BotKvDao;
+import com.parishod.watomagic.botjs.storage.BotKvEntry;
+import com.parishod.watomagic.botjs.storage.BotStorageDB;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BotStorageTest {
+
+    private BotStorageDB db;
+    private BotKvDao dao;
+    private ScheduledExecutorService writer;
+    private BotStorage storage;
+
+    @Before
+    public void setUp() {
+        db = Room.inMemoryDatabaseBuilder(RuntimeEnvironment.getApplication(), BotStorageDB.class)
+                .allowMainThreadQueries()
+                .build();
+        dao = db.kvDao();
+        writer = Executors.newSingleThreadScheduledExecutor();
+        storage = newStorage("bot-a");
+    }
+
+    @After
+    public void tearDown() {
+        writer.shutdownNow();
+        db.close();
+    }
+
+    private BotStorage newStorage(String namespace) {
+        return new BotStorage(dao, namespace, writer, db::runInTransaction);
+    }
+
+    @Test
+    public void keys_areSorted() throws Exception {
+        storage.set("b", "1");
+        storage.set("a", "2");
+        storage.set("c", "3");
+        storage.set("a", "4");
+
+        assertArrayEquals(new String[]{"a", "b", "c"}, storage.keys());
+        assertEquals("b", storage.key(1));
+        assertNull(storage.key(3));
+        assertNull(storage.key(-1));
+        assertEquals(3, storage.size());
+        assertEquals("4", storage.get("a"));
+    }
+
+    @Test
+    public void remove_updatesIndex() throws Exception {
+        storage.set("a", "1");
+        storage.set("b", "2");
+        storage.remove("a");
+
+        assertArrayEquals(new String[]{"b"}, storage.keys());
+        assertNull(storage.get("a"));
+    }
+
+    @Test
+    public void flush_persistsCoalescedWrites() throws Exception {
+        storage.set("a", "1");
+        storage.set("a", "2");
+        storage.set("b", "3");
+        storage.remove("b");
+        storage.flush();
+
+        assertEquals("2", dao.getValue("bot-a", "a"));
+        assertNull(dao.getValue("bot-a", "b"));
+    }
+
+    @Test
+    public void flush_failure_keepsWritesWithoutOverwritingNewerOnes() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        BotStorage flaky = new BotStorage(dao, "bot-a", writer, body -> {
+            if (failing.get()) {
+                throw new IllegalStateException("disk full");
+            }
+            db.runInTransaction(body);
+        });
+        flaky.set("a", "1");
+        flaky.set("b", "2");
+        flaky.flush();
+
+        assertNull(dao.getValue("bot-a", "a"));
+        assertEquals("1", flaky.get("a"));
+
+        flaky.set("a", "3");
+        failing.set(false);
+        flaky.flush();
+
+        assertEquals("3", dao.getValue("bot-a", "a"));
+        assertEquals("2", dao.getValue("bot-a", "b"));
+    }
+
+    @Test
+    public void clear_removesPersistedKeys() throws Exception {
+        dao.upsert(Collections.singletonList(new BotKvEntry("bot-a", "old", "x", 0, 4)));
+        storage.set("new", "y");
+        storage.clear();
+        storage.set("after", "z");
+        storage.flush();
+
+        assertArrayEquals(new String[]{"after"}, storage.keys());
+        assertNull(dao.getValue("bot-a", "old"));
+        assertNull(dao.getValue("bot-a", "new"));
+        assertEquals("z", dao.getValue("bot-a", "after"));
+    }
+
+    @Test
+    public void namespaces_areIsolated() throws Exception {
+        storage.set("shared", "a");
+        storage.flush();
+        BotStorage other = newStorage("bot-b");
+
+        assertNull(other.get("shared"));
+        assertEquals(0, other.size());
+    }
+
+    @Test
+    public void loadsExistingEntriesLazily() {
+        dao.upsert(Collections.singletonList(new BotKvEntry("bot-a", "existing", "v", 0, 18)));
+        BotStorage reloaded = newStorage("bot-a");
+
+        assertEquals(1, reloaded.size());
+        assertEquals("v", reloaded.get("existing"));
+        assertArrayEquals(new String[]{"v", null}, reloaded.getMany(new String[]{"existing", "missing"}));
+    }
+
+    @Test
+    public void expiredKeys_areHidden() throws Exception {
+        dao.upsert(Collections.singletonList(new BotKvEntry("bot-a", "stale", "v", 1, 12)));
+        BotStorage reloaded = newStorage("bot-a");
+
+        assertNull(reloaded.get("stale"));
+        assertEquals(0, reloaded.size());
+        reloaded.flush();
+        assertNull(dao.getValue("bot-a", "stale"));
+    }
+
+    @Test
+    public void setMany_overQuota_appliesNothing() throws Exception {
+        char[] big = new char[(int) (BotStorage.QUOTA_BYTES / 4)];
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("a", new String(big));
+        entries.put("b", new String(big));
+        entries.put("c", new String(big));
+
+        try {
+            storage.setMany(entries, 0);
+            fail("Expected QuotaExceededException");
+        } catch (BotStorage.QuotaExceededException expected) {
+            // esperado
+        }
+        assertEquals(0, storage.size());
+        assertEquals(0, storage.getUsedBytes());
+    }
+}
@@ -0,0 +1,125 @@
+package com.parishod.watomagic.botjs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class BotWorkerPoolTest {
+
+    private final BotWorkerPool pool = BotWorkerPool.getInstance();
+    /** Libera las tareas que bloquean los workers */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    /**
+     * Ocupa todos los workers y, opcionalmente, los huecos de la cola.
+     */
+    private void blockPool(int queuedTasks) throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(BotWorkerPool.WORKER_COUNT);
+        for (int i = 0; i < BotWorkerPool.WORKER_COUNT; i++) {
+            pool.submit(() -> {
+                running.countDown();
+                release.await();
+                return null;
+            }, 60_000, null);
+        }
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < queuedTasks; i++) {
+            pool.submit(() -> {
+                release.await();
+                return null;
+            }, 60_000, null);
+        }
+    }
+
+    @Test
+    public void watchdog_cancelsTaskThatRunsTooLong() throws Exception {
+        long timedOut = pool.getTimedOutCount();
+        CountDownLatch onTimeout = new CountDownLatch(1);
+
+        Future<Object> future = pool.submit(() -> {
+            Thread.sleep(60_000);
+            return null;
+        }, 100, onTimeout::countDown);
+
+        assertTrue(onTimeout.await(5, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+        assertEquals(timedOut + 1, pool.getTimedOutCount());
+    }
+
+    @Test
+    public void executeWithTimeout_reportsWatchdogCancellationAsTimeout() throws Exception {
+        try {
+            TimeoutExecutor.executeWithTimeout(() -> {
+                Thread.sleep(60_000);
+                return null;
+            }, 100);
+            fail("Task was not cancelled");
+        } catch (TimeoutException expected) {
+            // El watchdog canceló la tarea
+        }
+    }
+
+    @Test
+    public void executeWithTimeout_fullQueueIsRejected() throws Exception {
+        blockPool(BotWorkerPool.QUEUE_CAPACITY - pool.getQueueDepth());
+        long rejected = pool.getRejectedCount();
+
+        try {
+            TimeoutExecutor.executeWithTimeout(() -> null, 100);
+            fail("Task was not rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(rejected + 1, pool.getRejectedCount());
+    }
+
+    @Test
+    public void executeWithTimeout_doesNotWaitForeverInQueue() throws Exception {
+        blockPool(0);
+        AtomicBoolean ran = new AtomicBoolean();
+
+        try {
+            TimeoutExecutor.executeWithTimeout(() -> ran.getAndSet(true), 100);
+            fail("Queued task did not time out");
+        } catch (TimeoutException expected) {
+            // Los workers siguen ocupados
+        }
+
+        // Cancelada en cola: no se ejecuta al liberar los workers
+        release.countDown();
+        pool.submit(() -> null, 1_000, null).get(5, TimeUnit.SECONDS);
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void executeWithTimeout_runsInlineOnWorkerThread() throws Exception {
+        Future<Boolean> sameThread = pool.submit(() -> {
+            Thread worker = Thread.currentThread();
+            return TimeoutExecutor.executeWithTimeout(() -> Thread.currentThread() == worker, 1_000);
+        }, 5_000, null);
+
+        assertTrue(sameThread.get(5, TimeUnit.SECONDS));
+    }
+}
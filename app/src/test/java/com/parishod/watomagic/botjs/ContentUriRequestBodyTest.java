@@ -0,0 +1,68 @@
+package com.parishod.watomagic.botjs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.net.Uri;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okio.Buffer;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ContentUriRequestBodyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ContentUriRequestBody bodyFor(byte[] content) throws IOException {
+        File file = folder.newFile("image.jpg");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return new ContentUriRequestBody(RuntimeEnvironment.getApplication().getContentResolver(),
+                Uri.fromFile(file), content.length, MediaType.parse("image/jpeg"));
+    }
+
+    @Test
+    public void writesTheWholeContent() throws IOException {
+        byte[] content = new byte[64 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        ContentUriRequestBody body = bodyFor(content);
+
+        Buffer sink = new Buffer();
+        body.writeTo(sink);
+
+        assertArrayEquals(content, sink.readByteArray());
+        assertEquals(content.length, body.contentLength());
+        assertEquals("image/jpeg", body.contentType().toString());
+    }
+
+    @Test
+    public void canBeWrittenAgainForRetries() throws IOException {
+        byte[] content = {1, 2, 3};
+        ContentUriRequestBody body = bodyFor(content);
+
+        Buffer first = new Buffer();
+        body.writeTo(first);
+        Buffer second = new Buffer();
+        body.writeTo(second);
+
+        assertArrayEquals(content, first.readByteArray());
+        assertArrayEquals(content, second.readByteArray());
+    }
+}
@@ -0,0 +1,184 @@
+package com.parishod.watomagic.botjs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Base64;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ThumbnailCacheTest {
+
+    private static final int MAX = ThumbnailCache.THUMBNAIL_MAX_SIZE;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+    private ThumbnailCache cache;
+
+    @Before
+    public void setUp() {
+        dir = new File(tmp.getRoot(), "bot_thumbnails");
+        cache = new ThumbnailCache(dir);
+    }
+
+    private static byte[] encodeJpeg(int width, int height, int color) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    /**
+     * Opener sobre bytes en memoria que cuenta cuántas veces se abre.
+     */
+    private static final class CountingOpener implements ThumbnailCache.StreamOpener {
+        final byte[] content;
+        final AtomicInteger opens = new AtomicInteger();
+
+        CountingOpener(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public ByteArrayInputStream open() throws IOException {
+            opens.incrementAndGet();
+            return new ByteArrayInputStream(content);
+        }
+    }
+
+    private static BitmapFactory.Options decodeBounds(String base64) {
+        byte[] jpeg = Base64.decode(base64, Base64.NO_WRAP);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        return options;
+    }
+
+    @Test
+    public void calculateInSampleSize_smallImageIsNotSubsampled() {
+        assertEquals(1, ThumbnailCache.calculateInSampleSize(200, 200, MAX));
+        assertEquals(1, ThumbnailCache.calculateInSampleSize(399, 100, MAX));
+    }
+
+    @Test
+    public void calculateInSampleSize_usesLongestSide() {
+        assertEquals(2, ThumbnailCache.calculateInSampleSize(400, 100, MAX));
+        assertEquals(2, ThumbnailCache.calculateInSampleSize(100, 400, MAX));
+    }
+
+    @Test
+    public void calculateInSampleSize_twelveMegapixelPhoto() {
+        // 4032x3024 -> 252x189, que se reduce a 200x150 al escalar
+        int inSampleSize = ThumbnailCache.calculateInSampleSize(4032, 3024, MAX);
+        assertEquals(16, inSampleSize);
+        assertTrue(4032 / inSampleSize >= MAX);
+    }
+
+    @Test
+    public void getThumbnail_scalesDecodedBitmap() {
+        Bitmap bitmap = Bitmap.createBitmap(1000, 500, Bitmap.Config.ARGB_8888);
+        assertNotNull(cache.getThumbnail(bitmap));
+
+        bitmap.recycle();
+    }
+
+    @Test
+    public void getThumbnail_decodesStreamWithinMaxSize() {
+        CountingOpener opener = new CountingOpener(encodeJpeg(1600, 1200, 0xFF3366CC));
+
+        String thumbnail = cache.getThumbnail(null, opener);
+
+        assertNotNull(thumbnail);
+        BitmapFactory.Options bounds = decodeBounds(thumbnail);
+        assertEquals(MAX, Math.max(bounds.outWidth, bounds.outHeight));
+        assertTrue(bounds.outWidth <= MAX && bounds.outHeight <= MAX);
+    }
+
+    @Test
+    public void getThumbnail_withoutKeyHashesContent() {
+        byte[] jpeg = encodeJpeg(800, 600, 0xFF00FF00);
+        CountingOpener first = new CountingOpener(jpeg);
+        String thumbnail = cache.getThumbnail(null, first);
+        // Hash, dimensiones y decodificación
+        assertEquals(3, first.opens.get());
+
+        // Caché en memoria: solo se lee para calcular el hash
+        CountingOpener second = new CountingOpener(jpeg);
+        assertEquals(thumbnail, cache.getThumbnail(null, second));
+        assertEquals(1, second.opens.get());
+    }
+
+    @Test
+    public void getThumbnail_cacheHitWithKeyDoesNotReadContent() {
+        String key = ThumbnailCache.keyForUri("content://test/image/1", 1234);
+        byte[] jpeg = encodeJpeg(800, 600, 0xFF00FF00);
+        CountingOpener first = new CountingOpener(jpeg);
+        String thumbnail = cache.getThumbnail(key, first);
+        // Dimensiones y decodificación, sin hash
+        assertEquals(2, first.opens.get());
+
+        // Caché en memoria
+        CountingOpener second = new CountingOpener(jpeg);
+        assertEquals(thumbnail, cache.getThumbnail(key, second));
+        assertEquals(0, second.opens.get());
+
+        // Caché en disco, con otra instancia
+        CountingOpener third = new CountingOpener(jpeg);
+        assertEquals(thumbnail, new ThumbnailCache(dir).getThumbnail(key, third));
+        assertEquals(0, third.opens.get());
+    }
+
+    @Test
+    public void keyForUri_changesWithSize() {
+        assertEquals(ThumbnailCache.keyForUri("content://test/image/1", 10),
+                ThumbnailCache.keyForUri("content://test/image/1", 10));
+        assertFalse(ThumbnailCache.keyForUri("content://test/image/1", 10)
+                .equals(ThumbnailCache.keyForUri("content://test/image/1", 11)));
+    }
+
+    @Test
+    public void getThumbnail_trimsOldestDiskEntries() throws Exception {
+        assertTrue(dir.mkdirs());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < ThumbnailCache.MAX_DISK_ENTRIES; i++) {
+            File file = new File(dir, "old" + i + ".jpg");
+            assertTrue(file.createNewFile());
+            assertTrue(file.setLastModified(now - (ThumbnailCache.MAX_DISK_ENTRIES - i) * 60_000L));
+        }
+
+        String key = ThumbnailCache.keyForUri("content://test/image/new", 1);
+        assertNotNull(cache.getThumbnail(key, new CountingOpener(encodeJpeg(300, 300, 0xFFFF0000))));
+
+        // Baja hasta DISK_TRIM_TARGET para no listar el directorio en cada escritura
+        String[] files = dir.list((d, name) -> name.endsWith(".jpg"));
+        assertEquals(ThumbnailCache.DISK_TRIM_TARGET, files.length);
+        int deleted = ThumbnailCache.MAX_DISK_ENTRIES + 1 - ThumbnailCache.DISK_TRIM_TARGET;
+        assertFalse(new File(dir, "old" + (deleted - 1) + ".jpg").exists());
+        assertTrue(new File(dir, "old" + deleted + ".jpg").exists());
+        assertTrue(new File(dir, key + ".jpg").exists());
+    }
+}
@@ -0,0 +1,215 @@
+package com.parishod.watomagic.botjs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class WhatsAppMediaIndexTest {
+
+    private static final String ROOT = "primary:Media";
+    private static final String IMAGES = "primary:Media/WhatsApp Images";
+    private static final String SENT = "primary:Media/WhatsApp Images/Sent";
+    private static final long MARGIN = WhatsAppMediaResolver.TIMESTAMP_MARGIN_MS;
+
+    private FakeSource source;
+    private WhatsAppMediaIndex index;
+
+    @Before
+    public void setUp() {
+        source = new FakeSource();
+        source.addFolder(ROOT, null, 1);
+        source.addFolder(IMAGES, ROOT, 1);
+        source.addFolder(SENT, IMAGES, 1);
+        source.addFile(IMAGES, "IMG-1.jpg", 10_000);
+        source.addFile(IMAGES, "IMG-2.jpg", 20_000);
+        source.addFile(IMAGES, "notes.txt", 20_000);
+        source.addFile(SENT, "IMG-3.jpg", 30_000);
+        index = new WhatsAppMediaIndex(Uri.parse("content://test/tree/primary%3AMedia"), ROOT, source);
+    }
+
+    private WhatsAppMediaIndex.Media find(long timestamp) {
+        return index.findClosest(timestamp, timestamp - MARGIN, timestamp + MARGIN);
+    }
+
+    @Test
+    public void lowerBound_findsFirstValueNotLessThanKey() {
+        long[] values = {10, 20, 20, 30};
+        assertEquals(0, WhatsAppMediaIndex.lowerBound(values, 5));
+        assertEquals(1, WhatsAppMediaIndex.lowerBound(values, 20));
+        assertEquals(3, WhatsAppMediaIndex.lowerBound(values, 25));
+        assertEquals(4, WhatsAppMediaIndex.lowerBound(values, 31));
+    }
+
+    @Test
+    public void findClosest_indexesImagesOfAllFolders() {
+        assertEquals("IMG-2.jpg", find(21_000).name);
+        assertEquals("IMG-3.jpg", find(29_000).name);
+        assertNull(find(50_000));
+        // notes.txt no es imagen
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void findClosest_doesNotRescanWithinRefreshInterval() {
+        find(21_000);
+        int lastModifiedQueries = source.lastModifiedQueries;
+
+        find(21_000);
+
+        assertEquals(lastModifiedQueries, source.lastModifiedQueries);
+    }
+
+    @Test
+    public void refresh_relistsOnlyChangedFolders() {
+        find(21_000);
+        source.childQueries.clear();
+
+        source.addFile(SENT, "IMG-4.jpg", 40_000);
+        source.lastModified.put(SENT, 2L);
+        SystemClock.setCurrentTimeMillis(
+                SystemClock.elapsedRealtime() + WhatsAppMediaIndex.MIN_REFRESH_INTERVAL_MS);
+
+        assertEquals("IMG-4.jpg", find(40_000).name);
+        assertEquals(List.of(SENT), source.childQueries);
+    }
+
+    @Test
+    public void refresh_dropsRemovedFolders() {
+        find(21_000);
+
+        source.children.get(IMAGES).removeIf(row -> SENT.equals(row[0]));
+        source.lastModified.put(IMAGES, 2L);
+        SystemClock.setCurrentTimeMillis(
+                SystemClock.elapsedRealtime() + WhatsAppMediaIndex.MIN_REFRESH_INTERVAL_MS);
+
+        assertNull(find(30_000));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void findClosest_returnsCurrentSizeOfImageStillBeingWritten() {
+        Object[] row = source.file(IMAGES, "IMG-2.jpg");
+        row[4] = 0;
+        find(21_000);
+
+        // WhatsApp termina de escribirla: la carpeta no cambia de fecha
+        row[4] = 4096;
+        WhatsAppMediaIndex.Media media = find(21_000);
+
+        assertEquals("IMG-2.jpg", media.name);
+        assertEquals(4096, media.size);
+        assertEquals(2, source.documentQueries);
+    }
+
+    @Test
+    public void findClosest_searchesAgainWhenMatchChangedDate() {
+        assertEquals("IMG-2.jpg", find(15_000).name);
+
+        source.file(IMAGES, "IMG-2.jpg")[3] = 100_000L;
+
+        assertEquals("IMG-1.jpg", find(15_000).name);
+        assertEquals("IMG-2.jpg", find(100_000).name);
+    }
+
+    @Test
+    public void findClosest_dropsMatchDeletedSinceIndexed() {
+        find(21_000);
+
+        source.children.get(IMAGES).remove(source.file(IMAGES, "IMG-2.jpg"));
+
+        assertNull(find(21_000));
+        assertEquals(2, index.size());
+    }
+
+    private static final class FakeSource implements WhatsAppMediaIndex.DocumentSource {
+        final Map<String, List<Object[]>> children = new HashMap<>();
+        final Map<String, Long> lastModified = new HashMap<>();
+        final List<String> childQueries = new ArrayList<>();
+        int lastModifiedQueries;
+        int documentQueries;
+
+        void addFolder(String id, String parent, long modified) {
+            children.put(id, new ArrayList<>());
+            lastModified.put(id, modified);
+            if (parent != null) {
+                children.get(parent).add(new Object[]{id, id, DocumentsContract.Document.MIME_TYPE_DIR, modified, 0});
+            }
+        }
+
+        void addFile(String parent, String name, long modified) {
+            children.get(parent).add(new Object[]{parent + "/" + name, name, "image/jpeg", modified, 1024});
+        }
+
+        Object[] file(String parent, String name) {
+            for (Object[] row : children.get(parent)) {
+                if (name.equals(row[1])) {
+                    return row;
+                }
+            }
+            throw new AssertionError(name);
+        }
+
+        @Override
+        public Cursor queryChildren(@NonNull String parentDocumentId) {
+            childQueries.add(parentDocumentId);
+            MatrixCursor cursor = new MatrixCursor(new String[]{
+                    DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+                    DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+                    DocumentsContract.Document.COLUMN_MIME_TYPE,
+                    DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+                    DocumentsContract.Document.COLUMN_SIZE});
+            for (Object[] row : children.get(parentDocumentId)) {
+                // El proveedor informa la fecha actual de las subcarpetas
+                Long folderModified = lastModified.get((String) row[0]);
+                cursor.addRow(folderModified != null
+                        ? new Object[]{row[0], row[1], row[2], folderModified, row[4]}
+                        : row);
+            }
+            return cursor;
+        }
+
+        @Override
+        public long queryLastModified(@NonNull String documentId) {
+            lastModifiedQueries++;
+            Long modified = lastModified.get(documentId);
+            return modified != null ? modified : 0;
+        }
+
+        @Override
+        public Cursor queryDocument(@NonNull String documentId) {
+            documentQueries++;
+            for (List<Object[]> rows : children.values()) {
+                for (Object[] row : rows) {
+                    if (documentId.equals(row[0])) {
+                        MatrixCursor cursor = new MatrixCursor(new String[]{
+                                DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+                                DocumentsContract.Document.COLUMN_SIZE});
+                        cursor.addRow(new Object[]{row[3], row[4]});
+                        return cursor;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.parishod.watomagic.replyproviders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.Process;
+import android.service.notification.StatusBarNotification;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+
+import com.parishod.watomagic.replyproviders.model.NotificationData;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ReplySchedulerTest {
+
+    private static final long WHEN = 1_000_000L;
+    private static final long RELEVANCE_WINDOW_MS = 2 * 60 * 1000L;
+
+    private Context context;
+    private long now;
+    private ReplyScheduler scheduler;
+    private RecordingProvider provider;
+    private List<String> results;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        now = WHEN;
+        // Dispatch inline so the order of provider calls is deterministic
+        scheduler = new ReplyScheduler(Runnable::run, () -> now);
+        provider = new RecordingProvider(1);
+        results = new ArrayList<>();
+    }
+
+    @SuppressWarnings("deprecation")
+    private NotificationData notification(String title, boolean isGroup) {
+        Notification notification = new NotificationCompat.Builder(context, "test")
+                .setContentTitle(title)
+                .setContentText("Hi")
+                .setWhen(WHEN)
+                .build();
+        notification.extras.putBoolean("android.isGroupConversation", isGroup);
+        notification.extras.putString("android.hiddenConversationTitle", title);
+        StatusBarNotification sbn = new StatusBarNotification("com.whatsapp", "com.whatsapp", 1, title,
+                0, 0, 0, notification, Process.myUserHandle(), WHEN);
+        return new NotificationData(sbn, null, "Hi", "fallback");
+    }
+
+    private void schedule(String title, boolean isGroup) {
+        scheduler.schedule(provider, context, notification(title, isGroup), new ReplyProvider.ReplyCallback() {
+            @Override
+            public void onSuccess(@NonNull String reply) {
+                results.add(title + ":" + reply);
+            }
+
+            @Override
+            public void onFailure(@NonNull String error) {
+                results.add(title + ":failure");
+            }
+
+            @Override
+            public void onDropped(@NonNull String reason) {
+                results.add(title + ":dropped");
+            }
+        });
+    }
+
+    @Test
+    public void runsAtMostMaxConcurrencyReplies() {
+        schedule("A", false);
+        schedule("B", false);
+        schedule("C", false);
+
+        assertEquals(1, provider.calls.size());
+        assertEquals(2, scheduler.getQueuedCount());
+
+        provider.complete(0, "ok");
+
+        assertEquals(2, provider.calls.size());
+        assertEquals(List.of("A:ok"), results);
+    }
+
+    @Test
+    public void directChatsGoBeforeGroups() {
+        schedule("First", false);
+        schedule("Group", true);
+        schedule("Direct", false);
+
+        provider.complete(0, "ok");
+
+        assertEquals("Direct", provider.titleOf(1));
+    }
+
+    @Test
+    public void conversationsAreServedRoundRobin() {
+        schedule("First", false);
+        schedule("A", false);
+        schedule("A", false);
+        schedule("B", false);
+
+        provider.complete(0, "ok");
+        provider.complete(1, "ok");
+        provider.complete(2, "ok");
+
+        assertEquals(List.of("First", "A", "B", "A"), provider.titles());
+    }
+
+    @Test
+    public void queuedReplyPastItsDeadlineIsDropped() {
+        schedule("First", false);
+        schedule("Late", false);
+
+        now = WHEN + RELEVANCE_WINDOW_MS + 1;
+        provider.complete(0, "ok");
+
+        assertEquals(1, provider.calls.size());
+        assertEquals(List.of("First:dropped", "Late:dropped"), results);
+        assertEquals(2, scheduler.getDroppedCount());
+    }
+
+    @Test
+    public void replyGeneratedAfterItsDeadlineIsDropped() {
+        schedule("A", false);
+
+        now = WHEN + RELEVANCE_WINDOW_MS + 1;
+        provider.calls.get(0).callback.onFailure("timeout");
+
+        assertEquals(List.of("A:dropped"), results);
+    }
+
+    @Test
+    public void onlyTheFirstCallbackCounts() {
+        schedule("A", false);
+        schedule("B", false);
+
+        provider.complete(0, "ok");
+        provider.complete(0, "again");
+
+        assertEquals(List.of("A:ok"), results);
+        assertEquals(2, provider.calls.size());
+    }
+
+    @Test
+    public void fullQueueDropsNewReplies() {
+        schedule("Running", false);
+        for (int i = 0; i < ReplyScheduler.MAX_QUEUED_PER_PROVIDER; i++) {
+            schedule("Queued" + i, false);
+        }
+
+        schedule("Overflow", false);
+
+        assertTrue(results.contains("Overflow:dropped"));
+        assertEquals(ReplyScheduler.MAX_QUEUED_PER_PROVIDER, scheduler.getQueuedCount());
+    }
+
+    private static final class RecordingProvider implements ReplyProvider {
+        final List<Call> calls = new ArrayList<>();
+        private final int maxConcurrency;
+
+        RecordingProvider(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        @Override
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        @Override
+        public void generateReply(@NonNull Context context, @NonNull NotificationData notificationData,
+                                  @NonNull ReplyCallback callback) {
+            calls.add(new Call(notificationData, callback));
+        }
+
+        void complete(int index, String reply) {
+            calls.get(index).callback.onSuccess(reply);
+        }
+
+        String titleOf(int index) {
+            return calls.get(index).data.getStatusBarNotification().getNotification()
+                    .extras.getString("android.hiddenConversationTitle");
+        }
+
+        List<String> titles() {
+            List<String> titles = new ArrayList<>();
+            for (int i = 0; i < calls.size(); i++) {
+                titles.add(titleOf(i));
+            }
+            return titles;
+        }
+    }
+
+    private static final class Call {
+        final NotificationData data;
+        final ReplyProvider.ReplyCallback callback;
+
+        Call(NotificationData data, ReplyProvider.ReplyCallback callback) {
+            this.data = data;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.parishod.watomagic.model.logs
+
+import android.content.Context
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class MessageLogWriterTest {
+
+    private lateinit var db: MessageLogsDB
+    private lateinit var writer: MessageLogWriter
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        db = Room.inMemoryDatabaseBuilder(context, MessageLogsDB::class.java)
+            .allowMainThreadQueries()
+            .build()
+        writer = MessageLogWriter(db)
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun `log is queued until flushed`() {
+        writer.log("com.whatsapp", "John", 1_000L, "reply", 2_000L)
+
+        assertEquals(1, writer.getPendingCount())
+        writer.flush()
+
+        assertEquals(0, writer.getPendingCount())
+        assertEquals(1L, db.logsDao().getNumReplies())
+        assertEquals(2_000L, db.logsDao().getLastReplyTimeStamp("John", "com.whatsapp"))
+    }
+
+    @Test
+    fun `flush creates each package once`() {
+        writer.log("com.whatsapp", "John", 1_000L, "reply", 2_000L)
+        writer.log("com.whatsapp", "Jane", 1_000L, "reply", 3_000L)
+        writer.log("org.telegram.messenger", "John", 1_000L, "reply", 4_000L)
+        writer.flush()
+        writer.log("com.whatsapp", "John", 1_000L, "reply", 5_000L)
+        writer.flush()
+
+        assertEquals(4L, db.logsDao().getNumReplies())
+        assertEquals(5_000L, db.logsDao().getLastReplyTimeStamp("John", "com.whatsapp"))
+        assertEquals(4_000L, db.logsDao().getLastReplyTimeStamp("John", "org.telegram.messenger"))
+        assertEquals(2, db.logsDao().getLastReplyTimes().map { it.packageName }.distinct().size)
+    }
+
+    @Test
+    fun `full batch is written without waiting for flush`() {
+        repeat(MessageLogWriter.BATCH_SIZE) {
+            writer.log("com.whatsapp", "John $it", 1_000L, "reply", 2_000L)
+        }
+        // Runs after the batch write on the single writer thread
+        writer.flush()
+
+        assertEquals(MessageLogWriter.BATCH_SIZE.toLong(), db.logsDao().getNumReplies())
+    }
+
+    private fun setLogsTableAvailable(available: Boolean) {
+        val sql = if (available) "ALTER TABLE message_logs_off RENAME TO message_logs"
+        else "ALTER TABLE message_logs RENAME TO message_logs_off"
+        db.openHelper.writableDatabase.execSQL(sql)
+    }
+
+    @Test
+    fun `failed batch is queued again`() {
+        writer.log("com.whatsapp", "John", 1_000L, "reply", 2_000L)
+        setLogsTableAvailable(false)
+        writer.flush()
+
+        assertEquals(1, writer.getPendingCount())
+        assertEquals(0L, writer.getDroppedCount())
+
+        setLogsTableAvailable(true)
+        writer.log("com.whatsapp", "Jane", 1_000L, "reply", 3_000L)
+        writer.flush()
+
+        assertEquals(0, writer.getPendingCount())
+        assertEquals(2L, db.logsDao().getNumReplies())
+    }
+
+    @Test
+    fun `batch is dropped and counted after the last attempt`() {
+        writer.log("com.whatsapp", "John", 1_000L, "reply", 2_000L)
+        setLogsTableAvailable(false)
+        repeat(MessageLogWriter.MAX_WRITE_ATTEMPTS) { writer.flush() }
+
+        assertEquals(0, writer.getPendingCount())
+        assertEquals(1L, writer.getDroppedCount())
+        setLogsTableAvailable(true)
+    }
+}
@@ -0,0 +1,120 @@
+package com.parishod.watomagic.model.logs
+
+import android.content.Context
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class MessageLogsRetentionTest {
+
+    private lateinit var db: MessageLogsDB
+    private lateinit var retention: MessageLogsRetention
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        db = Room.inMemoryDatabaseBuilder(context, MessageLogsDB::class.java)
+            .allowMainThreadQueries()
+            .build()
+        db.appPackageDao().insertAppPackage(AppPackage("com.whatsapp"))
+        retention = MessageLogsRetention(db)
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    private fun insertReplies(count: Int, replyTime: Long) {
+        val packageIndex = db.appPackageDao().getPackageIndex("com.whatsapp")
+        repeat(count) {
+            db.logsDao().logReply(MessageLog(packageIndex, "John", replyTime, "reply", replyTime))
+        }
+    }
+
+    @Test
+    fun `purge deletes only logs older than the cutoff`() {
+        insertReplies(3, 1_000L)
+        insertReplies(2, 5_000L)
+
+        val result = retention.purge(2_000L, null)
+
+        assertEquals(3, result.rowsDeleted)
+        assertEquals(2L, db.logsDao().getNumReplies())
+    }
+
+    @Test
+    fun `purge compares against reply times in milliseconds`() {
+        val now = System.currentTimeMillis()
+        val day = 24 * 60 * 60 * 1000L
+        insertReplies(1, now - 40 * day)
+        insertReplies(1, now - day)
+
+        val result = retention.purge(now - 30 * day, null)
+
+        assertEquals(1, result.rowsDeleted)
+        assertEquals(now - day, db.logsDao().getFirstRepliedTime())
+    }
+
+    @Test
+    fun `purge deletes in several chunks`() {
+        insertReplies(MessageLogsRetention.CHUNK_SIZE * 2 + 10, 1_000L)
+
+        val result = retention.purge(2_000L, null)
+
+        assertEquals(MessageLogsRetention.CHUNK_SIZE * 2 + 10, result.rowsDeleted)
+        assertEquals(0L, db.logsDao().getNumReplies())
+    }
+
+    @Test
+    fun `purge stops between chunks when requested`() {
+        insertReplies(MessageLogsRetention.CHUNK_SIZE * 2, 1_000L)
+        var chunks = 0
+
+        val result = retention.purge(2_000L) { chunks++ >= 1 }
+
+        assertEquals(MessageLogsRetention.CHUNK_SIZE, result.rowsDeleted)
+        assertEquals(MessageLogsRetention.CHUNK_SIZE.toLong(), db.logsDao().getNumReplies())
+    }
+
+    private fun autoVacuumMode(): Long =
+        db.openHelper.writableDatabase.query("PRAGMA auto_vacuum").use { cursor ->
+            cursor.moveToFirst()
+            cursor.getLong(0)
+        }
+
+    @Test
+    fun `purge enables incremental vacuum inline on small databases`() {
+        insertReplies(10, 1_000L)
+
+        val result = retention.purge(2_000L, null)
+
+        assertFalse(result.needsFullVacuum)
+        assertEquals(2L, autoVacuumMode())
+    }
+
+    @Test
+    fun `purge defers the full vacuum on large databases`() {
+        val deferring = MessageLogsRetention(db, 0)
+        insertReplies(10, 1_000L)
+
+        val result = deferring.purge(2_000L, null)
+
+        assertEquals(10, result.rowsDeleted)
+        assertTrue(result.needsFullVacuum)
+        assertEquals(0L, autoVacuumMode())
+
+        deferring.enableIncrementalVacuum()
+        assertEquals(2L, autoVacuumMode())
+    }
+}
@@ -770,4 +770,39 @@ class PreferencesManagerTest {
         // In Robolectric, firstInstallTime == lastUpdateTime (both 0), so returns true
         assertTrue(PreferencesManager.isFirstInstall(context))
     }
+
+    // --- Snapshot ---
+
+    @Test
+    fun `getSnapshot reflects current preferences`() {
+        prefs.setServicePref(true)
+        prefs.setAutoReplyDelay(5_000L)
+        prefs.saveEnabledApps("com.whatsapp", true)
+
+        val snapshot = prefs.getSnapshot()
+        assertTrue(snapshot.isServiceEnabled)
+        assertEquals(5_000L, snapshot.autoReplyDelay)
+        assertTrue(snapshot.isAppEnabled("com.whatsapp"))
+    }
+
+    @Test
+    fun `getSnapshot is rebuilt when a preference changes`() {
+        prefs.setGroupReplyPref(false)
+        val before = prefs.getSnapshot()
+
+        prefs.setGroupReplyPref(true)
+
+        assertFalse(before.isGroupReplyEnabled)
+        assertTrue(prefs.getSnapshot().isGroupReplyEnabled)
+    }
+
+    @Test
+    fun `getSnapshot is reused while preferences are unchanged`() {
+        assertTrue(prefs.getSnapshot() === prefs.getSnapshot())
+    }
+
+    @Test(expected = UnsupportedOperationException::class)
+    fun `getSnapshot sets are immutable`() {
+        prefs.getSnapshot().replyToNames.add("John")
+    }
 }
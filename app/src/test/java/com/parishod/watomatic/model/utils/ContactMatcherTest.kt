@@ -0,0 +1,96 @@
+package com.parishod.watomagic.model.utils
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class ContactMatcherTest {
+
+    private lateinit var matcher: ContactMatcher
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        matcher = ContactMatcher.getInstance(context)
+        matcher.setContacts(
+            listOf(
+                ContactMatcher.Contact("John Doe", "+1 650-253-0000"),
+                ContactMatcher.Contact("José", "(650) 253-0001")
+            ),
+            "US"
+        )
+    }
+
+    // --- normalizeName ---
+
+    @Test
+    fun `normalizeName folds case`() {
+        assertEquals("john doe", ContactMatcher.normalizeName("JOHN Doe"))
+    }
+
+    @Test
+    fun `normalizeName unifies composed and decomposed accents`() {
+        assertEquals(ContactMatcher.normalizeName("José"), ContactMatcher.normalizeName("Jose\u0301"))
+    }
+
+    @Test
+    fun `normalizeName drops bidi marks and collapses whitespace`() {
+        assertEquals("john doe", ContactMatcher.normalizeName("\u202A John \u00A0  Doe \u202C"))
+    }
+
+    @Test
+    fun `normalizeName folds compatibility characters`() {
+        assertEquals("john", ContactMatcher.normalizeName("\uFF2A\uFF4F\uFF48\uFF4E"))
+    }
+
+    @Test
+    fun `normalizeName of null is empty`() {
+        assertEquals("", ContactMatcher.normalizeName(null))
+    }
+
+    // --- isSelectedContact ---
+
+    @Test
+    fun `isSelectedContact matches normalized names`() {
+        assertTrue(matcher.isSelectedContact("john  DOE", setOf("John Doe")))
+        assertTrue(matcher.isSelectedContact("José", setOf("José")))
+    }
+
+    @Test
+    fun `isSelectedContact matches phone number titles to the saved contact`() {
+        assertTrue(matcher.isSelectedContact("+1 650 253 0000", setOf("John Doe")))
+        assertTrue(matcher.isSelectedContact("+16502530001", setOf("José")))
+    }
+
+    @Test
+    fun `isSelectedContact does not match other contacts`() {
+        assertFalse(matcher.isSelectedContact("+1 650 253 0000", setOf("José")))
+        assertFalse(matcher.isSelectedContact("Jane", setOf("John Doe")))
+        assertFalse(matcher.isSelectedContact(null, setOf("John Doe")))
+    }
+
+    @Test
+    fun `isSelectedContact sees a changed selection`() {
+        val selected = setOf("John Doe")
+        assertTrue(matcher.isSelectedContact("John Doe", selected))
+
+        assertFalse(matcher.isSelectedContact("John Doe", setOf("José")))
+    }
+
+    // --- matchesName ---
+
+    @Test
+    fun `matchesName ignores case and Unicode form`() {
+        assertTrue(matcher.matchesName("MARÍA", setOf("maría")))
+        assertFalse(matcher.matchesName("Maria", setOf("María")))
+    }
+}
@@ -80,7 +80,8 @@ class DbUtilsTest {
     @Test
     fun `purgeMessageLogs does not throw when no logs exist`() {
         // Should not throw
-        dbUtils.purgeMessageLogs()
+        val result = dbUtils.purgeMessageLogs(null)
+        assertEquals(0, result.rowsDeleted)
         assertEquals(0L, dbUtils.getNunReplies())
     }
 
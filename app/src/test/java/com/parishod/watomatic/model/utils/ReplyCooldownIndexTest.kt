@@ -0,0 +1,105 @@
+package com.parishod.watomagic.model.utils
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.parishod.watomagic.model.logs.AppPackage
+import com.parishod.watomagic.model.logs.MessageLog
+import com.parishod.watomagic.model.logs.MessageLogsDB
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class ReplyCooldownIndexTest {
+
+    private lateinit var context: Context
+    private lateinit var index: ReplyCooldownIndex
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        index = ReplyCooldownIndex()
+    }
+
+    @After
+    fun tearDown() {
+        // Reset the database singleton via reflection
+        try {
+            val field = MessageLogsDB::class.java.getDeclaredField("_instance")
+            field.isAccessible = true
+            val db = field.get(null) as? MessageLogsDB
+            db?.close()
+            field.set(null, null)
+        } catch (_: Exception) {
+            // Ignore if reflection fails
+        }
+    }
+
+    private fun insertReply(packageName: String, title: String, replyTime: Long) {
+        val db = MessageLogsDB.getInstance(context)
+        var packageIndex = db.appPackageDao().getPackageIndex(packageName)
+        if (packageIndex <= 0) {
+            db.appPackageDao().insertAppPackage(AppPackage(packageName))
+            packageIndex = db.appPackageDao().getPackageIndex(packageName)
+        }
+        db.logsDao().logReply(MessageLog(packageIndex, title, replyTime, "reply", replyTime))
+    }
+
+    @Test
+    fun `warm loads latest reply time per conversation`() {
+        insertReply("com.whatsapp", "John", 1_000L)
+        insertReply("com.whatsapp", "John", 3_000L)
+        insertReply("com.whatsapp", "Jane", 2_000L)
+        insertReply("org.telegram.messenger", "John", 4_000L)
+
+        index.warm(context)
+
+        assertTrue(index.isWarmed())
+        assertEquals(3_000L, index.getLastReplyTime(context, "com.whatsapp", "John"))
+        assertEquals(2_000L, index.getLastReplyTime(context, "com.whatsapp", "Jane"))
+        assertEquals(4_000L, index.getLastReplyTime(context, "org.telegram.messenger", "John"))
+        assertEquals(0L, index.getLastReplyTime(context, "com.whatsapp", "Unknown"))
+    }
+
+    @Test
+    fun `falls back to the DB before warming`() {
+        insertReply("com.whatsapp", "John", 5_000L)
+
+        assertEquals(5_000L, index.getLastReplyTime(context, "com.whatsapp", "John"))
+    }
+
+    @Test
+    fun `record keeps the latest time`() {
+        index.warm(context)
+        index.record("com.whatsapp", "John", 2_000L)
+        index.record("com.whatsapp", "John", 1_000L)
+
+        assertEquals(2_000L, index.getLastReplyTime(context, "com.whatsapp", "John"))
+    }
+
+    @Test
+    fun `null title is never matched`() {
+        index.warm(context)
+        index.record("com.whatsapp", null, 2_000L)
+
+        assertEquals(0L, index.getLastReplyTime(context, "com.whatsapp", null))
+    }
+
+    @Test
+    fun `evictOlderThan drops old conversations`() {
+        index.warm(context)
+        index.record("com.whatsapp", "Old", 1_000L)
+        index.record("com.whatsapp", "New", 5_000L)
+
+        index.evictOlderThan(2_000L)
+
+        assertEquals(0L, index.getLastReplyTime(context, "com.whatsapp", "Old"))
+        assertEquals(5_000L, index.getLastReplyTime(context, "com.whatsapp", "New"))
+    }
+}
@@ -0,0 +1,63 @@
+package com.parishod.watomagic.service
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+class NotificationDeduplicatorTest {
+
+    private lateinit var deduplicator: NotificationDeduplicator
+
+    @Before
+    fun setUp() {
+        deduplicator = NotificationDeduplicator()
+    }
+
+    private fun fingerprint(
+        key: String = "0|com.whatsapp|1|john|10",
+        `when`: Long = 1_000L,
+        text: String = "Hi"
+    ) = NotificationDeduplicator.Fingerprint("com.whatsapp", key, `when`, text.hashCode())
+
+    @Test
+    fun `first notification is not a duplicate`() {
+        assertFalse(deduplicator.isDuplicate(fingerprint(), 0L))
+    }
+
+    @Test
+    fun `same notification re-posted is a duplicate`() {
+        deduplicator.isDuplicate(fingerprint(), 0L)
+
+        assertTrue(deduplicator.isDuplicate(fingerprint(), 1_000L))
+        assertEquals(1L, deduplicator.suppressedCount)
+    }
+
+    @Test
+    fun `new text, time or key is not a duplicate`() {
+        deduplicator.isDuplicate(fingerprint(), 0L)
+
+        assertFalse(deduplicator.isDuplicate(fingerprint(text = "Are you there?"), 1L))
+        assertFalse(deduplicator.isDuplicate(fingerprint(`when` = 2_000L), 1L))
+        assertFalse(deduplicator.isDuplicate(fingerprint(key = "0|com.whatsapp|1|jane|10"), 1L))
+    }
+
+    @Test
+    fun `fingerprints expire`() {
+        deduplicator.isDuplicate(fingerprint(), 0L)
+
+        assertFalse(deduplicator.isDuplicate(fingerprint(), NotificationDeduplicator.EXPIRY_MS))
+    }
+
+    @Test
+    fun `least recently seen fingerprints are evicted`() {
+        deduplicator.isDuplicate(fingerprint(key = "first"), 0L)
+        for (i in 0 until NotificationDeduplicator.MAX_ENTRIES) {
+            deduplicator.isDuplicate(fingerprint(key = "key-$i"), 1L)
+        }
+
+        assertFalse(deduplicator.isDuplicate(fingerprint(key = "first"), 2L))
+        assertTrue(deduplicator.isDuplicate(fingerprint(key = "key-${NotificationDeduplicator.MAX_ENTRIES - 1}"), 2L))
+    }
+}
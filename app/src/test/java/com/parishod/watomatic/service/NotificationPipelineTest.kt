@@ -0,0 +1,85 @@
+package com.parishod.watomagic.service
+
+import android.content.Context
+import android.os.Process
+import android.service.notification.StatusBarNotification
+import androidx.core.app.NotificationCompat
+import androidx.test.core.app.ApplicationProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class NotificationPipelineTest {
+
+    private lateinit var context: Context
+    private lateinit var pipeline: NotificationPipeline
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        pipeline = NotificationPipeline({ true }, { })
+    }
+
+    @After
+    fun tearDown() {
+        pipeline.shutdown()
+    }
+
+    @Suppress("DEPRECATION")
+    private fun sbn(title: String, text: String): StatusBarNotification {
+        val n = NotificationCompat.Builder(context, "test")
+            .setContentTitle(title)
+            .setContentText(text)
+            .build()
+        return StatusBarNotification("com.whatsapp", "com.whatsapp", 1, title, 0, 0, 0, n,
+            Process.myUserHandle(), System.currentTimeMillis())
+    }
+
+    /**
+     * Waits until the tasks already queued on the worker have run.
+     */
+    private fun awaitWorker() {
+        val done = CountDownLatch(1)
+        pipeline.post { done.countDown() }
+        assertTrue(done.await(2, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun `failing burst is counted and the worker keeps running`() {
+        pipeline.postBurst { throw IllegalStateException("extraction failed") }
+
+        awaitWorker()
+        assertEquals(1L, pipeline.failedCount)
+    }
+
+    @Test
+    fun `coalesced reply that throws does not escape the worker`() {
+        val handled = CountDownLatch(1)
+        val coalescer = ReplyCoalescer(pipeline::postBurst) { _, _ ->
+            handled.countDown()
+            throw IllegalStateException("provider failed")
+        }
+        try {
+            coalescer.submit(sbn("John", "Hi"), WINDOW_MS)
+
+            assertTrue(handled.await(2, TimeUnit.SECONDS))
+            awaitWorker()
+            assertEquals(1L, pipeline.failedCount)
+        } finally {
+            coalescer.shutdown()
+        }
+    }
+
+    companion object {
+        private const val WINDOW_MS = 50L
+    }
+}
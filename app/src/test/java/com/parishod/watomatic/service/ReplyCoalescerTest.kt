@@ -0,0 +1,107 @@
+package com.parishod.watomagic.service
+
+import android.app.Notification
+import android.content.Context
+import android.os.Process
+import android.service.notification.StatusBarNotification
+import androidx.core.app.NotificationCompat
+import androidx.core.app.Person
+import androidx.test.core.app.ApplicationProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class ReplyCoalescerTest {
+
+    private lateinit var context: Context
+    private lateinit var coalescer: ReplyCoalescer
+    private val bursts = CopyOnWriteArrayList<List<String>>()
+    private var latch = CountDownLatch(1)
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        coalescer = ReplyCoalescer({ it.run() }) { _, messages ->
+            bursts.add(messages)
+            latch.countDown()
+        }
+    }
+
+    @After
+    fun tearDown() {
+        coalescer.shutdown()
+    }
+
+    @Suppress("DEPRECATION")
+    private fun sbn(title: String, text: String, notification: Notification? = null): StatusBarNotification {
+        val n = notification ?: NotificationCompat.Builder(context, "test")
+            .setContentTitle(title)
+            .setContentText(text)
+            .build()
+        return StatusBarNotification("com.whatsapp", "com.whatsapp", 1, title, 0, 0, 0, n,
+            Process.myUserHandle(), System.currentTimeMillis())
+    }
+
+    @Test
+    fun `zero window replies right away`() {
+        coalescer.submit(sbn("John", "Hi"), 0)
+
+        assertEquals(listOf(listOf("Hi")), bursts)
+    }
+
+    @Test
+    fun `messages within the window are replied once`() {
+        coalescer.submit(sbn("John", "Hi"), WINDOW_MS)
+        coalescer.submit(sbn("John", "Are you there?"), WINDOW_MS)
+        coalescer.submit(sbn("John", "Call me"), WINDOW_MS)
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS))
+        Thread.sleep(WINDOW_MS * 2)
+        assertEquals(listOf(listOf("Hi", "Are you there?", "Call me")), bursts)
+    }
+
+    @Test
+    fun `conversations are coalesced separately`() {
+        latch = CountDownLatch(2)
+        coalescer.submit(sbn("John", "Hi"), WINDOW_MS)
+        coalescer.submit(sbn("Jane", "Hello"), WINDOW_MS)
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS))
+        assertEquals(setOf(listOf("Hi"), listOf("Hello")), bursts.toSet())
+    }
+
+    @Test
+    fun `MessagingStyle history is used when available`() {
+        val john = Person.Builder().setName("John").build()
+        val now = System.currentTimeMillis()
+        val style = NotificationCompat.MessagingStyle(Person.Builder().setName("Me").build())
+            .addMessage("Old message", now - 60_000, john)
+            .addMessage("My reply", now - 30_000, null as Person?)
+            .addMessage("Hi", now, john)
+            .addMessage("Are you there?", now, john)
+        val notification = NotificationCompat.Builder(context, "test")
+            .setContentTitle("John")
+            .setContentText("Are you there?")
+            .setStyle(style)
+            .build()
+
+        coalescer.submit(sbn("John", "Are you there?", notification), WINDOW_MS)
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS))
+        assertEquals(listOf(listOf("Hi", "Are you there?")), bursts)
+    }
+
+    companion object {
+        private const val WINDOW_MS = 100L
+    }
+}